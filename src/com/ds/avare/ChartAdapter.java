@@ -11,11 +11,9 @@ Redistribution and use in source and binary forms, with or without modification,
 */
 package com.ds.avare;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
+import java.util.LinkedList;
 
+import com.ds.avare.storage.ChartInventory;
 import com.ds.avare.storage.Preferences;
 import com.ds.avare.utils.BitmapHolder;
 import com.ds.avare.utils.Helper;
@@ -53,8 +51,7 @@ public class ChartAdapter extends BaseExpandableListAdapter {
     private String[][] mChildren;
     private int[][] mChecked;
     private String[][] mVers;
-    
-    static final int blocksize = 128;
+    private long[][] mExpires;
     
     private static final int GROUP_DATABASE = 0;
     private static final int GROUP_PLATE = 1;
@@ -145,6 +142,18 @@ public class ChartAdapter extends BaseExpandableListAdapter {
         mChecked[GROUP_IFRHE] = new int[mVers[GROUP_IFRHE].length];
         mChecked[GROUP_TOPO] = new int[mVers[GROUP_TOPO].length];
         mChecked[GROUP_HELI] = new int[mVers[GROUP_HELI].length];
+
+        /*
+         * Nothing expires till versions are in
+         */
+        mExpires = new long[GROUP_NUM][];
+        for(int group = GROUP_DATABASE; group < GROUP_NUM; group++) {
+            mExpires[group] = new long[mVers[group].length];
+            for(int child = 0; child < mExpires[group].length; child++) {
+                mVers[group][child] = null;
+                mExpires[group][child] = Long.MAX_VALUE;
+            }
+        }
         
         /*
          * Get various bitmaps
@@ -169,39 +178,24 @@ public class ChartAdapter extends BaseExpandableListAdapter {
     private class ViewTask extends AsyncTask<Void, Void, Boolean> {
 
         String[][] vers;
+        long[][] expires;
 
         @Override
         protected Boolean doInBackground(Void... params) {
 
-            vers = mVers.clone();
-                       
             /*
-             * Always get version in BG because its a network operation
-             *
-             */
-            
-            /*
-             * Load versions
+             * Versions of all charts are in the inventory, read from storage only the first time
              */
+            ChartInventory inventory = ChartInventory.get(mPref.mapsFolder());
+            vers = new String[GROUP_NUM][];
+            expires = new long[GROUP_NUM][];
             for(int group = GROUP_DATABASE; group < GROUP_NUM; group++) {
+                inventory.add(mChildrenFiles[group]);
+                vers[group] = new String[mChildrenFiles[group].length];
+                expires[group] = new long[mChildrenFiles[group].length];
                 for(int child = 0; child < vers[group].length; child++) {
-                    /*
-                     * Read version from file and if it exists.
-                     */
-                    File file = new File(mPref.mapsFolder() + "/" + mChildrenFiles[group][child]);
-                    vers[group][child] = null;
-                    if(file.exists()) {
-                        try {
-                            BufferedReader br = new BufferedReader(new FileReader(file), blocksize);
-                            /*
-                             * Preferably do assignment on UI thread in postExecute()
-                             */
-                            vers[group][child] = br.readLine();
-                            br.close();
-                        }
-                        catch (IOException e) {
-                        }
-                    }
+                    vers[group][child] = inventory.getVersion(mChildrenFiles[group][child]);
+                    expires[group][child] = inventory.getExpires(mChildrenFiles[group][child]);
                 }
             }
             return true;
@@ -210,6 +204,7 @@ public class ChartAdapter extends BaseExpandableListAdapter {
         @Override
         protected void onPostExecute(Boolean result) {
             mVers = vers;
+            mExpires = expires;
             notifyDataSetChanged();            
         }
     }
@@ -231,6 +226,7 @@ public class ChartAdapter extends BaseExpandableListAdapter {
             for(int child = 0; child < mVers[group].length; child++) {
                 if(mChildrenFiles[group][child].equals(name)) {
                     mVers[group][child] = version;
+                    mExpires[group][child] = Helper.getExpires(version);
                     break;
                 }
             }
@@ -325,6 +321,22 @@ public class ChartAdapter extends BaseExpandableListAdapter {
         return null;
     }
 
+    /**
+     * Get all checked charts
+     * @return
+     */
+    public LinkedList<String> getAllChecked() {
+        LinkedList<String> names = new LinkedList<String>();
+        for(int group = GROUP_DATABASE; group < GROUP_NUM; group++) {
+            for(int child = 0; child < mVers[group].length; child++) {
+                if(STATE_CHECKED == mChecked[group][child]) {
+                    names.add(mChildrenFiles[group][child]);
+                }
+            }
+        }
+        return names;
+    }
+
     /**
      * Get the next checked chart
      * @return
@@ -353,7 +365,7 @@ public class ChartAdapter extends BaseExpandableListAdapter {
                 if(mVers[group][child] == null) {
                     continue;
                 }
-                if(Helper.isExpired(mVers[group][child])) {
+                if(Helper.isExpired(mExpires[group][child])) {
                     mChecked[group][child] = STATE_CHECKED;
                 }
             }
@@ -387,7 +399,7 @@ public class ChartAdapter extends BaseExpandableListAdapter {
          */
         for(int child = 0; child < total; child++) {
             if(mVers[group][child] != null) {
-                expired = Helper.isExpired(mVers[group][child]);
+                expired |= Helper.isExpired(mExpires[group][child]);
             }
         }
         if(expired) {
@@ -431,7 +443,7 @@ public class ChartAdapter extends BaseExpandableListAdapter {
             textView2.setText(mVers[groupPosition][childPosition]);
             imgView.setImageBitmap(mOkBitmapHolder.getBitmap());
             
-            if(Helper.isExpired(mVers[groupPosition][childPosition])) {
+            if(Helper.isExpired(mExpires[groupPosition][childPosition])) {
                 imgView.setImageBitmap(mUpdateBitmapHolder.getBitmap());                    
             }
         }
@@ -13,10 +13,11 @@ package com.ds.avare;
 
 
 import java.io.File;
+import java.util.LinkedList;
 
 import com.ds.avare.R;
 import com.ds.avare.network.Delete;
-import com.ds.avare.network.Download;
+import com.ds.avare.network.DownloadManager;
 import com.ds.avare.storage.Preferences;
 import com.ds.avare.utils.Helper;
 
@@ -32,6 +33,7 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Message;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -47,7 +49,6 @@ public class ChartsDownloadActivity extends Activity {
     
     private String mName;
     private ProgressDialog mProgressDialog;
-    private Download mDownload;
     private Delete mDelete;
     
     private Preferences mPref;
@@ -149,6 +150,14 @@ public class ChartsDownloadActivity extends Activity {
              */
             StorageService.LocalBinder binder = (StorageService.LocalBinder)service;
             mService = binder.getService();
+            mService.getDownloadManager().registerListener(mDownloadListener);
+
+            /*
+             * Downloads went on while we were away
+             */
+            if(mService.getDownloadManager().isBusy()) {
+                showDownloadProgress();
+            }
             
             /*
              * Since we are downloading new charts, clear everything old on screen.
@@ -216,10 +225,11 @@ public class ChartsDownloadActivity extends Activity {
             return false;
         }
         /*
-         * Download first chart in list that is checked
+         * Queue all charts in list that are checked, service downloads a few at a time
          */
-        mName = mChartAdapter.getChecked();
-        if(null == mName) {
+        LinkedList<String> names = mChartAdapter.getAllChecked();
+        DownloadManager manager = mService.getDownloadManager();
+        if(names.isEmpty() && !manager.isBusy()) {
             /*
              * Nothing to download
              */
@@ -228,23 +238,49 @@ public class ChartsDownloadActivity extends Activity {
             return false;
         }
         
-        mDownload = new Download(mPref.getRoot(), mHandler);
-        mDownload.start((new Preferences(getApplicationContext())).mapsFolder(), mName);
-        
+        for(String name : names) {
+            manager.add(name);
+        }
+        showDownloadProgress();
+        return true;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    private String getDownloadMessage() {
+        return getString(R.string.Downloading) + "/" + getString(R.string.Extracting) + " : " +
+                TextUtils.join(", ", mService.getDownloadManager().getQueue());
+    }
+
+    /**
+     * 
+     */
+    private void showDownloadProgress() {
+        if(mProgressDialog != null) {
+            try {
+                mProgressDialog.dismiss();
+            }
+            catch (Exception e) {
+            }
+        }
+
         mProgressDialog = new ProgressDialog(ChartsDownloadActivity.this);
         mProgressDialog.setIndeterminate(false);
         mProgressDialog.setMax(100);
         mProgressDialog.setCancelable(false);
         mProgressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
-        mProgressDialog.setMessage(getString(R.string.Downloading) + "/" + 
-                getString(R.string.Extracting) + " : " + mName + ".zip");
+        mProgressDialog.setMessage(getDownloadMessage());
         
         mProgressDialog.setButton(ProgressDialog.BUTTON_NEGATIVE, getString(R.string.Cancel), new DialogInterface.OnClickListener() {
             /* (non-Javadoc)
              * @see android.content.DialogInterface.OnClickListener#onClick(android.content.DialogInterface, int)
              */
             public void onClick(DialogInterface dialog, int which) {
-                mDownload.cancel();
+                if(mService != null) {
+                    mService.getDownloadManager().cancel();
+                }
                 try {
                     dialog.dismiss();
                 }
@@ -254,9 +290,75 @@ public class ChartsDownloadActivity extends Activity {
             }
         });
         mProgressDialog.show();
-        return true;
+        mProgressDialog.setProgress(mService.getDownloadManager().getProgress());
     }
 
+    /**
+     * Callbacks from download manager in service, on main thread
+     */
+    private DownloadManager.Listener mDownloadListener = new DownloadManager.Listener() {
+
+        @Override
+        public void progressCallback(int progress) {
+            try {
+                mProgressDialog.setProgress(progress);
+            }
+            catch (Exception e) {                    
+            }
+        }
+
+        @Override
+        public void doneCallback(String name, boolean success, String version) {
+            if(success) {
+                mChartAdapter.updateVersion(name, version);
+                mChartAdapter.unsetChecked(name);
+                mChartAdapter.refresh();
+            }
+            try {
+                mProgressDialog.setMessage(getDownloadMessage());
+            }
+            catch (Exception e) {                    
+            }
+        }
+
+        @Override
+        public void finishedCallback(int failed) {
+            try {
+                mProgressDialog.dismiss();
+            }
+            catch (Exception e) {
+            }
+
+            if(0 == failed) {
+                Toast.makeText(ChartsDownloadActivity.this, getString(R.string.download) + " " 
+                        + getString(R.string.Success), Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            /*
+             * Throw a confirm dialog
+             */
+            mAlertDialog = new AlertDialog.Builder(ChartsDownloadActivity.this).create();
+            mAlertDialog.setMessage(getString(R.string.download) + " " + getString(R.string.Failed));
+            mAlertDialog.setCanceledOnTouchOutside(false);
+            mAlertDialog.setCancelable(false);
+            mAlertDialog.setButton(ProgressDialog.BUTTON_POSITIVE, getString(R.string.OK), new DialogInterface.OnClickListener() {
+                /* (non-Javadoc)
+                 * @see android.content.DialogInterface.OnClickListener#onClick(android.content.DialogInterface, int)
+                 */
+                public void onClick(DialogInterface dialog, int which) {
+                    dialog.dismiss();
+                }
+            });
+
+            try {
+                mAlertDialog.show();
+            }
+            catch (Exception e) {
+            }
+        }
+    };
+
     /**
      * 
      */
@@ -315,10 +417,11 @@ public class ChartsDownloadActivity extends Activity {
         super.onPause();
         
         /*
-         * Clean up on pause that was started in on resume
+         * Clean up on pause that was started in on resume.
+         * Downloads go on in service.
          */
-        if(mDownload != null) {
-            mDownload.cancel();
+        if(mService != null) {
+            mService.getDownloadManager().unregisterListener(mDownloadListener);
         }
         getApplicationContext().unbindService(mConnection);
         
@@ -368,83 +471,7 @@ public class ChartsDownloadActivity extends Activity {
             }
             
             
-            if(msg.obj instanceof Download) {
-                if(Download.FAILED == result) {
-                    try {
-                        mProgressDialog.dismiss();
-                    }
-                    catch (Exception e) {
-                        
-                    }
-                    
-                    /*
-                     * Throw a confirm dialog
-                     */
-                    
-                    mAlertDialog = new AlertDialog.Builder(ChartsDownloadActivity.this).create();
-                    mAlertDialog.setMessage(getString(R.string.download) + " " + getString(R.string.Failed));
-                    mAlertDialog.setCanceledOnTouchOutside(false);
-                    mAlertDialog.setCancelable(false);
-                    mAlertDialog.setButton(ProgressDialog.BUTTON_POSITIVE, getString(R.string.OK), new DialogInterface.OnClickListener() {
-                        /* (non-Javadoc)
-                         * @see android.content.DialogInterface.OnClickListener#onClick(android.content.DialogInterface, int)
-                         */
-                        public void onClick(DialogInterface dialog, int which) {
-                            dialog.dismiss();
-                        }
-                    });
-        
-                    try {
-                        mAlertDialog.show();
-                    }
-                    catch (Exception e) {
-                    }
-                }
-                
-                
-                
-                if(Download.NONEED == result) {
-                    try {
-                        mProgressDialog.dismiss();
-                    }
-                    catch (Exception e) {
-                    }
-                }
-                else if (Download.SUCCESS == result) {
-                    try {
-                        mProgressDialog.dismiss();
-                    }
-                    catch (Exception e) {
-                        
-                    }
-                    Toast.makeText(ChartsDownloadActivity.this, getString(R.string.download) + " " 
-                            + getString(R.string.Success), Toast.LENGTH_SHORT).show();
-    
-                    /*
-                     * If TFR fetched, parse it. 
-                     */
-                    if(mName.equals(getString(R.string.TFRs))) {
-                        mService.getTFRFetcher().parse();
-                    }
-    
-                    if(mName.equals("weather")) {
-                        mService.getInternetWeatherCache().parse(getApplicationContext());
-                    }
-                    
-                    mChartAdapter.updateVersion(mName, mDownload.getVersion());
-                    mChartAdapter.unsetChecked(mName);
-                    mChartAdapter.refresh();
-                    download();
-                }
-                else {
-                    try {
-                        mProgressDialog.setProgress(result);
-                    }
-                    catch (Exception e) {                    
-                    }
-                }           
-            }
-            else if(msg.obj instanceof Delete) {
+            if(msg.obj instanceof Delete) {
                 if(Delete.FAILED == result) {
                     try {
                         mProgressDialog.dismiss();
@@ -18,6 +18,7 @@ import java.util.Observer;
 import com.ds.avare.R;
 import com.ds.avare.animation.AnimateButton;
 import com.ds.avare.gdl90.AdsbStatus;
+import com.ds.avare.gdl90.Id413Product;
 import com.ds.avare.gdl90.Id6364Product;
 import com.ds.avare.gps.Gps;
 import com.ds.avare.gps.GpsInterface;
@@ -25,6 +26,7 @@ import com.ds.avare.gps.GpsParams;
 import com.ds.avare.place.Destination;
 import com.ds.avare.storage.Preferences;
 import com.ds.avare.storage.StringPreference;
+import com.ds.avare.storage.TilePack;
 import com.ds.avare.touch.GestureInterface;
 import com.ds.avare.utils.Helper;
 import com.ds.avare.utils.NetworkHelper;
@@ -160,7 +162,7 @@ public class LocationActivity extends Activity implements Observer {
             if(null == mService) {
                 mLocationView.updateErrorStatus(getString(R.string.Init));
             }
-            else if(!(new File(mPref.mapsFolder() + "/tiles")).exists()) {
+            else if(!(new File(mPref.mapsFolder() + "/tiles")).exists() && !TilePack.hasPacks(mPref.mapsFolder())) {
                 mLocationView.updateErrorStatus(getString(R.string.MissingMaps));
                 if(null != mLocationView.getChart()) {
                     Intent i = new Intent(LocationActivity.this, ChartsDownloadActivity.class);
@@ -201,6 +203,10 @@ public class LocationActivity extends Activity implements Observer {
         public void adbsStatusCallback(AdsbStatus adsbStatus) {
         }
 
+        @Override
+        public void adbsMessageCallbackText(Id413Product pt) {
+        }
+
     };
 
     /**
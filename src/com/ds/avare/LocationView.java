@@ -13,12 +13,16 @@ Redistribution and use in source and binary forms, with or without modification,
 package com.ds.avare;
 
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
 
 import com.ds.avare.gdl90.NexradBitmap;
 import com.ds.avare.gps.GpsParams;
 import com.ds.avare.place.Destination;
+import com.ds.avare.place.Incursion;
 import com.ds.avare.place.Obstacle;
 import com.ds.avare.place.Runway;
 import com.ds.avare.position.Movement;
@@ -27,6 +31,8 @@ import com.ds.avare.position.Pan;
 import com.ds.avare.position.Projection;
 import com.ds.avare.position.Scale;
 import com.ds.avare.shapes.MetShape;
+import com.ds.avare.shapes.Shape;
+import com.ds.avare.shapes.ShapeIndex;
 import com.ds.avare.shapes.TFRShape;
 import com.ds.avare.shapes.Tile;
 import com.ds.avare.storage.DataSource;
@@ -38,6 +44,9 @@ import com.ds.avare.touch.MultiTouchController.PointInfo;
 import com.ds.avare.touch.MultiTouchController.PositionAndScale;
 import com.ds.avare.utils.BitmapHolder;
 import com.ds.avare.utils.Helper;
+import com.ds.avare.utils.RenderProfiler;
+import com.ds.avare.utils.RenderState;
+import com.ds.avare.utils.Scheduler;
 import com.ds.avare.weather.AirSigMet;
 import com.ds.avare.R;
 
@@ -110,13 +119,13 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
      * Task that would draw tiles on bitmap.
      */
     private TileDrawTask                mTileDrawTask; 
-    private Thread                      mTileDrawThread;
+    private Scheduler.Token             mTileDrawToken;
 
     /**
      * Task that would draw obstacles
      */
     private ObstacleTask                mObstacleTask; 
-    private Thread                      mObstacleThread;
+    private Scheduler.Token             mObstacleToken;
 
     /**
      * Task that finds closets airport.
@@ -183,6 +192,34 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
      * Threshold for terrain
      */
     private float                      mThreshold;
+
+    /*
+     * Paints, filters, and colors from preferences
+     */
+    private RenderState                mRenderState;
+
+    /*
+     * Times map layers, null when not enabled
+     */
+    private RenderProfiler             mProfiler;
+
+    /*
+     * Shapes on screen, filled each frame from indexes
+     */
+    private ArrayList<TFRShape>        mTFRShapes;
+    private ArrayList<AirSigMet>       mAirSigMets;
+
+    /*
+     * TFR alert text, made again only when its TFR or minutes change
+     */
+    private String                     mIncursionAlert;
+    private TFRShape                   mIncursionShape;
+    private int                        mIncursionMinutes;
+
+    /*
+     * Redraw when weather changes
+     */
+    private Observer                   mWeatherObserver;
     
 
     private boolean                    mTrackUp;
@@ -235,6 +272,20 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
         mDraw = false;
         
         mPref = new Preferences(context);
+        mRenderState = new RenderState(context);
+        mRenderState.update(mPref);
+        mProfiler = null;
+        mTFRShapes = new ArrayList<TFRShape>();
+        mAirSigMets = new ArrayList<AirSigMet>();
+        mIncursionAlert = null;
+        mIncursionShape = null;
+        mIncursionMinutes = -1;
+        mWeatherObserver = new Observer() {
+            @Override
+            public void update(Observable observable, Object data) {
+                postInvalidate();
+            }
+        };
         mTextDiv = mPref.isPortrait() ? 24.f : 15.f;
         
         mFace = Typeface.createFromAsset(mContext.getAssets(), "LiberationMono-Bold.ttf");
@@ -246,12 +297,7 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
         mTextPaint.setTypeface(mFace);
 
         mTileDrawTask = new TileDrawTask();
-        mTileDrawThread = new Thread(mTileDrawTask);
-        mTileDrawThread.start();
-
         mObstacleTask = new ObstacleTask();
-        mObstacleThread = new Thread(mObstacleTask);
-        mObstacleThread.start();
 
         setOnTouchListener(this);
         mAirplaneBitmap = new BitmapHolder(context, mPref.isHelicopter() ? R.drawable.heli : R.drawable.plane);
@@ -460,7 +506,12 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
          */
         mTileDrawTask.lat = mGpsParams.getLatitude();
         mTileDrawTask.lon = mGpsParams.getLongitude();
-        mTileDrawThread.interrupt();
+        if(null != mService) {
+            /*
+             * Many moves while drawing make one more draw at the latest place
+             */
+            mTileDrawToken = mService.getScheduler().submit(Scheduler.DECODE, "tile", Scheduler.PRIORITY_HIGH, mTileDrawTask);
+        }
     }
 
     /**
@@ -510,19 +561,6 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
                     continue;
                 }
 
-                if(mPref.isNightMode() && (mPref.getChartType().equals("3") || mPref.getChartType().equals("4"))) {
-                    /*
-                     * IFR charts invert color at night
-                     */
-                    Helper.invertCanvasColors(mPaint);
-                }
-                else if(mPref.getChartType().equals("5")) {
-                    /*
-                     * Terrain
-                     */
-                    Helper.setThreshold(mPaint, mThreshold);
-                }
-                
                 /*
                  * Pretty straightforward. Pan and draw individual tiles.
                  */
@@ -544,14 +582,28 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
                 
                 Bitmap b = tile.getBitmap();
                 if(null != b) {
-                    canvas.drawBitmap(b, tile.getTransform(), mPaint);
+                    canvas.drawBitmap(b, tile.getTransform(), mRenderState.getTilePaint());
                 }
-                
-                Helper.restoreCanvasColors(mPaint);
             }
         }
     }
 
+    /**
+     * Find shapes on screen, with a screen of margin on each side as canvas may be rotated for track up
+     * @param index
+     * @param out
+     */
+    private <T> void findOnScreen(ShapeIndex<T> index, List<T> out) {
+        double lonL = mOrigin.getLongitudeLeft();
+        double lonR = mOrigin.getLongitudeRight();
+        double latU = mOrigin.getLatitudeUpper();
+        double latL = mOrigin.getLatitudeLower();
+        double lonMargin = Math.abs(lonR - lonL) * (1 + (double)getHeight() / Math.max(1, getWidth()));
+        double latMargin = Math.abs(latU - latL) * (1 + (double)getWidth() / Math.max(1, getHeight()));
+        index.find(Math.min(lonL, lonR) - lonMargin, Math.min(latU, latL) - latMargin,
+                Math.max(lonL, lonR) + lonMargin, Math.max(latU, latL) + latMargin, out);
+    }
+
     /**
      * 
      * @param canvas
@@ -563,16 +615,17 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
         /*
          * Draw TFRs, TFR
          */            
-        LinkedList<TFRShape> shapes = null;
+        ShapeIndex<TFRShape> index = null;
         if(null != mService) {
-            shapes = mService.getTFRShapes();
+            index = mService.getTFRIndex();
         }
-        if(null != shapes) {
+        if(null != index) {
             mPaint.setColor(Color.RED);
             mPaint.setStrokeWidth(8); //TODO Should probably be dynamic based on device resolution
             mPaint.setShadowLayer(0, 0, 0, 0);
-            for(int shape = 0; shape < shapes.size(); shape++) {
-                shapes.get(shape).drawShape(canvas, mOrigin, mScale, mMovement, mPaint, mFace);
+            findOnScreen(index, mTFRShapes);
+            for(int shape = 0; shape < mTFRShapes.size(); shape++) {
+                mTFRShapes.get(shape).drawShape(canvas, mOrigin, mScale, mMovement, mPaint, mFace);
             }
         }
     }
@@ -587,39 +640,29 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
         /*
          * Draw TFRs, TFR
          */            
-        List<AirSigMet> mets = null;
+        ShapeIndex<AirSigMet> index = null;
         if(null != mService) {
-            mets = mService.getInternetWeatherCache().getAirSigMet();
+            index = mService.getInternetWeatherCache().getAirSigMetIndex();
         }
-        if(null != mets) {
+        if(null != index) {
             mPaint.setStrokeWidth(4); //TODO Should probably be dynamic based on device resolution
             mPaint.setShadowLayer(0, 0, 0, 0);
-            String typeArray[] = mContext.getResources().getStringArray(R.array.AirSig);
-            int colorArray[] = mContext.getResources().getIntArray(R.array.AirSigColor);
-            String storeType = mPref.getAirSigMetType();
-            for(int i = 0; i < mets.size(); i++) {
-                AirSigMet met = mets.get(i);
-                int color = 0;
+            int color = mRenderState.getAirSigMetColor();
+            findOnScreen(index, mAirSigMets);
+            for(int i = 0; i < mAirSigMets.size(); i++) {
+                AirSigMet met = mAirSigMets.get(i);
                 
-                String type = met.hazard + " " + met.reportType;
-                if(!storeType.equals(type)) {
+                if(!mRenderState.isAirSigMetShown(met.hazard, met.reportType)) {
                     /*
                      * This should not be drawn.
                      */
                     continue;
                 }
                 
-                for(int j = 0; j < typeArray.length; j++) {
-                    if(typeArray[j].equals(type)) {
-                        color = colorArray[j];
-                        break;
-                    }
-                }
-                
                 /*
                  * Now draw
                  */
-                if(met.shape != null && color != 0) {
+                if(met.shape != null) {
                     mPaint.setColor(color);
                     met.shape.drawShape(canvas, mOrigin, mScale, mMovement, mPaint, mFace);
                 }
@@ -679,7 +722,27 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
          */
         mPaint.setColor(TEXT_COLOR);
         mPaint.setTextAlign(Align.LEFT);
-        canvas.drawText(Helper.calculateAltitudeFromThreshold(mThreshold), 0, getHeight() / mTextDiv * 2, mPaint);
+        canvas.drawText(mRenderState.getAltitude(), 0, getHeight() / mTextDiv * 2, mPaint);
+
+        /*
+         * TFR on track ahead
+         */
+        if(mService != null && mService.getIncursion() != null) {
+            Incursion.Result incursion = mService.getIncursion().getResult();
+            int seconds = incursion.getSeconds();
+            if(seconds >= 0) {
+                int minutes = (seconds + 59) / 60;
+                if(null == mIncursionAlert || incursion.getShape() != mIncursionShape || minutes != mIncursionMinutes) {
+                    mIncursionAlert = seconds == 0 ? mContext.getString(R.string.TFRInside) :
+                        mContext.getString(R.string.TFRAhead, minutes);
+                    mIncursionShape = incursion.getShape();
+                    mIncursionMinutes = minutes;
+                }
+                mPaint.setColor(Color.RED);
+                mPaint.setTextAlign(Align.CENTER);
+                canvas.drawText(mIncursionAlert, getWidth() / 2, getHeight() / mTextDiv * 3, mPaint);
+            }
+        }
 
         /*
          * Point top right
@@ -974,19 +1037,71 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
             float y = (float)mOrigin.getOffsetY(mGpsParams.getLatitude());
             canvas.rotate(-(int)mGpsParams.getBearing(), x, y);
         }
+        RenderProfiler profiler = mProfiler;
+        if(null != profiler) {
+            profiler.begin();
+        }
     	drawTiles(canvas);
+        if(null != profiler) {
+            profiler.mark(RenderProfiler.TILES);
+        }
     	drawNexrad(canvas);
+        if(null != profiler) {
+            profiler.mark(RenderProfiler.NEXRAD);
+        }
         drawDrawing(canvas);
+        if(null != profiler) {
+            profiler.mark(RenderProfiler.DRAWING);
+        }
         drawRunways(canvas);
+        if(null != profiler) {
+            profiler.mark(RenderProfiler.RUNWAYS);
+        }
     	drawTFR(canvas);
+        if(null != profiler) {
+            profiler.mark(RenderProfiler.TFR);
+        }
     	drawAirSigMet(canvas);
+        if(null != profiler) {
+            profiler.mark(RenderProfiler.AIRSIGMET);
+        }
         drawTrack(canvas);
+        if(null != profiler) {
+            profiler.mark(RenderProfiler.TRACK);
+        }
         drawObstacles(canvas);
+        if(null != profiler) {
+            profiler.mark(RenderProfiler.OBSTACLES);
+        }
         drawAircraft(canvas);
+        if(null != profiler) {
+            profiler.mark(RenderProfiler.AIRCRAFT);
+        }
         if(mTrackUp) {
             canvas.restore();
         }
     	drawCornerTexts(canvas);
+        if(null != profiler) {
+            profiler.mark(RenderProfiler.TEXTS);
+            profiler.end();
+            
+            /*
+             * Overlay is not timed
+             */
+            mPaint.setColor(TEXT_COLOR);
+            profiler.draw(canvas, mPaint, 0, getHeight() / mTextDiv * 3);
+            if(null != mService) {
+                /*
+                 * Background work under frame times, to see what competes with drawing
+                 */
+                float y = getHeight() / mTextDiv * 3 + (RenderProfiler.LAYERS + 1) * mPaint.getTextSize();
+                String stats[] = mService.getScheduler().getStats();
+                for(int lane = 0; lane < stats.length; lane++) {
+                    canvas.drawText(stats[lane], 0, y, mPaint);
+                    y += mPaint.getTextSize();
+                }
+            }
+        }
     }    
 
     /**
@@ -995,6 +1110,7 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
      */
     public void updateThreshold(float threshold) {
         mThreshold = threshold;
+        mRenderState.setThreshold(threshold);
         invalidate();
     }
 
@@ -1024,6 +1140,7 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
      * 
      */
     public void forceReload() {
+        mRenderState.update(mPref);
         dbquery(true);        
     }
         
@@ -1050,7 +1167,9 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
         mObstacleTask.lon = mGpsParams.getLongitude();
         mObstacleTask.lat = mGpsParams.getLatitude();
         
-        mObstacleThread.interrupt();
+        if(null != mService) {
+            mObstacleToken = mService.getScheduler().submit(Scheduler.DB, "obstacle", Scheduler.PRIORITY_LOW, mObstacleTask);
+        }
     }
 
     
@@ -1065,6 +1184,7 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
         mService = service;
         mMovement = mService.getMovement();
         mImageDataSource = mService.getDBResource();
+        mService.getInternetWeatherCache().addObserver(mWeatherObserver);
         if(null == mMovement) {
             mMovement = new Movement();
         }
@@ -1082,6 +1202,13 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
             mGpsParams = new GpsParams(null);
         }
         mScale.setScaleAt(mGpsParams.getLatitude());
+        mRenderState.update(mPref);
+        if(!mPref.isRenderProfile()) {
+            mProfiler = null;
+        }
+        else if(null == mProfiler) {
+            mProfiler = new RenderProfiler();
+        }
         dbquery(true);
         postInvalidate();
     }
@@ -1103,7 +1230,7 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
      * @author zkhan
      *
      */
-    private class TileDrawTask implements Runnable {
+    private class TileDrawTask extends Scheduler.Task {
         private double offsets[] = new double[2];
         private double p[] = new double[2];
         public double lon;
@@ -1113,89 +1240,77 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
         private String   tileNames[];
         private Tile centerTile;
         private Tile gpsTile;
-        public boolean running = true;
 
         /* (non-Javadoc)
-         * @see android.os.AsyncTask#doInBackground(Params[])
+         * @see com.ds.avare.utils.Scheduler.Task#run(com.ds.avare.utils.Scheduler.Token)
          */
         @Override
-        public void run() {
+        public void run(Scheduler.Token token) {
             
-            Thread.currentThread().setName("Tile");
-
-            while(running) {
-                try {
-                    Thread.sleep(1000 * 3600);
-                }
-                catch(Exception e) {
-                    
-                }
+            if(mImageDataSource == null) {
+                return;
+            }
+            
+            /*
+             * Now draw in background
+             */
+            gpsTile = mImageDataSource.findClosest(lon, lat, offsets, p, mScale.downSample());
+            
+            if(gpsTile == null) {
+                return;
+            }
+            
+            movex = mPan.getTileMoveXWithoutTear();
+            movey = mPan.getTileMoveYWithoutTear();
+            
+            String newt = gpsTile.getNeighbor(movey, movex);
+            centerTile = mImageDataSource.findTile(newt);
+            if(null == centerTile) {
+                return;
+            }
+            
+            if(null == mService) {
+                return;
+            }
 
-                if(mImageDataSource == null) {
-                    continue;
-                }
-                
-                /*
-                 * Now draw in background
-                 */
-                gpsTile = mImageDataSource.findClosest(lon, lat, offsets, p, mScale.downSample());
-                
-                if(gpsTile == null) {
-                    continue;
-                }
-                
-                movex = mPan.getTileMoveXWithoutTear();
-                movey = mPan.getTileMoveYWithoutTear();
-                
-                String newt = gpsTile.getNeighbor(movey, movex);
-                centerTile = mImageDataSource.findTile(newt);
-                if(null == centerTile) {
-                    continue;
-                }
-                
-                if(null == mService) {
-                    continue;
-                }
-    
-                /*
-                 * Neighboring tiles with center and pan
-                 */
-                int i = 0;
-                tileNames = new String[mService.getTiles().getTilesNum()];
-                for(int tiley = -(int)(mService.getTiles().getYTilesNum() / 2) ; 
-                        tiley <= (mService.getTiles().getYTilesNum() / 2); tiley++) {
-                    for(int tilex = -(int)(mService.getTiles().getXTilesNum() / 2); 
-                            tilex <= (mService.getTiles().getXTilesNum() / 2) ; tilex++) {
-                        tileNames[i++] = centerTile.getNeighbor(tiley, tilex);
-                    }
+            /*
+             * Neighboring tiles with center and pan
+             */
+            int i = 0;
+            tileNames = new String[mService.getTiles().getTilesNum()];
+            for(int tiley = -(int)(mService.getTiles().getYTilesNum() / 2) ; 
+                    tiley <= (mService.getTiles().getYTilesNum() / 2); tiley++) {
+                for(int tilex = -(int)(mService.getTiles().getXTilesNum() / 2); 
+                        tilex <= (mService.getTiles().getXTilesNum() / 2) ; tilex++) {
+                    tileNames[i++] = centerTile.getNeighbor(tiley, tilex);
                 }
-                
-                /*
-                 * Load tiles, draw in UI thread
-                 */
-                mPan.setMove((float)(mPan.getMoveX() * mAdjustPan), (float)(mPan.getMoveY() * mAdjustPan));
-                mService.getTiles().reload(tileNames, mAdjustPan != 1);
-                mService.getTiles().flip();
+            }
+            
+            /*
+             * Load tiles, draw in UI thread
+             */
+            mPan.setMove((float)(mPan.getMoveX() * mAdjustPan), (float)(mPan.getMoveY() * mAdjustPan));
+            mService.getTiles().reload(tileNames, mAdjustPan != 1);
+            mService.getTiles().flip();
 
-                mScale.setScaleAt(centerTile.getLatitude());
-                mOnChart = centerTile.getChart();
+            mScale.setScaleAt(centerTile.getLatitude());
+            mOnChart = centerTile.getChart();
 
-                /*
-                 * And pan
-                 */
-                mPan.setTileMove(movex, movey);
-                mService.setPan(mPan);
-                mMovement = new Movement(offsets, p);
-                mService.setMovement(mMovement);
-                mPy = centerTile.getPy();
-                mPx = centerTile.getPx();
-                
-                synchronized(LocationView.this) {
-                    mAdjustPan = 1;
-                }
-    
-                postInvalidate();
+            /*
+             * And pan
+             */
+            mPan.setTileMove(movex, movey);
+            mService.setPan(mPan);
+            mMovement = new Movement(offsets, p);
+            mService.setMovement(mMovement);
+            mPy = centerTile.getPy();
+            mPx = centerTile.getPx();
+            
+            synchronized(LocationView.this) {
+                mAdjustPan = 1;
             }
+
+            postInvalidate();
         }
     }    
 
@@ -1255,35 +1370,22 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
      * @author zkhan
      * Find obstacles
      */
-    private class ObstacleTask implements Runnable {
+    private class ObstacleTask extends Scheduler.Task {
         public Double lon;
         public Double lat;
         public Double alt;
         
-        public boolean running = true;
-        
         /* (non-Javadoc)
-         * @see android.os.AsyncTask#doInBackground(Params[])
+         * @see com.ds.avare.utils.Scheduler.Task#run(com.ds.avare.utils.Scheduler.Token)
          */
         @Override
-        public void run() {
-            Thread.currentThread().setName("Obstacle");
-
-            while(running) {
-
-                try {
-                    Thread.sleep(1000 * 3600);
-                }
-                catch (Exception e) {
-                    
-                }
-                if(null != mImageDataSource) {
-                    /*
-                     * Find obstacles in background as well
-                     */
-                    mObstacles = mImageDataSource.findObstacles(lon, lat, alt.intValue());
-                }                
-            }
+        public void run(Scheduler.Token token) {
+            if(null != mImageDataSource) {
+                /*
+                 * Find obstacles in background as well
+                 */
+                mObstacles = mImageDataSource.findObstacles(lon, lat, alt.intValue());
+            }                
         }
     }
 
@@ -1364,11 +1466,27 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
             /*
              * Get TFR text if touched on its top
              */
-            LinkedList<TFRShape> shapes = null;
-            List<AirSigMet> mets = null;
+            ShapeIndex<TFRShape> tfrIndex = null;
+            ShapeIndex<AirSigMet> metIndex = null;
             if(null != mService) {
-                shapes = mService.getTFRShapes();
-                mets = mService.getInternetWeatherCache().getAirSigMet();
+                tfrIndex = mService.getTFRIndex();
+                metIndex = mService.getInternetWeatherCache().getAirSigMetIndex();
+            }
+
+            /*
+             * Only shapes whose top is within touch distance
+             */
+            double dlon = Math.abs(mOrigin.getLongitudeOf(x + Shape.WIDTHTOP) - lon2);
+            double dlat = Math.abs(mOrigin.getLatitudeOf(y + Shape.WIDTHTOP) - lat2);
+            List<TFRShape> shapes = null;
+            List<AirSigMet> mets = null;
+            if(null != tfrIndex) {
+                shapes = new ArrayList<TFRShape>();
+                tfrIndex.find(lon2 - dlon, lat2 - dlat, lon2 + dlon, lat2 + dlat, shapes);
+            }
+            if(null != metIndex) {
+                mets = new ArrayList<AirSigMet>();
+                metIndex.find(lon2 - dlon, lat2 - dlat, lon2 + dlon, lat2 + dlat, mets);
             }
             if(null != shapes) {
                 for(int shape = 0; shape < shapes.size(); shape++) {
@@ -1457,10 +1575,18 @@ public class LocationView extends View implements MultiTouchObjectCanvas<Object>
      * 
      */
     public void cleanup() {
-        mObstacleTask.running = false;
-        mTileDrawTask.running = false;
-        mTileDrawThread.interrupt();
-        mObstacleThread.interrupt();
+        if(null != mTileDrawToken) {
+            mTileDrawToken.cancel();
+        }
+        if(null != mObstacleToken) {
+            mObstacleToken.cancel();
+        }
+        if(null != mProfiler) {
+            mProfiler.dump(mPref.mapsFolder() + "/profile.csv");
+        }
+        if(null != mService) {
+            mService.getInternetWeatherCache().deleteObserver(mWeatherObserver);
+        }
     }
     
     /**
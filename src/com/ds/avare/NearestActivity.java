@@ -17,12 +17,16 @@ import java.util.Observer;
 
 import com.ds.avare.animation.AnimateButton;
 import com.ds.avare.gdl90.AdsbStatus;
+import com.ds.avare.gdl90.Id413Product;
 import com.ds.avare.gdl90.Id6364Product;
 import com.ds.avare.gps.GpsInterface;
 import com.ds.avare.gps.GpsParams;
 import com.ds.avare.place.Destination;
 import com.ds.avare.storage.Preferences;
 import com.ds.avare.utils.Helper;
+import com.ds.avare.utils.WeatherHelper;
+import com.ds.avare.weather.FlightCategory;
+import com.ds.avare.weather.Metar;
 
 import android.app.Activity;
 import android.content.ComponentName;
@@ -84,6 +88,10 @@ public class NearestActivity extends Activity  implements Observer {
             
         }
 
+        @Override
+        public void adbsMessageCallbackText(Id413Product pt) {
+        }
+
         @Override
         public void adbsStatusCallback(AdsbStatus adsbStatus) {
             // TODO Auto-generated method stub
@@ -166,6 +174,7 @@ public class NearestActivity extends Activity  implements Observer {
         final String [] bearing = new String[airportnum];
         final String [] fuel = new String[airportnum];
         final String[] elevation = new String[airportnum];
+        final int[] color = new int[airportnum];
 
         for(int id = 0; id < airportnum; id++) {
             airport[id] = mService.getArea().getAirport(id).getId();
@@ -177,11 +186,19 @@ public class NearestActivity extends Activity  implements Observer {
             bearing[id] = Helper.correctConvertHeading(Math.round(heading)) + '\u00B0';
             elevation[id] = mService.getArea().getAirport(id).getElevation();
         }
+
+        /*
+         * Color airports by flight category of their METAR, from internet or ADS-B
+         */
+        Metar metars[] = mService.getInternetWeatherCache().getMetars(airport);
+        for(int id = 0; id < airportnum; id++) {
+            color[id] = WeatherHelper.metarColor(null == metars[id] ? FlightCategory.UNKNOWN : FlightCategory.get(metars[id]));
+        }
         if(null == mNearestAdapter) {
-            mNearestAdapter = new NearestAdapter(NearestActivity.this, dist, airportname, bearing, fuel, elevation);
+            mNearestAdapter = new NearestAdapter(NearestActivity.this, dist, airportname, bearing, fuel, elevation, color);
         }
         else {
-            mNearestAdapter.updateList(dist, airportname, bearing, fuel, elevation);
+            mNearestAdapter.updateList(dist, airportname, bearing, fuel, elevation, color);
         }
         return true;
     }
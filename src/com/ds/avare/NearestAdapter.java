@@ -31,13 +31,15 @@ public class NearestAdapter extends ArrayAdapter<String> {
     private String[] mBearing;
     private String[] mFuel;
     private String[] mElevation;
+    private int[] mColor;
         
     /**
      * @param context
      * @param textViewResourceId
+     * @param color of name, from flight category
      */
     public NearestAdapter(Context context, String[] distance, String name[], 
-            String bearing[], String[] fuel, String[] runway) {
+            String bearing[], String[] fuel, String[] runway, int[] color) {
         super(context, R.layout.nearest, distance);
         mContext = context;
         mBearing = bearing;
@@ -45,6 +47,7 @@ public class NearestAdapter extends ArrayAdapter<String> {
         mName = name;
         mFuel = fuel;
         mElevation = runway;
+        mColor = color;
     }
 
     /**
@@ -54,14 +57,16 @@ public class NearestAdapter extends ArrayAdapter<String> {
      * @param bearing
      * @param fuel
      * @param elevation
+     * @param color
      */
     public void updateList(String[] distance, String name[], 
-            String bearing[], String[] fuel, String[] elevation) {
+            String bearing[], String[] fuel, String[] elevation, int[] color) {
         mBearing = bearing;
         mDistance = distance;
         mName = name;
         mFuel = fuel;
         mElevation = elevation;
+        mColor = color;
         notifyDataSetChanged();
     }
     
@@ -80,6 +85,7 @@ public class NearestAdapter extends ArrayAdapter<String> {
         textView.setText(mBearing[position]);
         textView = (TextView)rowView.findViewById(R.id.nearest_list_aid_name);
         textView.setText(mName[position]);
+        textView.setTextColor(mColor[position]);
         textView = (TextView)rowView.findViewById(R.id.nearest_list_fuel);
         textView.setText(mFuel[position]);
         textView = (TextView)rowView.findViewById(R.id.nearest_list_elevation);
@@ -17,6 +17,7 @@ import java.util.ArrayList;
 
 import com.ds.avare.animation.AnimateButton;
 import com.ds.avare.gdl90.AdsbStatus;
+import com.ds.avare.gdl90.Id413Product;
 import com.ds.avare.gdl90.Id6364Product;
 import com.ds.avare.gps.GpsInterface;
 import com.ds.avare.place.Destination;
@@ -100,6 +101,10 @@ public class PlanActivity extends Activity {
         @Override
         public void adbsStatusCallback(AdsbStatus adsbStatus) {
         }
+
+        @Override
+        public void adbsMessageCallbackText(Id413Product pt) {
+        }
     };
 
     /*
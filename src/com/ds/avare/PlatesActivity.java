@@ -16,6 +16,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.ds.avare.gdl90.AdsbStatus;
+import com.ds.avare.gdl90.Id413Product;
 import com.ds.avare.gdl90.Id6364Product;
 import com.ds.avare.gps.Gps;
 import com.ds.avare.gps.GpsInterface;
@@ -121,6 +122,10 @@ public class PlatesActivity extends Activity {
             
         }
 
+        @Override
+        public void adbsMessageCallbackText(Id413Product pt) {
+        }
+
         @Override
         public void adbsStatusCallback(AdsbStatus adsbStatus) {
             // TODO Auto-generated method stub
@@ -17,8 +17,10 @@ import java.util.List;
 import com.ds.avare.position.Coordinate;
 import com.ds.avare.utils.WeatherHelper;
 import com.ds.avare.weather.Airep;
+import com.ds.avare.weather.FlightCategory;
 import com.ds.avare.weather.Metar;
 import com.ds.avare.weather.Taf;
+import com.ds.avare.weather.WeatherDecoder;
 
 import android.content.Context;
 import android.graphics.Typeface;
@@ -41,6 +43,7 @@ public class PopoutAdapter extends BaseExpandableListAdapter {
     private String[][] mChildren;
     
     private Metar mMetar;
+    private int mMetarCategory;
     private Taf mTaf;
     private List<Airep> mAirep;
     private String mTfr;
@@ -119,6 +122,7 @@ public class PopoutAdapter extends BaseExpandableListAdapter {
              * Now find all about this airport 
              */
             mMetar = service.getInternetWeatherCache().getMetar(location);
+            mMetarCategory = (null == mMetar) ? FlightCategory.UNKNOWN : FlightCategory.get(mMetar);
             mTaf = service.getInternetWeatherCache().getTaf(location);
            
             Coordinate c = service.getDBResource().getCoordinate(location);
@@ -136,7 +140,7 @@ public class PopoutAdapter extends BaseExpandableListAdapter {
             }
             else {
                 mChildrenText[GROUP_METAR] = "@ " + mMetar.time + "\n" + 
-                        WeatherHelper.formatWeather(mMetar.rawText);          
+                        WeatherDecoder.formatText(WeatherDecoder.decode(mMetar.rawText, false));          
             }
 
             if(mTaf == null) {
@@ -145,7 +149,7 @@ public class PopoutAdapter extends BaseExpandableListAdapter {
             else {
                 mChildrenText[GROUP_TAF] = 
                         mChildrenText[GROUP_TAF] = "@ " + mTaf.time + "\n" + 
-                        WeatherHelper.formatWeather(mTaf.rawText);          
+                        WeatherDecoder.formatText(WeatherDecoder.decode(mTaf.rawText, true));          
             }
 
             if(mAirep == null) {
@@ -204,7 +208,7 @@ public class PopoutAdapter extends BaseExpandableListAdapter {
          */
         switch(group) {
             case GROUP_METAR:
-                int col = (mMetar == null) ? 0xFFFFFFFF : WeatherHelper.metarColor(mMetar.flightCategory);
+                int col = (mMetar == null) ? 0xFFFFFFFF : WeatherHelper.metarColor(mMetarCategory);
                 tv.setText(mGroups[group]);
                 tv.setTextColor(col);
                 break;
@@ -12,6 +12,7 @@ Redistribution and use in source and binary forms, with or without modification,
 
 package com.ds.avare;
 import com.ds.avare.gdl90.AdsbStatus;
+import com.ds.avare.gdl90.Id413Product;
 import com.ds.avare.gdl90.Id6364Product;
 import com.ds.avare.gps.GpsInterface;
 import com.ds.avare.storage.Preferences;
@@ -61,6 +62,10 @@ public class PrefActivity extends PreferenceActivity {
             // TODO Auto-generated method stub
         }
 
+        @Override
+        public void adbsMessageCallbackText(Id413Product pt) {
+        }
+
         @Override
         public void adbsStatusCallback(AdsbStatus adsbStatus) {
             // TODO Auto-generated method stub
@@ -14,6 +14,7 @@ package com.ds.avare;
 
 import com.ds.avare.R;
 import com.ds.avare.gdl90.AdsbStatus;
+import com.ds.avare.gdl90.Id413Product;
 import com.ds.avare.gdl90.Id6364Product;
 import com.ds.avare.gps.GpsInterface;
 import com.ds.avare.utils.Helper;
@@ -82,6 +83,10 @@ public class SatelliteActivity extends Activity  {
         @Override
         public void adbsStatusCallback(AdsbStatus adsbStatus) {
         }
+
+        @Override
+        public void adbsMessageCallbackText(Id413Product pt) {
+        }
     };
     
     /*
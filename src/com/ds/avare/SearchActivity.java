@@ -20,6 +20,7 @@ import java.util.Observer;
 
 import com.ds.avare.animation.AnimateButton;
 import com.ds.avare.gdl90.AdsbStatus;
+import com.ds.avare.gdl90.Id413Product;
 import com.ds.avare.gdl90.Id6364Product;
 import com.ds.avare.gps.GpsInterface;
 import com.ds.avare.place.Destination;
@@ -111,6 +112,10 @@ public class SearchActivity extends Activity implements Observer {
             
         }
 
+        @Override
+        public void adbsMessageCallbackText(Id413Product pt) {
+        }
+
         @Override
         public void adbsStatusCallback(AdsbStatus adsbStatus) {
             // TODO Auto-generated method stub
@@ -17,21 +17,28 @@ import java.util.Timer;
 import java.util.TimerTask;
 
 import com.ds.avare.gdl90.AdsbStatus;
+import com.ds.avare.gdl90.Id413Product;
 import com.ds.avare.gdl90.Id6364Product;
 import com.ds.avare.gdl90.NexradBitmap;
 import com.ds.avare.gdl90.NexradImage;
 import com.ds.avare.gps.*;
+import com.ds.avare.network.DownloadManager;
+import com.ds.avare.network.HttpCache;
 import com.ds.avare.network.TFRFetcher;
 import com.ds.avare.place.Area;
 import com.ds.avare.place.Destination;
+import com.ds.avare.place.Incursion;
 import com.ds.avare.place.Plan;
 import com.ds.avare.position.Movement;
 import com.ds.avare.position.Pan;
 import com.ds.avare.shapes.Draw;
+import com.ds.avare.shapes.ShapeIndex;
 import com.ds.avare.shapes.TFRShape;
 import com.ds.avare.shapes.TileMap;
 import com.ds.avare.storage.DataSource;
+import com.ds.avare.storage.TilePack;
 import com.ds.avare.utils.BitmapHolder;
+import com.ds.avare.utils.Scheduler;
 import com.ds.avare.weather.InternetWeatherCache;
 
 import android.app.Service;
@@ -96,6 +103,11 @@ public class StorageService extends Service {
      */
     private int mAfdIndex;
 
+    /**
+     * Background work of all kinds, bounded threads
+     */
+    private Scheduler mScheduler;
+
     /**
      * Area around us
      */
@@ -111,6 +123,16 @@ public class StorageService extends Service {
      */
     private TFRFetcher mTFRFetcher;
 
+    /*
+     * Warns of TFRs on track ahead
+     */
+    private Incursion mIncursion;
+
+    /**
+     * Chart downloads, go on when activity is gone
+     */
+    private DownloadManager mDownloadManager;
+
     /**
      * For performing periodic activities.
      */
@@ -181,9 +203,16 @@ public class StorageService extends Service {
           
         super.onCreate();
 
+        mScheduler = new Scheduler();
+
+        /*
+         * Packs open from a previous run in this process may be stale
+         */
+        TilePack.reset();
+
         mImageDataSource = new DataSource(getApplicationContext());
         
-        mArea = new Area(mImageDataSource);
+        mArea = new Area(mImageDataSource, mScheduler);
         mPlan = new Plan();
         
         /*
@@ -191,10 +220,51 @@ public class StorageService extends Service {
          */
         mTiles = new TileMap(getApplicationContext());
           
-        mInternetWeatherCache = new InternetWeatherCache();
+        /*
+         * Weather service responses
+         */
+        HttpCache.setFolder(getCacheDir().getAbsolutePath() + "/http");
+
+        mInternetWeatherCache = new InternetWeatherCache(mScheduler);
         mInternetWeatherCache.parse(getApplicationContext());
-        mTFRFetcher = new TFRFetcher(getApplicationContext());
+        mTFRFetcher = new TFRFetcher(getApplicationContext(), mScheduler);
         mTFRFetcher.parse();
+        mIncursion = new Incursion(mTFRFetcher, mScheduler);
+
+        mDownloadManager = new DownloadManager(getApplicationContext());
+        mDownloadManager.registerListener(new DownloadManager.Listener() {
+            @Override
+            public void progressCallback(int progress) {
+            }
+
+            @Override
+            public void doneCallback(String name, boolean success, String version) {
+                if(!success) {
+                    return;
+                }
+                /*
+                 * If TFR fetched, parse it. 
+                 */
+                if(name.equals(getString(R.string.TFRs))) {
+                    mTFRFetcher.parse();
+                }
+                else if(name.equals("weather")) {
+                    mInternetWeatherCache.parse(getApplicationContext());
+                }
+                /*
+                 * New files were swapped in, tiles on screen may be from the old ones.
+                 * Databases open again on next query.
+                 */
+                else if(null != mTiles) {
+                    mTiles.forceReload();
+                }
+            }
+
+            @Override
+            public void finishedCallback(int failed) {
+            }
+        });
+
         mTimer = new Timer();
         TimerTask gpsTime = new UpdateTask();
         mIsGpsOn = false;
@@ -272,6 +342,9 @@ public class StorageService extends Service {
                         }
                     }
                 }
+                if(null != location) {
+                    mIncursion.updateLocation(getGpsParams());
+                }
             }
 
             /*
@@ -308,6 +381,14 @@ public class StorageService extends Service {
                 mNexradImg.putImg(pn);
             }
 
+            @Override
+            public void adbsMessageCallbackText(Id413Product pt) {
+                String metar = pt.getMetarText();
+                if(null != metar) {
+                    mInternetWeatherCache.putAdsbMetar(metar);
+                }
+            }
+
             @Override
             public void adbsStatusCallback(AdsbStatus adsbStatus) {
                 LinkedList<GpsInterface> list = extracted();
@@ -345,6 +426,7 @@ public class StorageService extends Service {
         if(mGps != null) {
             mGps.stop();
         }
+        mScheduler.shutdown();
         super.onDestroy();
         
         System.runFinalizersOnExit(true);
@@ -370,6 +452,30 @@ public class StorageService extends Service {
         return false;
     }
 
+    /**
+     * 
+     * @return
+     */
+    public DownloadManager getDownloadManager() {
+        return mDownloadManager;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public Scheduler getScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public Incursion getIncursion() {
+        return mIncursion;
+    }
+
     /**
      * 
      * @return
@@ -385,6 +491,13 @@ public class StorageService extends Service {
         return mTFRFetcher.getShapes();
     }
 
+    /**
+     * @return
+     */
+    public ShapeIndex<TFRShape> getTFRIndex() {
+        return mTFRFetcher.getIndex();
+    }
+
     /**
      * @return
      */
@@ -572,6 +685,14 @@ public class StorageService extends Service {
                 }
             }
 
+            /*
+             * Charts where we are download first
+             */
+            GpsParams params = mGpsParams;
+            if(null != params && mDownloadManager.isBusy()) {
+                mDownloadManager.setNear(mImageDataSource.findChartsAt(params.getLongitude(), params.getLatitude()));
+            }
+
         }
     }
     
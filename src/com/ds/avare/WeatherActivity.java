@@ -14,6 +14,7 @@ package com.ds.avare;
 
 import com.ds.avare.R;
 import com.ds.avare.gdl90.AdsbStatus;
+import com.ds.avare.gdl90.Id413Product;
 import com.ds.avare.gdl90.Id6364Product;
 import com.ds.avare.gps.GpsInterface;
 import com.ds.avare.utils.Helper;
@@ -102,6 +103,10 @@ public class WeatherActivity extends Activity {
             
         }
 
+        @Override
+        public void adbsMessageCallbackText(Id413Product pt) {
+        }
+
         @Override
         public void adbsStatusCallback(AdsbStatus adsbStatus) {
             // TODO Auto-generated method stub
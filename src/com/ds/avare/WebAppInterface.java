@@ -12,10 +12,21 @@ Redistribution and use in source and binary forms, with or without modification,
 
 package com.ds.avare;
 
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import com.ds.avare.storage.Preferences;
 import com.ds.avare.utils.NetworkHelper;
+import com.ds.avare.utils.Scheduler;
 import com.ds.avare.utils.WeatherHelper;
+import com.ds.avare.weather.Airep;
+import com.ds.avare.weather.FlightCategory;
+import com.ds.avare.weather.Metar;
+import com.ds.avare.weather.Taf;
+import com.ds.avare.weather.WeatherDecoder;
+import com.ds.avare.weather.WeatherListener;
+import com.ds.avare.weather.WeatherReport;
 
 import android.content.Context;
 import android.location.Location;
@@ -37,6 +48,29 @@ public class WebAppInterface {
     private WebView mWebView;
     private Preferences mPref;
 
+    /*
+     * Last route weather, reused while the route is the same
+     */
+    private String mRouteKey;
+    private long mRouteTime;
+    private RouteWeather mRouteWeather;
+
+    private static final int ROUTE_PIREP = 0;
+    private static final int ROUTE_TAF = 1;
+    private static final int ROUTE_METAR = 2;
+    private static final int ROUTE_PRODUCTS = 3;
+
+    /*
+     * Distance from route for weather, in statute miles as ADDS takes it
+     */
+    private static final int ROUTE_MILES = 30;
+    /*
+     * Not older than the product that expires soonest
+     */
+    private static final long ROUTE_EXPIRES = Math.min(NetworkHelper.PIREP_EXPIRES,
+            Math.min(NetworkHelper.METAR_EXPIRES, NetworkHelper.TAF_EXPIRES));
+    private static final long ROUTE_WAIT = 1000;
+
 
     /** 
      * Instantiate the interface and set the context
@@ -68,6 +102,136 @@ public class WebAppInterface {
     }
 
 
+    /**
+     * Weather reports on a route
+     * @author zkhan
+     *
+     */
+    private static class RouteWeather {
+        private LinkedList<Metar> mMetars = new LinkedList<Metar>();
+        private LinkedList<Taf> mTafs = new LinkedList<Taf>();
+        private LinkedList<Airep> mPireps = new LinkedList<Airep>();
+        private boolean mOk[] = new boolean[ROUTE_PRODUCTS];
+        private CountDownLatch mFetched = new CountDownLatch(ROUTE_PRODUCTS);
+    }
+
+    /**
+     * Fetches one route product
+     * @author zkhan
+     *
+     */
+    private static class FetchTask extends Scheduler.Task {
+
+        private int mProduct;
+        private String mPlan;
+        private String mMiles;
+        private RouteWeather mWeather;
+
+        private FetchTask(int product, String plan, String miles, RouteWeather weather) {
+            mProduct = product;
+            mPlan = plan;
+            mMiles = miles;
+            mWeather = weather;
+        }
+
+        @Override
+        public void run(Scheduler.Token token) {
+            try {
+                fetch();
+            }
+            finally {
+                mWeather.mFetched.countDown();
+            }
+        }
+
+        private void fetch() {
+            switch(mProduct) {
+                case ROUTE_PIREP:
+                    mWeather.mOk[mProduct] = NetworkHelper.getPIREPSPlan(mPlan, mMiles, new WeatherListener<Airep>() {
+                        @Override
+                        public void onReport(Airep report) {
+                            mWeather.mPireps.add(report);
+                        }
+                    });
+                    break;
+                case ROUTE_TAF:
+                    mWeather.mOk[mProduct] = NetworkHelper.getTAFPlan(mPlan, mMiles, new WeatherListener<Taf>() {
+                        @Override
+                        public void onReport(Taf report) {
+                            mWeather.mTafs.add(report);
+                        }
+                    });
+                    break;
+                case ROUTE_METAR:
+                    mWeather.mOk[mProduct] = NetworkHelper.getMETARPlan(mPlan, mMiles, new WeatherListener<Metar>() {
+                        @Override
+                        public void onReport(Metar report) {
+                            mWeather.mMetars.add(report);
+                        }
+                    });
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Get PIREPs, TAFs, METARs on route all at once, or from the last fetch when
+     * the route has not changed and it has not expired.
+     * @param planf
+     * @param miles
+     * @return
+     */
+    private RouteWeather fetchRoute(String planf, String miles) {
+        String key = miles + ";" + planf;
+        long now = System.currentTimeMillis();
+        if(null != mRouteWeather && key.equals(mRouteKey) && (now - mRouteTime) < ROUTE_EXPIRES) {
+            return mRouteWeather;
+        }
+
+        RouteWeather weather = new RouteWeather();
+        Scheduler.Token tokens[] = new Scheduler.Token[ROUTE_PRODUCTS];
+        for(int i = 0; i < ROUTE_PRODUCTS; i++) {
+            tokens[i] = mService.getScheduler().submit(Scheduler.NETWORK, null, Scheduler.PRIORITY_NORMAL,
+                    new FetchTask(i, planf, miles, weather));
+        }
+        while(true) {
+            try {
+                if(weather.mFetched.await(ROUTE_WAIT, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            }
+            catch (InterruptedException e) {
+                /*
+                 * Asked again while fetching, this one finishes anyway
+                 */
+            }
+            /*
+             * Jobs dropped when service shuts down never count down
+             */
+            boolean done = true;
+            for(int i = 0; i < ROUTE_PRODUCTS; i++) {
+                done &= tokens[i].isDone();
+            }
+            if(done) {
+                break;
+            }
+        }
+        boolean ok = true;
+        for(int i = 0; i < ROUTE_PRODUCTS; i++) {
+            ok &= weather.mOk[i];
+        }
+
+        /*
+         * Do not keep a failed download around
+         */
+        if(ok) {
+            mRouteKey = key;
+            mRouteTime = now;
+            mRouteWeather = weather;
+        }
+        return weather;
+    }
+
     /**
      * @author zkhan
      *
@@ -92,13 +256,11 @@ public class WebAppInterface {
                     
                 }
 
-                String Pirep = "";
-                String Metar = "";
-                String Taf = "";
-    
-                String miles = "30";
-                String planf = "";
-                String plan = "";
+                if(!running) {
+                    break;
+                }
+
+                String miles = Integer.toString(ROUTE_MILES);
                 if(null == mService) {
                     Message m = new Message();
                     m.obj = mContext.getString(R.string.WeatherPlan);
@@ -116,83 +278,81 @@ public class WebAppInterface {
                     mHandler.sendMessage(m);
                     continue;
                 }
+                StringBuilder planf = new StringBuilder();
+                StringBuilder plan = new StringBuilder();
                 for(int i = 0; i < num; i++) {
                     Location l = mService.getPlan().getDestination(i).getLocation();
-                    planf += l.getLongitude() + "," + l.getLatitude() + ";";
-                    plan += mService.getPlan().getDestination(i).getID() + "(" +
-                            mService.getPlan().getDestination(i).getType() + ") ";
+                    planf.append(l.getLongitude()).append(',').append(l.getLatitude()).append(';');
+                    plan.append(mService.getPlan().getDestination(i).getID()).append('(').append(
+                            mService.getPlan().getDestination(i).getType()).append(") ");
                 }
-                if(planf.equals("")) {
+                if(planf.length() == 0) {
                     Message m = new Message();
                     m.obj = mContext.getString(R.string.WeatherPlan);
                     mHandler.sendMessage(m);
                     continue;
                 }                
-                
+
+                RouteWeather route = fetchRoute(planf.toString(), miles);
+                boolean translate = mPref.isWeatherTranslated();
+
+                StringBuilder weather = new StringBuilder();
+                weather.append("<form><font size='5' color='black'>").append(plan).append("</font><br></br></form>");
+
                 /*
-                 *  Get PIREP
+                 *  METARs
                  */
-                try {
-                    String out = NetworkHelper.getPIREPSPlan(planf, miles);
-                    String outm[] = out.split("::::");
-                    for(int i = 0; i < outm.length; i++) {
-                        outm[i] = WeatherHelper.formatPirepHTML(outm[i], mPref.isWeatherTranslated());
-                        Pirep += "<font size='5' color='black'>" + outm[i] + "<br></br>";
+                weather.append("<form><font size='6' color='black'>METARs</font><br></br>");
+                if(route.mOk[ROUTE_METAR]) {
+                    for(Metar m : route.mMetars) {
+                        WeatherReport metar = WeatherDecoder.decode(m.rawText, false);
+                        String color = WeatherHelper.metarColorString(FlightCategory.get(m));
+                        weather.append("<b><font size='5' + color='").append(color).append("'>");
+                        weather.append(null == metar.station ? "" : metar.station).append("</b><br>");
+                        weather.append("<font size='5' color='").append(color).append("'>");
+                        weather.append(WeatherDecoder.formatHTML(metar, translate)).append("<br></br>");
                     }
                 }
-                catch(Exception e) {
-                    Pirep = mContext.getString(R.string.WeatherError);
+                else {
+                    weather.append(mContext.getString(R.string.WeatherError));
                 }
-    
-                try {
-                    /*
-                     *  Get TAFs 
-                     */
-                    String out = NetworkHelper.getTAFPlan(planf, miles);
-                    String outm[] = out.split("::::");
-                    for(int i = 0; i < outm.length; i++) {
-                        String taf = WeatherHelper.formatWeatherHTML(outm[i], mPref.isWeatherTranslated());
-                        String vals[] = taf.split(" ");
-                        taf = WeatherHelper.formatVisibilityHTML(WeatherHelper.formatTafHTML(WeatherHelper.formatWindsHTML(taf.replace(vals[0], ""), mPref.isWeatherTranslated()), mPref.isWeatherTranslated()));
-                        Taf += "<b><font size='5' color='black'>" + vals[0] + "</b><br>";
-                        Taf += "<font size='5' color='black'>" + taf + "<br></br>";
+                weather.append("</form>");
+
+                /*
+                 *  TAFs 
+                 */
+                weather.append("<form><font size='6' color='black'>TAFs</font><br></br>");
+                if(route.mOk[ROUTE_TAF]) {
+                    for(Taf t : route.mTafs) {
+                        WeatherReport taf = WeatherDecoder.decode(t.rawText, true);
+                        weather.append("<b><font size='5' color='black'>");
+                        weather.append(null == taf.station ? "" : taf.station).append("</b><br>");
+                        weather.append("<font size='5' color='black'>");
+                        weather.append(WeatherDecoder.formatHTML(taf, translate)).append("<br></br>");
                     }
                 }
-                catch(Exception e) {
-                    Taf = mContext.getString(R.string.WeatherError);
+                else {
+                    weather.append(mContext.getString(R.string.WeatherError));
                 }
-                
-                try {
-                    /*
-                     * 
-                     */
-                    String out = NetworkHelper.getMETARPlan(planf, miles);
-                    String outm[] = out.split("::::");
-                    for(int i = 0; i < outm.length; i++) {
-                        String vals[] = outm[i].split(",");
-                        String vals2[] = vals[1].split(" ");
-                        String color = WeatherHelper.metarColorString(vals[0]);
-                        Metar += "<b><font size='5' + color='" + color + "'>" + vals2[0] + "</b><br>";
-                        Metar += "<font size='5' color='" + color + "'>" + WeatherHelper.formatMetarHTML(vals[1].replace(vals2[0], ""), mPref.isWeatherTranslated()) + "<br></br>";
+                weather.append("</form>");
+
+                /*
+                 *  PIREPs
+                 */
+                weather.append("<form><font size='6' color='black'>PIREPs</font><br></br>");
+                if(route.mOk[ROUTE_PIREP]) {
+                    for(Airep a : route.mPireps) {
+                        weather.append("<font size='5' color='black'>");
+                        weather.append(WeatherHelper.formatPirepHTML(a.rawText, translate)).append("<br></br>");
                     }
                 }
-                catch(Exception e) {
-                    Metar = mContext.getString(R.string.WeatherError);
+                else {
+                    weather.append(mContext.getString(R.string.WeatherError));
                 }
-    
-                plan = "<font size='5' color='black'>" + plan + "</font><br></br>";
-                plan = "<form>" + plan.replaceAll("'", "\"") + "</form>";
-                Metar = "<font size='6' color='black'>METARs</font><br></br>" + Metar; 
-                Metar = "<form>" + Metar.replaceAll("'", "\"") + "</form>";
-                Taf = "<font size='6' color='black'>TAFs</font><br></br>" + Taf; 
-                Taf = "<form>" + Taf.replaceAll("'", "\"") + "</form>";
-                Pirep = "<font size='6' color='black'>PIREPs</font><br></br>" + Pirep; 
-                Pirep = "<form>" + Pirep.replaceAll("'", "\"") + "</form>";
-                
-                String weather = plan + Metar + Taf + Pirep;
+                weather.append("</form>");
     
                 Message m = new Message();
-                m.obj = weather;
+                m.obj = weather.toString().replace('\'', '"');
                 mHandler.sendMessage(m);
             }        
         }
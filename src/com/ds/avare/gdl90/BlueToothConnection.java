@@ -389,7 +389,7 @@ public class BlueToothConnection {
                 
                 if(msg.obj instanceof UplinkMessage) {
                     /*
-                     * Send an uplink nexrad message
+                     * Send an uplink nexrad message, or text like METAR
                      */
                     LinkedList<Product> pds = ((UplinkMessage) msg.obj).getFis().getProducts();
                     for(Product p : pds) {
@@ -397,6 +397,9 @@ public class BlueToothConnection {
                             Id6364Product pn = (Id6364Product)p;
                             mListener.adbsMessageCallbackNexrad(pn);
                         }
+                        else if(p instanceof Id413Product) {
+                            mListener.adbsMessageCallbackText((Id413Product)p);
+                        }
                     }
                 }
                 else if(msg.obj instanceof OwnshipMessage) {
@@ -59,4 +59,27 @@ public class Id413Product extends Product {
         
     }
 
+    /**
+     * 
+     * @return
+     */
+    public String getText() {
+        return mText;
+    }
+
+    /**
+     * 
+     * @return text of METAR or SPECI, null if this is some other product
+     */
+    public String getMetarText() {
+        if(null == mText) {
+            return null;
+        }
+        String text = mText.startsWith("@") ? mText.substring(1) : mText;
+        if(!(text.startsWith("METAR") || text.startsWith("SPECI"))) {
+            return null;
+        }
+        return text;
+    }
+
 }
@@ -12,6 +12,7 @@ Redistribution and use in source and binary forms, with or without modification,
 package com.ds.avare.gps;
 
 import com.ds.avare.gdl90.AdsbStatus;
+import com.ds.avare.gdl90.Id413Product;
 import com.ds.avare.gdl90.Id6364Product;
 
 import android.location.GpsStatus;
@@ -37,5 +38,7 @@ public interface GpsInterface {
     
     void adbsMessageCallbackNexrad(Id6364Product pn);
     
+    void adbsMessageCallbackText(Id413Product pt);
+    
     void adbsStatusCallback(AdsbStatus adsbStatus);
 }
@@ -0,0 +1,121 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+
+package com.ds.avare.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Token bucket shared by all downloads so together they stay under a rate.
+ * Bucket holds at most one second worth of bytes.
+ */
+public class BandwidthLimiter {
+
+    /*
+     * Bytes per second, 0 for no limit
+     */
+    private long mRate;
+    private double mTokens;
+    private long mLast;
+
+    /**
+     * 
+     */
+    public BandwidthLimiter() {
+        mRate = 0;
+        mTokens = 0;
+        mLast = System.currentTimeMillis();
+    }
+
+    /**
+     * 
+     * @return bytes per second, 0 for no limit
+     */
+    public synchronized long getRate() {
+        return mRate;
+    }
+
+    /**
+     * Bytes in bucket are kept, no more than a second of the new rate
+     * @param rate bytes per second, 0 for no limit
+     */
+    public synchronized void setRate(long rate) {
+        if(rate == mRate) {
+            return;
+        }
+        mRate = rate;
+        mTokens = Math.min(mTokens, rate);
+        mLast = System.currentTimeMillis();
+    }
+
+    /**
+     * Take bytes out of bucket, waiting if it went empty
+     * @param bytes
+     * @throws InterruptedIOException
+     */
+    public void take(int bytes) throws InterruptedIOException {
+        long wait;
+        synchronized(this) {
+            if(mRate <= 0) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            mTokens = Math.min(mRate, mTokens + (now - mLast) * mRate / 1000.0);
+            mLast = now;
+            mTokens -= bytes;
+            wait = mTokens >= 0 ? 0 : (long)(-mTokens * 1000 / mRate);
+        }
+        if(wait > 0) {
+            try {
+                Thread.sleep(wait);
+            }
+            catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    /**
+     * 
+     * @param in
+     * @return stream that reads no faster than the limit
+     */
+    public InputStream wrap(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if(b >= 0) {
+                    take(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte b[], int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if(n > 0) {
+                    take(n);
+                }
+                return n;
+            }
+        };
+    }
+}
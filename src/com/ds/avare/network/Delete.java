@@ -13,10 +13,14 @@ Redistribution and use in source and binary forms, with or without modification,
 package com.ds.avare.network;
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Observable;
 
+import com.ds.avare.storage.ChartInventory;
 import com.ds.avare.storage.DataSource;
+import com.ds.avare.storage.TilePack;
 import android.os.Handler;
 import android.os.Message;
 
@@ -31,9 +35,16 @@ public class Delete extends Observable {
     private boolean     mStop;
     private Handler      mHandler;
     private Thread       mThread;
+    private long         mFreed;
    
     public static final int FAILED = -2;
     public static final int SUCCESS = -1;
+
+    /*
+     * Threads deleting at once, and how often progress is sent
+     */
+    private static final int WORKERS = 4;
+    private static final long PROGRESS_PERIOD = 100;
     
        
     /**
@@ -44,6 +55,7 @@ public class Delete extends Observable {
         mStop = false;
         mDt = null;
         mHandler = handler;
+        mFreed = 0;
     }
     
     /**
@@ -69,6 +81,14 @@ public class Delete extends Observable {
         mThread.start();
     }
 
+    /**
+     * 
+     * @return bytes freed so far
+     */
+    public long getFreed() {
+        return mFreed;
+    }
+
     /**
      * 
      * @author zkhan
@@ -79,6 +99,111 @@ public class Delete extends Observable {
         public String path;
         public String chart;
         public DataSource data;
+
+        /*
+         * Files to delete grouped by folder, workers take a folder at a time
+         */
+        private LinkedList<String> mDirs;
+        private HashMap<String, LinkedList<String>> mFiles;
+        private int mTotal;
+        private int mDone;
+        private int mDeleted;
+        private long mLoose;
+
+        /**
+         * 
+         * @return next folder to work on, null when all done
+         */
+        private synchronized String nextDir() {
+            if(mStop || mDirs.isEmpty()) {
+                return null;
+            }
+            return mDirs.removeFirst();
+        }
+
+        /**
+         * 
+         * @param files
+         * @param deleted
+         * @param freed
+         */
+        private synchronized void doneDir(int files, int deleted, long freed) {
+            mDone += files;
+            mDeleted += deleted;
+            mLoose += freed;
+            mFreed += freed;
+        }
+
+        /**
+         * 
+         * @param base
+         * @return
+         */
+        private synchronized int getProgress(long base) {
+            if(0 == mTotal) {
+                return 100;
+            }
+            /*
+             * Size of files not yet deleted is guessed from those that were
+             */
+            long loose = mDeleted == 0 ? 0 : mLoose * mTotal / mDeleted;
+            if(base + loose == 0) {
+                return mDone * 100 / mTotal;
+            }
+            return (int)((base + mLoose) * 100 / (base + loose));
+        }
+
+        /**
+         * Delete files of a folder, and the folder if nothing else is in it
+         * @param dir
+         */
+        private void deleteDir(String dir) {
+            LinkedList<String> names = mFiles.get(dir);
+            File d = new File(path, dir);
+            String have[] = d.list();
+            if(null == have) {
+                /*
+                 * Folder is gone, e.g. tiles of a chart in a pack
+                 */
+                doneDir(names.size(), 0, 0);
+                return;
+            }
+
+            HashSet<String> mine = new HashSet<String>(names);
+            boolean whole = true;
+            for(int i = 0; i < have.length; i++) {
+                if(!mine.contains(have[i])) {
+                    whole = false;
+                    break;
+                }
+            }
+
+            int deleted = 0;
+            long freed = 0;
+            String list[] = whole ? have : names.toArray(new String[names.size()]);
+            for(int i = 0; i < list.length; i++) {
+                if(mStop) {
+                    break;
+                }
+                File f = new File(d, list[i]);
+                long len = f.length();
+                if(f.delete()) {
+                    deleted++;
+                    freed += len;
+                }
+            }
+
+            if(whole && !mStop) {
+                /*
+                 * Remove folder, and folders above it that are now empty
+                 */
+                File root = new File(path);
+                while(null != d && !d.equals(root) && d.delete()) {
+                    d = d.getParentFile();
+                }
+            }
+            doneDir(names.size(), deleted, freed);
+        }
         
         /**
          * 
@@ -91,38 +216,80 @@ public class Delete extends Observable {
             if(data == null || path == null || chart == null) {
                 Message m = mHandler.obtainMessage(Download.FAILED, Delete.this);
                 mHandler.sendMessage(m);
+                return;
             }
-            LinkedList<String> list = data.findFilesToDelete(chart);
-            
-            int fileLength = list.size();
-            int total = 0;
-            int newp;
-            int lastp = FAILED;
+            mFreed = 0;
+
+            /*
+             * Tiles of a chart are in one pack, gone with one delete.
+             */
+            long packed = TilePack.delete(path, chart);
+            mFreed = packed;
 
+            /*
+             * Loose files by folder
+             */
+            LinkedList<String> list = data.findFilesToDelete(chart);
+            mDirs = new LinkedList<String>();
+            mFiles = new HashMap<String, LinkedList<String>>();
+            mTotal = list.size();
+            mDone = 0;
+            mDeleted = 0;
+            mLoose = 0;
             for(String name : list) {
-                
-                if(mStop) {
-                    Message m = mHandler.obtainMessage(Download.FAILED, Delete.this);
-                    mHandler.sendMessage(m);
-                    return;
-                }
-                newp = (int) (total * 50 / fileLength);
-                
-                String toDelete = path + "/" + name;
-                
-                try {
-                    (new File(toDelete)).delete();
-                }
-                catch(Exception e) {
-                    
+                int slash = name.lastIndexOf('/');
+                String dir = slash < 0 ? "" : name.substring(0, slash);
+                LinkedList<String> names = mFiles.get(dir);
+                if(null == names) {
+                    names = new LinkedList<String>();
+                    mFiles.put(dir, names);
+                    mDirs.add(dir);
                 }
-                
-                if(lastp != newp) {
-                    lastp = newp;
-                    Message m = mHandler.obtainMessage(newp, Delete.this);
-                    mHandler.sendMessage(m);
+                names.add(name.substring(slash + 1));
+            }
+
+            Thread workers[] = new Thread[Math.max(1, Math.min(WORKERS, mDirs.size()))];
+            for(int i = 0; i < workers.length; i++) {
+                workers[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        String dir;
+                        while((dir = nextDir()) != null) {
+                            deleteDir(dir);
+                        }
+                    }
+                };
+                workers[i].setName("Delete" + i);
+                workers[i].start();
+            }
+
+            int lastp = FAILED;
+            for(int i = 0; i < workers.length; i++) {
+                while(workers[i].isAlive()) {
+                    try {
+                        workers[i].join(PROGRESS_PERIOD);
+                    }
+                    catch (InterruptedException e) {
+                    }
+                    int newp = getProgress(packed);
+                    if(lastp != newp) {
+                        lastp = newp;
+                        Message m = mHandler.obtainMessage(newp, Delete.this);
+                        mHandler.sendMessage(m);
+                    }
                 }
             }
+
+            /*
+             * Partly deleted is not installed either
+             */
+            ChartInventory.get(path).removed(chart);
+
+            if(mStop) {
+                Message m = mHandler.obtainMessage(Download.FAILED, Delete.this);
+                mHandler.sendMessage(m);
+                return;
+            }
             
             Message m = mHandler.obtainMessage(Download.SUCCESS, Delete.this);
             mHandler.sendMessage(m);
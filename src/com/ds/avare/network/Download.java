@@ -13,20 +13,28 @@ Redistribution and use in source and binary forms, with or without modification,
 package com.ds.avare.network;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
-import java.util.Enumeration;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 
+import com.ds.avare.storage.ChartInventory;
+import com.ds.avare.storage.TilePack;
 import com.ds.avare.utils.Helper;
 import com.ds.avare.utils.NetworkHelper;
 import android.os.Handler;
@@ -45,12 +53,50 @@ public class Download {
     private String mRoot;
     private Handler mHandler;
     private Thread mThread;
+    private BandwidthLimiter mLimiter;
    
     public static final int FAILED = -2;
     public static final int SUCCESS = -1;
     public static final int NONEED = -3;
     
-    private static final int blocksize = 8192;
+    /*
+     * Large reads off the network, and tiles per published pack segment
+     */
+    private static final int blocksize = 65536;
+    private static final int PUBLISH = 4096;
+
+    /*
+     * Stopped downloads go on from last checkpoint saved in chart.resume
+     */
+    private static final String RESUME = ".resume";
+    private static final int RESUME_VERSION = 1;
+    private static final long CHECKPOINT = 128 * 1024;
+    private static final int TIMEOUT = 30000;
+    private static final int RETRIES = 6;
+    private static final long RETRY_WAIT = 1000;
+    private static final long RETRY_WAIT_MAX = 30000;
+
+    /*
+     * Update a chart with changed tiles only if they are at most this percent of zip,
+     * fetching gaps between changed tiles smaller than this rather than making a new request
+     */
+    private static final int DELTA_MAX = 50;
+    private static final long DELTA_GAP = 16 * 1024;
+
+    /*
+     * Files other than tiles are put here till the whole zip is in and checked,
+     * then renamed into place so nothing reads a half written database or plate
+     */
+    private static final String STAGING = ".staging";
+    private static final String TRASH = ".trash";
+
+    /*
+     * Airport folders of plates and minimums a chart installed, as plates/KBOS, one a line.
+     * Many charts share these folders so each removes only its own that a new cycle dropped.
+     */
+    private static final String FOLDERS = ".folders";
+    private static final byte SQLITE_MAGIC[] = {
+        'S', 'Q', 'L', 'i', 't', 'e', ' ', 'f', 'o', 'r', 'm', 'a', 't', ' ', '3', 0};
        
     /**
      * 
@@ -62,6 +108,15 @@ public class Download {
         mVersion = null;
         mRoot = root;
         mHandler = handler;
+        mLimiter = null;
+    }
+
+    /**
+     * 
+     * @param limiter shared with other downloads
+     */
+    public void setLimiter(BandwidthLimiter limiter) {
+        mLimiter = limiter;
     }
     
     /**
@@ -102,25 +157,768 @@ public class Download {
 
         String path;
         String mName;
+
+        /*
+         * Where to go on from, saved in a file so a stopped download picks up again
+         */
+        private String mUrl;
+        private String mValidator;
+        private long mOffset;
+        private long mTotal;
+        private int mFirst;
+        private long mPart;
+        private String mLastName;
+        private long mSaved;
+        private TilePack.Writer mPack;
+        private int mLastp;
+        private long mInstalled;
         
         /**
          * 
-         * @param in
+         * @param in is not closed
          * @param out
+         * @param buffer
          * @throws IOException
          */
-        public final void copyInputStream(InputStream in, OutputStream out) throws IOException {
-            byte[] buffer = new byte[blocksize];
+        public final void copyInputStream(InputStream in, OutputStream out, byte buffer[]) throws IOException {
             int len;
         
             while((len = in.read(buffer)) >= 0) {
                 out.write(buffer, 0, len);
             }
         
-            in.close();
             out.close();
         }
 
+        /**
+         * 
+         * @return
+         */
+        private File getResumeFile() {
+            return new File(path, mName + RESUME);
+        }
+
+        /**
+         * 
+         * @return
+         */
+        private File getStagingDir() {
+            return new File(path + "/" + STAGING, mName);
+        }
+
+        /**
+         * Start from where last download of this file stopped, if any
+         */
+        private void loadResume() {
+            mValidator = null;
+            mOffset = 0;
+            mTotal = 0;
+            mFirst = 0;
+            mPart = 0;
+            mLastName = "";
+            mSaved = 0;
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(getResumeFile())));
+                if(in.readInt() != RESUME_VERSION || !in.readUTF().equals(mUrl)) {
+                    return;
+                }
+                String validator = in.readUTF();
+                long offset = in.readLong();
+                long total = in.readLong();
+                int first = in.readInt();
+                long part = in.readLong();
+                String lastName = in.readUTF();
+                mValidator = validator.length() == 0 ? null : validator;
+                mOffset = offset;
+                mTotal = total;
+                mFirst = first;
+                mPart = part;
+                mLastName = lastName;
+                mSaved = offset;
+            }
+            catch (IOException e) {
+            }
+            finally {
+                if(null != in) {
+                    try {
+                        in.close();
+                    }
+                    catch (IOException e) {
+                    }
+                }
+            }
+        }
+
+        /**
+         * 
+         */
+        private void saveResume() {
+            File file = getResumeFile();
+            File tmp = new File(path, mName + RESUME + TilePack.PART);
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+                out.writeInt(RESUME_VERSION);
+                out.writeUTF(mUrl);
+                out.writeUTF(mValidator == null ? "" : mValidator);
+                out.writeLong(mOffset);
+                out.writeLong(mTotal);
+                out.writeInt(mFirst);
+                out.writeLong(mPart);
+                out.writeUTF(mLastName);
+                out.close();
+                file.delete();
+                if(tmp.renameTo(file)) {
+                    mSaved = mOffset;
+                }
+            }
+            catch (IOException e) {
+                tmp.delete();
+            }
+        }
+
+        /**
+         * Everything in zip before offset is on storage, go on from there if stopped
+         * @param offset of next entry
+         * @param lastName
+         * @throws IOException
+         */
+        private void checkpoint(long offset, String lastName) throws IOException {
+            mPart = (null == mPack) ? 0 : mPack.sync();
+            mOffset = offset;
+            mLastName = lastName;
+            saveResume();
+        }
+
+        /**
+         * Connect, asking for the rest of the file if part of it is done
+         * @return
+         * @throws IOException
+         */
+        private HttpURLConnection connect() throws IOException {
+            HttpURLConnection connection = (HttpURLConnection)new URL(mUrl).openConnection();
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            if(mOffset > 0) {
+                connection.setRequestProperty("Range", "bytes=" + mOffset + "-");
+                if(null != mValidator) {
+                    /*
+                     * Server sends whole file if it changed since
+                     */
+                    connection.setRequestProperty("If-Range", mValidator);
+                }
+            }
+            connection.connect();
+
+            int code = connection.getResponseCode();
+            if(code == HttpURLConnection.HTTP_PARTIAL && mOffset > 0) {
+                String range = connection.getHeaderField("Content-Range");
+                int slash = range == null ? -1 : range.lastIndexOf('/');
+                try {
+                    mTotal = Long.parseLong(range.substring(slash + 1).trim());
+                }
+                catch (Exception e) {
+                    mTotal = connection.getContentLength() > 0 ? mOffset + connection.getContentLength() : 0;
+                }
+                return connection;
+            }
+            if(code != HttpURLConnection.HTTP_OK) {
+                connection.disconnect();
+                throw new IOException("HTTP " + code);
+            }
+
+            /*
+             * Whole file, start over
+             */
+            if(mOffset > 0 || mFirst > 0) {
+                if(null == mPack && mFirst > 0) {
+                    mPack = new TilePack.Writer(path, mName, mFirst, 0);
+                }
+                if(null != mPack) {
+                    mPack.abort();
+                    mPack = null;
+                }
+            }
+            Helper.deleteDir(getStagingDir());
+            mOffset = 0;
+            mFirst = 0;
+            mPart = 0;
+            mLastName = "";
+            mTotal = connection.getContentLength() > 0 ? connection.getContentLength() : 0;
+            mValidator = connection.getHeaderField("ETag");
+            if(null == mValidator) {
+                mValidator = connection.getHeaderField("Last-Modified");
+            }
+            saveResume();
+            return connection;
+        }
+
+        /**
+         * Download and unzip from mOffset on
+         * @param data
+         * @return false if stopped
+         * @throws IOException when the connection drops or data is bad
+         */
+        private boolean fetch(byte data[]) throws IOException {
+            HttpURLConnection connection = connect();
+            InputStream in = connection.getInputStream();
+            if(null != mLimiter) {
+                in = mLimiter.wrap(in);
+            }
+            ZipStream zip = new ZipStream(in, mOffset, blocksize);
+            try {
+                String lastName = mLastName;
+                while(zip.next()) {
+                    if(mStop) {
+                        return false;
+                    }
+
+                    /*
+                     * Keep un-zipping and creating folders
+                     */
+                    String entryName = zip.getName();
+                    if(entryName.endsWith("/")) {
+                        continue;
+                    }
+                    String folder = entryName.split("/")[0];
+                    lastName = folder;
+
+                    boolean tile = folder.equals("tiles");
+                    if(tile) {
+                        /*
+                         * Tiles go in the chart's pack instead of thousands of files.
+                         * Remove a loose tile left by an older download of this chart.
+                         */
+                        if(null == mPack) {
+                            mPack = new TilePack.Writer(path, mName, mFirst, mPart);
+                            mFirst = mPack.getFirst();
+                        }
+                        new File(path + "/" + entryName).delete();
+                        mPack.add(entryName, zip.getInputStream());
+                    }
+                    else {
+                        /*
+                         * Installed when all is in
+                         */
+                        File outf = new File(getStagingDir(), entryName);
+                        outf.getParentFile().mkdirs();
+                        copyInputStream(zip.getInputStream(),
+                            new BufferedOutputStream(new FileOutputStream(outf), blocksize), data);
+                    }
+
+                    /*
+                     * Entry is read, check it before it counts as done
+                     */
+                    if(zip.getCrc() != zip.getExpectedCrc()) {
+                        throw new IOException("CRC error in " + entryName);
+                    }
+
+                    /*
+                     * Show tiles on chart as they come in
+                     */
+                    boolean publish = tile && mPack.getCount() >= PUBLISH;
+                    if(publish) {
+                        mPack.publish();
+                    }
+                    if(publish || zip.getOffset() - mSaved >= CHECKPOINT) {
+                        checkpoint(zip.getOffset(), lastName);
+                    }
+
+                    if(mTotal > 0) {
+                        int newp = (int)(zip.getOffset() * 100 / mTotal);
+                        /* 
+                         * publishing the progress....
+                         */
+                        if(mLastp != newp) {
+                            mLastp = newp;
+                            Message m = mHandler.obtainMessage(newp, Download.this);
+                            mHandler.sendMessage(m);
+                        }
+                    }
+                }
+            }
+            finally {
+                zip.close();
+                connection.disconnect();
+            }
+            return true;
+        }
+
+        /**
+         * Check staged files that can be checked beyond their CRC
+         * @param dir
+         * @throws IOException
+         */
+        private void verify(File dir) throws IOException {
+            File files[] = dir.listFiles();
+            if(null == files) {
+                return;
+            }
+            for(File f : files) {
+                if(f.isDirectory()) {
+                    verify(f);
+                    continue;
+                }
+                if(!f.getName().endsWith(".db")) {
+                    continue;
+                }
+                byte head[] = new byte[SQLITE_MAGIC.length];
+                DataInputStream in = new DataInputStream(new FileInputStream(f));
+                try {
+                    in.readFully(head);
+                }
+                finally {
+                    in.close();
+                }
+                for(int i = 0; i < head.length; i++) {
+                    if(head[i] != SQLITE_MAGIC[i]) {
+                        throw new IOException("Bad database " + f.getName());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Rename a staged file over the live one. Readers that have the old one open keep reading it.
+         * @param from
+         * @param to
+         * @throws IOException
+         */
+        private void replace(File from, File to) throws IOException {
+            mInstalled += from.length();
+            to.getParentFile().mkdirs();
+            if(!from.renameTo(to)) {
+                to.delete();
+                if(!from.renameTo(to)) {
+                    throw new IOException("Cannot install " + to.getName());
+                }
+            }
+        }
+
+        /**
+         * 
+         * @param dir
+         * @return bytes in files of folder
+         */
+        private long size(File dir) {
+            long size = 0;
+            File files[] = dir.listFiles();
+            for(int i = 0; null != files && i < files.length; i++) {
+                size += files[i].isDirectory() ? size(files[i]) : files[i].length();
+            }
+            return size;
+        }
+
+        /**
+         * Swap a staged folder with the live one, so old and new files are never mixed
+         * @param from
+         * @param to
+         * @throws IOException
+         */
+        private void swap(File from, File to) throws IOException {
+            mInstalled += size(from);
+            File trash = new File(path + "/" + STAGING, mName + TRASH);
+            Helper.deleteDir(trash);
+            to.getParentFile().mkdirs();
+            if(to.exists() && !to.renameTo(trash)) {
+                throw new IOException("Cannot install " + to.getName());
+            }
+            if(!from.renameTo(to)) {
+                trash.renameTo(to);
+                throw new IOException("Cannot install " + to.getName());
+            }
+            Helper.deleteDir(trash);
+        }
+
+        /**
+         * Move everything in staging to its place in live folder
+         * @param from staged
+         * @param to live
+         * @param whole swap folders that have files whole, as in plates and minimums
+         * @throws IOException
+         */
+        private void install(File from, File to, boolean whole) throws IOException {
+            File files[] = from.listFiles();
+            if(null == files) {
+                return;
+            }
+            if(whole) {
+                for(File f : files) {
+                    if(!f.isDirectory()) {
+                        swap(from, to);
+                        return;
+                    }
+                }
+            }
+            for(File f : files) {
+                File live = new File(to, f.getName());
+                if(f.isDirectory()) {
+                    install(f, live, whole);
+                }
+                else {
+                    replace(f, live);
+                }
+            }
+        }
+
+        /**
+         * Install staged files after the zip is all in
+         * @throws IOException
+         */
+        private void install() throws IOException {
+            File staging = getStagingDir();
+            File folders[] = staging.listFiles();
+            if(null == folders) {
+                return;
+            }
+            try {
+                verify(staging);
+            }
+            catch (IOException e) {
+                /*
+                 * Bad zip, next try gets it all again
+                 */
+                Helper.deleteDir(staging);
+                getResumeFile().delete();
+                mOffset = 0;
+                mSaved = 0;
+                mLastName = "";
+                throw e;
+            }
+            HashSet<String> owned = new HashSet<String>();
+            for(File f : folders) {
+                String folder = f.getName();
+                File live = new File(path, folder);
+                if(!f.isDirectory()) {
+                    replace(f, live);
+                }
+                else if(folder.equals("plates") || folder.equals("minimums")) {
+                    /*
+                     * Each airport's folder is replaced whole
+                     */
+                    File airports[] = f.listFiles();
+                    for(int i = 0; null != airports && i < airports.length; i++) {
+                        File to = new File(live, airports[i].getName());
+                        if(airports[i].isDirectory()) {
+                            owned.add(folder + "/" + airports[i].getName());
+                            install(airports[i], to, true);
+                        }
+                        else {
+                            replace(airports[i], to);
+                        }
+                    }
+                }
+                else if(folder.equals("afd")) {
+                    /*
+                     * Remove older A/FD of the regions that came in
+                     */
+                    String staged[] = f.list();
+                    String info[] = live.list();
+                    HashSet<String> have = new HashSet<String>();
+                    HashSet<String> regions = new HashSet<String>();
+                    for(int i = 0; i < staged.length; i++) {
+                        have.add(staged[i]);
+                        regions.add(staged[i].split("_")[0]);
+                    }
+                    for(int i = 0; null != info && i < info.length; i++) {
+                        if(regions.contains(info[i].split("_")[0]) && !have.contains(info[i])) {
+                            Helper.deleteDir(new File(live, info[i]));
+                        }
+                    }
+                    install(f, live, false);
+                }
+                else {
+                    install(f, live, false);
+                }
+            }
+
+            /*
+             * Airports this chart had that the new cycle does not
+             */
+            for(String had : loadFolders()) {
+                if(!owned.contains(had)) {
+                    Helper.deleteDir(new File(path, had));
+                }
+            }
+            saveFolders(owned);
+            Helper.deleteDir(staging);
+            staging.getParentFile().delete();
+        }
+
+        /**
+         * 
+         * @return airport folders this chart installed last time
+         */
+        private HashSet<String> loadFolders() {
+            HashSet<String> folders = new HashSet<String>();
+            BufferedReader in = null;
+            try {
+                in = new BufferedReader(new FileReader(new File(path, mName + FOLDERS)));
+                String line;
+                while(null != (line = in.readLine())) {
+                    /*
+                     * Only plates/x or minimums/x, never more than one level
+                     */
+                    String tokens[] = line.split("/");
+                    if(tokens.length == 2 && tokens[1].length() > 0 && !tokens[1].startsWith(".") &&
+                            (tokens[0].equals("plates") || tokens[0].equals("minimums"))) {
+                        folders.add(line);
+                    }
+                }
+            }
+            catch (IOException e) {
+            }
+            finally {
+                if(null != in) {
+                    try {
+                        in.close();
+                    }
+                    catch (IOException e) {
+                    }
+                }
+            }
+            return folders;
+        }
+
+        /**
+         * 
+         * @param folders airport folders this chart installed
+         * @throws IOException
+         */
+        private void saveFolders(HashSet<String> folders) throws IOException {
+            File file = new File(path, mName + FOLDERS);
+            if(folders.isEmpty()) {
+                file.delete();
+                return;
+            }
+            File tmp = new File(path, mName + FOLDERS + TilePack.PART);
+            BufferedWriter bw = new BufferedWriter(new FileWriter(tmp), 8192);
+            try {
+                for(String folder : folders) {
+                    bw.write(folder);
+                    bw.newLine();
+                }
+            }
+            finally {
+                bw.close();
+            }
+            file.delete();
+            if(!tmp.renameTo(file)) {
+                throw new IOException("Cannot save " + file.getName());
+            }
+        }
+
+        /**
+         * Write version file, put chart in inventory, and tell
+         * @param file
+         * @throws IOException
+         */
+        private void done(File file) throws IOException {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(file), 8192);                    
+            bw.write(mVersion);
+            bw.flush();
+            bw.close();
+
+            long size = mInstalled;
+            int tiles = 0;
+            for(TilePack p : TilePack.open(path, mName)) {
+                size += p.getSize();
+                tiles += p.getCount();
+                p.close();
+            }
+            ChartInventory.get(path).installed(mName, mVersion, size, tiles);
+            
+            Message m = mHandler.obtainMessage(Download.SUCCESS, Download.this);
+            mHandler.sendMessage(m);
+        }
+
+        /**
+         * Update a chart by downloading only tiles whose CRC in the zip's directory
+         * is not in the chart's packs. Tiles that did not change are copied from old packs.
+         * @param data
+         * @return false if chart must be downloaded whole
+         */
+        private boolean update(byte data[]) {
+            LinkedList<TilePack> old = TilePack.open(path, mName);
+            TilePack.Writer pack = null;
+            try {
+                if(old.isEmpty()) {
+                    return false;
+                }
+                for(TilePack p : old) {
+                    if(!p.hasCrc()) {
+                        return false;
+                    }
+                }
+
+                ZipDirectory dir = new ZipDirectory(mUrl, TIMEOUT);
+                LinkedList<ZipDirectory.Entry> want = new LinkedList<ZipDirectory.Entry>();
+                LinkedList<ZipDirectory.Entry> keep = new LinkedList<ZipDirectory.Entry>();
+                HashSet<Long> wanted = new HashSet<Long>();
+                long total = 0;
+                long changed = 0;
+                for(ZipDirectory.Entry e : dir.getEntries()) {
+                    if(e.name.endsWith("/")) {
+                        continue;
+                    }
+                    if(!e.name.startsWith("tiles/")) {
+                        /*
+                         * Only charts that are all tiles
+                         */
+                        return false;
+                    }
+                    total += e.end - e.offset;
+                    boolean have = false;
+                    for(TilePack p : old) {
+                        if(p.has(e.name, e.crc)) {
+                            have = true;
+                            break;
+                        }
+                    }
+                    if(have) {
+                        keep.add(e);
+                    }
+                    else {
+                        want.add(e);
+                        wanted.add(e.offset);
+                        changed += e.end - e.offset;
+                    }
+                }
+                if(changed > total * DELTA_MAX / 100) {
+                    return false;
+                }
+
+                pack = new TilePack.Writer(path, mName);
+
+                /*
+                 * Changed entries, runs close together in one request
+                 */
+                long got = 0;
+                int added = 0;
+                Iterator<ZipDirectory.Entry> it = want.iterator();
+                ZipDirectory.Entry e = it.hasNext() ? it.next() : null;
+                while(null != e) {
+                    long start = e.offset;
+                    long end = e.end;
+                    e = it.hasNext() ? it.next() : null;
+                    while(null != e && e.offset - end <= DELTA_GAP) {
+                        end = e.end;
+                        e = it.hasNext() ? it.next() : null;
+                    }
+
+                    HttpURLConnection connection = (HttpURLConnection)new URL(mUrl).openConnection();
+                    connection.setConnectTimeout(TIMEOUT);
+                    connection.setReadTimeout(TIMEOUT);
+                    connection.setRequestProperty("Range", "bytes=" + start + "-" + (end - 1));
+                    if(connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                        connection.disconnect();
+                        throw new IOException("No range support");
+                    }
+                    String range = connection.getHeaderField("Content-Range");
+                    if(null == range || !range.trim().startsWith("bytes " + start + "-")) {
+                        /*
+                         * Must start at the local header asked for
+                         */
+                        connection.disconnect();
+                        throw new IOException("Bad range " + range);
+                    }
+                    InputStream in = connection.getInputStream();
+                    if(null != mLimiter) {
+                        in = mLimiter.wrap(in);
+                    }
+                    ZipStream zip = new ZipStream(in, start, blocksize);
+                    try {
+                        /*
+                         * Range ends right after its last entry, so do not look past it
+                         */
+                        while(zip.getOffset() < end && zip.next()) {
+                            if(mStop) {
+                                throw new IOException("Stopped");
+                            }
+                            if(!wanted.contains(zip.getEntryOffset())) {
+                                zip.closeEntry();
+                                continue;
+                            }
+                            String entryName = zip.getName();
+                            new File(path + "/" + entryName).delete();
+                            pack.add(entryName, zip.getInputStream());
+                            if(zip.getCrc() != zip.getExpectedCrc()) {
+                                throw new IOException("CRC error in " + entryName);
+                            }
+                            added++;
+                            if(pack.getCount() >= PUBLISH) {
+                                pack.publish();
+                            }
+                        }
+                        got += zip.getOffset() - start;
+                    }
+                    finally {
+                        zip.close();
+                        connection.disconnect();
+                    }
+
+                    if(changed > 0) {
+                        int newp = (int)(Math.min(got, changed) * 100 / changed);
+                        if(mLastp != newp) {
+                            mLastp = newp;
+                            Message m = mHandler.obtainMessage(newp, Download.this);
+                            mHandler.sendMessage(m);
+                        }
+                    }
+                }
+
+                /*
+                 * A short response ends with no error, so make sure all changed tiles came
+                 */
+                if(added != want.size()) {
+                    throw new IOException("Got " + added + " of " + want.size() + " tiles");
+                }
+
+                /*
+                 * Same tiles from old packs
+                 */
+                int range[] = new int[2];
+                for(ZipDirectory.Entry k : keep) {
+                    if(mStop) {
+                        throw new IOException("Stopped");
+                    }
+                    byte buf[] = null;
+                    for(TilePack p : old) {
+                        buf = p.read(k.name, range);
+                        if(null != buf) {
+                            break;
+                        }
+                    }
+                    if(null == buf) {
+                        throw new IOException("Missing tile " + k.name);
+                    }
+                    pack.add(k.name, new ByteArrayInputStream(buf, range[0], range[1]));
+                    if(pack.getCount() >= PUBLISH) {
+                        pack.publish();
+                    }
+                }
+
+                for(TilePack p : old) {
+                    p.close();
+                }
+                old.clear();
+                pack.finish();
+                pack = null;
+                return true;
+            }
+            catch (IOException e) {
+                return false;
+            }
+            finally {
+                for(TilePack p : old) {
+                    p.close();
+                }
+                if(null != pack) {
+                    pack.abort();
+                }
+            }
+        }
+
         /**
          * 
          */
@@ -129,12 +927,11 @@ public class Download {
 
             Thread.currentThread().setName("Download");
 
-            BufferedInputStream input;
-            BufferedOutputStream output;
-            int count;
             byte data[] = new byte[blocksize];
             mVersion = NetworkHelper.getVersion(mName);
-            int fileLength;
+            mLastp = FAILED;
+            mPack = null;
+            mInstalled = 0;
                         
             try {
                 File file = new File(path + "/" + mName);
@@ -160,163 +957,70 @@ public class Download {
                     f.createNewFile();
                 }
                 
-                /*
-                 * Path with file name on local storage
-                 */
-                String zipfile = path + "/" + mName + ".zip";
-                String netfile = NetworkHelper.getUrl(mName + ".zip", mVersion, mRoot);
-
                 /* 
-                 * Download the file
+                 * Unzip while downloading, zip never goes to storage.
+                 * On error, go on from last checkpoint after a while.
                  */
-                URL url = new URL(netfile);
-                URLConnection connection = url.openConnection();
-                connection.connect();
-                input = new BufferedInputStream(url.openStream(), blocksize);
-                fileLength = connection.getContentLength();
-                output = new BufferedOutputStream(new FileOutputStream(zipfile), blocksize);
-    
-                long total = 0;
-                int lastp = FAILED;
-                int newp;
-                while(true) {
-                    count = input.read(data, 0, blocksize);
-                    if(count <= 0) {
-                        break;
-                    }
-                    total += count;
-                    newp = (int) (total * 50 / fileLength);
-                    /* 
-                     * publishing the progress....
-                     */
-                    if(lastp != newp) {
-                        lastp = newp;
-                        Message m = mHandler.obtainMessage(newp, Download.this);
-                        mHandler.sendMessage(m);
-                    }
-                    output.write(data, 0, count);
-                    if(mStop) {
-                        output.flush();
-                        output.close();
-                        input.close();
-                        Message m = mHandler.obtainMessage(Download.FAILED, Download.this);
-                        mHandler.sendMessage(m);
-                        return;
-                    }
-                }
-    
-                output.flush();
-                output.close();
-                input.close();
-                
+                mUrl = NetworkHelper.getUrl(mName + ".zip", mVersion, mRoot);
+                loadResume();
+
                 /*
-                 * Now unzip
+                 * New cycle of a chart we have, get only tiles that changed
                  */
-                try {
-                    ZipFile zipFile = new ZipFile(zipfile);
-                    int filenum = zipFile.size();
-                    int totalnum = 0;
-
-                    Enumeration<? extends ZipEntry> entries = zipFile.entries();
-
-                    String lastName = "";
-                    while(entries.hasMoreElements()) {
-                        if(mStop) {
-                            zipFile.close();
-                            new File(zipfile).delete();
-                            Message m = mHandler.obtainMessage(Download.FAILED, Download.this);
-                            mHandler.sendMessage(m);
-                            return;
-                        }
-
-                        ZipEntry entry = (ZipEntry)entries.nextElement();
+                if(0 == mOffset && 0 == mFirst && update(data)) {
+                    done(file);
+                    return;
+                }
 
-                        /*
-                         * Keep un-zipping and creating folders
-                         */
-                        String entryName = entry.getName();
-                        String fn = path + "/" + entryName;
-                        String tokens[] = entryName.split("/");
-                        String folder = tokens[0];
-                        
-                        /*
-                         * This is a new folder, do something with it.
-                         * Mostly needed for delete
-                         */
-                        File dir = new File(fn.substring(0, fn.lastIndexOf("/")));
-                        if(!folder.equals(lastName)) {
-                            
-                            if(dir.exists()) {
-                                /*
-                                 * Delete older plates
-                                 */
-                                if(folder.equals("plates")) {
-                                    Helper.deleteDir(dir);
-                                }
-
-                                /*
-                                 * Delete older minimums
-                                 */
-                                else if(folder.equals("minimums")) {
-                                    Helper.deleteDir(dir);
-                                }
-
-                                /*
-                                 * Delete older A/FD
-                                 */
-                                else if(folder.equals("afd")) {
-                                    String newRegion = (tokens[1].split("_"))[0];
-                                    String[] info = dir.list();
-                                    for(int i = 0; i < info.length; i++) {
-                                        if(info[i].startsWith(newRegion)) {
-                                            (new File(path + "/afd/" + info[i])).delete();
-                                        }
-                                    }
-                                }
-                            }
-                            lastName = folder;
-                        }
-                        dir.mkdirs();
-                        
-                        File outf = new File(path + "/" + entry.getName());
-                        if(outf.exists()) {
-                            outf.delete();
+                int retry = 0;
+                while(!mStop) {
+                    long start = mOffset;
+                    try {
+                        if(!fetch(data)) {
+                            break;
                         }
-                        
-                        copyInputStream(zipFile.getInputStream(entry),
-                            new BufferedOutputStream(new FileOutputStream(path + "/" + entry.getName()), blocksize));
-                        totalnum++;
-                        newp = (int)(50 + totalnum * 50 / filenum);
-                        if(lastp != newp) {
-                            lastp = newp;
-                            Message m = mHandler.obtainMessage(newp, Download.this);
-                            mHandler.sendMessage(m);
+
+                        install();
+                        if(null != mPack) {
+                            mPack.finish();
+                            mPack = null;
                         }
+                        getResumeFile().delete();
+                        done(file);
+                        return;
+                    }
+                    catch (IOException e) {
                     }
-
-                    zipFile.close();
-                    
-                    /*
-                     * Delete the downloaded file to save space
-                     */
-                    new File(zipfile).delete();
 
                     /*
-                     * Now create a version file
+                     * Tiles after last checkpoint are downloaded again
                      */
-                    BufferedWriter bw = new BufferedWriter(new FileWriter(file), blocksize);                    
-                    bw.write(mVersion);
-                    bw.flush();
-                    bw.close();
-                    
-                    Message m = mHandler.obtainMessage(Download.SUCCESS, Download.this);
-                    mHandler.sendMessage(m);
-                    return;
-                    
-                } catch (IOException ioe) {
+                    if(null != mPack) {
+                        mPack.suspend();
+                        mPack = null;
+                    }
+                    if(mStop) {
+                        break;
+                    }
+                    retry = (mOffset > start) ? 0 : retry + 1;
+                    if(retry > RETRIES) {
+                        break;
+                    }
+                    long wait = Math.min(RETRY_WAIT << retry, RETRY_WAIT_MAX);
+                    for(long t = 0; t < wait && !mStop; t += 250) {
+                        Thread.sleep(250);
+                    }
                 }
             } catch (Exception e) {
             }
+
+            if(null != mPack) {
+                mPack.suspend();
+                mPack = null;
+            }
+            if(null != mUrl && mOffset > 0) {
+                saveResume();
+            }
             Message m = mHandler.obtainMessage(Download.FAILED, Download.this);
             mHandler.sendMessage(m);
             return;
@@ -0,0 +1,450 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+
+package com.ds.avare.network;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedList;
+
+import com.ds.avare.R;
+import com.ds.avare.storage.Preferences;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Message;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Downloads charts a few at a time, in the service, so they go on when the activity is gone.
+ * Queue is kept in maps folder and picked up again when the service starts.
+ * Database goes first, then charts at current position, then the rest in order they were asked for.
+ * 
+ * All calls and callbacks are on the main thread.
+ */
+public class DownloadManager {
+
+    /**
+     * 
+     * @author zkhan
+     *
+     */
+    public interface Listener {
+        /**
+         * 
+         * @param progress of all charts in queue, 0 to 100
+         */
+        public void progressCallback(int progress);
+
+        /**
+         * 
+         * @param name
+         * @param success
+         * @param version
+         */
+        public void doneCallback(String name, boolean success, String version);
+
+        /**
+         * Queue is empty
+         * @param failed how many charts could not be downloaded
+         */
+        public void finishedCallback(int failed);
+    }
+
+    public static final int WORKERS = 3;
+
+    private static final String QUEUE = "download.queue";
+
+    private static final int PRIORITY_DATABASE = 0;
+    private static final int PRIORITY_POSITION = 1;
+    private static final int PRIORITY_NORMAL = 2;
+
+    /**
+     * 
+     * @author zkhan
+     *
+     */
+    private class Job {
+        String mName;
+        Download mDownload;
+        int mProgress;
+    }
+
+    private Preferences mPref;
+    private String mDatabase;
+    private LinkedList<Job> mQueue;
+    private LinkedList<Job> mRunning;
+    /*
+     * Cancelled but not yet stopped, a chart here is not started again till it stops
+     */
+    private LinkedList<Job> mCancelled;
+    private LinkedList<Listener> mListeners;
+    private BandwidthLimiter mLimiter;
+    private LinkedList<String> mNear;
+    private int mTotal;
+    private int mDone;
+    private int mFailed;
+    private Handler mHandler;
+
+    /**
+     * Must be made on main thread
+     * @param ctx
+     */
+    public DownloadManager(Context ctx) {
+        mPref = new Preferences(ctx);
+        mDatabase = ctx.getResources().getStringArray(R.array.resFilesDatabase)[0];
+        mQueue = new LinkedList<Job>();
+        mRunning = new LinkedList<Job>();
+        mCancelled = new LinkedList<Job>();
+        mListeners = new LinkedList<Listener>();
+        mLimiter = new BandwidthLimiter();
+        mNear = new LinkedList<String>();
+        mTotal = 0;
+        mDone = 0;
+        mFailed = 0;
+        mHandler = new DownloadHandler();
+
+        /*
+         * Go on with what was left when we were killed
+         */
+        load();
+        schedule();
+    }
+
+    /**
+     * 
+     * @param l
+     */
+    public void registerListener(Listener l) {
+        if(!mListeners.contains(l)) {
+            mListeners.add(l);
+        }
+    }
+
+    /**
+     * 
+     * @param l
+     */
+    public void unregisterListener(Listener l) {
+        mListeners.remove(l);
+    }
+
+    /**
+     * Charts at current position, these go first. May be called from any thread.
+     * @param charts
+     */
+    public void setNear(LinkedList<String> charts) {
+        synchronized(mNear) {
+            mNear.clear();
+            mNear.addAll(charts);
+        }
+    }
+
+    /**
+     * Add a chart to queue
+     * @param name
+     */
+    public void add(String name) {
+        if(null != find(mQueue, name) || null != find(mRunning, name)) {
+            return;
+        }
+        Job job = new Job();
+        job.mName = name;
+        job.mDownload = null;
+        job.mProgress = 0;
+        mQueue.add(job);
+        mTotal++;
+        save();
+        schedule();
+    }
+
+    /**
+     * Stop all, and empty queue. Charts stopped half way go on from there next time.
+     */
+    public void cancel() {
+        for(Job job : mRunning) {
+            job.mDownload.cancel();
+        }
+        mCancelled.addAll(mRunning);
+        mRunning.clear();
+        mQueue.clear();
+        save();
+        mTotal = 0;
+        mDone = 0;
+        mFailed = 0;
+    }
+
+    /**
+     * 
+     * @return true if something is downloading
+     */
+    public boolean isBusy() {
+        return !mRunning.isEmpty() || !mQueue.isEmpty();
+    }
+
+    /**
+     * 
+     * @param name
+     * @return true if chart is in queue or downloading
+     */
+    public boolean isQueued(String name) {
+        return null != find(mQueue, name) || null != find(mRunning, name);
+    }
+
+    /**
+     * 
+     * @return progress of all charts in queue, 0 to 100
+     */
+    public int getProgress() {
+        if(0 == mTotal) {
+            return 0;
+        }
+        int sum = (mDone + mFailed) * 100;
+        for(Job job : mRunning) {
+            sum += job.mProgress;
+        }
+        return sum / mTotal;
+    }
+
+    /**
+     * 
+     * @return names in queue and downloading
+     */
+    public LinkedList<String> getQueue() {
+        LinkedList<String> names = new LinkedList<String>();
+        for(Job job : mRunning) {
+            names.add(job.mName);
+        }
+        for(Job job : mQueue) {
+            names.add(job.mName);
+        }
+        return names;
+    }
+
+    /**
+     * 
+     * @param list
+     * @param name
+     * @return
+     */
+    private Job find(LinkedList<Job> list, String name) {
+        for(Job job : list) {
+            if(job.mName.equals(name)) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 
+     * @param list
+     * @param download
+     * @return
+     */
+    private Job find(LinkedList<Job> list, Download download) {
+        for(Job job : list) {
+            if(job.mDownload == download) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 
+     * @param name
+     * @return
+     */
+    private int getPriority(String name) {
+        if(name.equals(mDatabase)) {
+            return PRIORITY_DATABASE;
+        }
+        synchronized(mNear) {
+            if(mNear.contains(name)) {
+                return PRIORITY_POSITION;
+            }
+        }
+        return PRIORITY_NORMAL;
+    }
+
+    /**
+     * Start queued charts while there are free workers
+     */
+    private void schedule() {
+        long rate = mPref.getDownloadRate();
+        if(rate != mLimiter.getRate()) {
+            mLimiter.setRate(rate);
+        }
+        while(mRunning.size() < WORKERS && !mQueue.isEmpty()) {
+            /*
+             * First of highest priority
+             */
+            Job next = null;
+            int best = Integer.MAX_VALUE;
+            for(Job job : mQueue) {
+                if(null != find(mCancelled, job.mName)) {
+                    /*
+                     * Cancelled download of it still writes its files
+                     */
+                    continue;
+                }
+                int priority = getPriority(job.mName);
+                if(priority < best) {
+                    best = priority;
+                    next = job;
+                }
+            }
+            if(null == next) {
+                break;
+            }
+            mQueue.remove(next);
+            next.mDownload = new Download(mPref.getRoot(), mHandler);
+            next.mDownload.setLimiter(mLimiter);
+            next.mDownload.start(mPref.mapsFolder(), next.mName);
+            mRunning.add(next);
+        }
+    }
+
+    /**
+     * All done, tell and start counting again
+     */
+    private void finish() {
+        int failed = mFailed;
+        mTotal = 0;
+        mDone = 0;
+        mFailed = 0;
+        for(Listener l : new LinkedList<Listener>(mListeners)) {
+            l.finishedCallback(failed);
+        }
+    }
+
+    /**
+     * Queue file, one chart a line
+     */
+    private void save() {
+        File file = new File(mPref.mapsFolder(), QUEUE);
+        if(!isBusy()) {
+            file.delete();
+            return;
+        }
+        File tmp = new File(mPref.mapsFolder(), QUEUE + ".tmp");
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(tmp));
+            for(String name : getQueue()) {
+                bw.write(name);
+                bw.newLine();
+            }
+            bw.close();
+            file.delete();
+            tmp.renameTo(file);
+        }
+        catch (IOException e) {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * 
+     */
+    private void load() {
+        File file = new File(mPref.mapsFolder(), QUEUE);
+        if(!file.exists()) {
+            return;
+        }
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(file));
+            String name;
+            while((name = br.readLine()) != null) {
+                name = name.trim();
+                if(name.length() > 0 && null == find(mQueue, name)) {
+                    Job job = new Job();
+                    job.mName = name;
+                    job.mDownload = null;
+                    job.mProgress = 0;
+                    mQueue.add(job);
+                    mTotal++;
+                }
+            }
+            br.close();
+        }
+        catch (IOException e) {
+        }
+    }
+
+    /**
+     * Messages from downloads
+     */
+    private class DownloadHandler extends Handler {
+        @Override
+        public void handleMessage(Message msg) {
+            if(!(msg.obj instanceof Download)) {
+                return;
+            }
+            Download download = (Download)msg.obj;
+            int result = msg.what;
+            boolean over = Download.SUCCESS == result || Download.NONEED == result || Download.FAILED == result;
+            Job job = find(mRunning, download);
+            if(null == job) {
+                /*
+                 * Cancelled, once stopped same chart can start again
+                 */
+                job = find(mCancelled, download);
+                if(null != job && over) {
+                    mCancelled.remove(job);
+                    schedule();
+                }
+                return;
+            }
+
+            if(over) {
+                boolean success = Download.FAILED != result;
+                mRunning.remove(job);
+                if(success) {
+                    mDone++;
+                }
+                else {
+                    mFailed++;
+                }
+                save();
+                for(Listener l : new LinkedList<Listener>(mListeners)) {
+                    l.doneCallback(job.mName, success, download.getVersion());
+                }
+                schedule();
+                if(!isBusy()) {
+                    finish();
+                }
+                else {
+                    result = getProgress();
+                    for(Listener l : new LinkedList<Listener>(mListeners)) {
+                        l.progressCallback(result);
+                    }
+                }
+            }
+            else {
+                job.mProgress = result;
+                result = getProgress();
+                for(Listener l : new LinkedList<Listener>(mListeners)) {
+                    l.progressCallback(result);
+                }
+            }
+        }
+    }
+}
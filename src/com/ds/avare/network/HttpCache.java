@@ -0,0 +1,482 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+
+package com.ds.avare.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Small HTTP GET layer for weather services.
+ * Asks for gzip, revalidates with ETag / If-Modified-Since, keeps responses on disk for
+ * as long as the caller allows, and shares one request among threads asking for the same URL.
+ * A fresh response is handed out as it streams in, so it can be parsed while it downloads.
+ */
+public class HttpCache {
+
+    private static final int TIMEOUT = 30 * 1000;
+    private static final int BUFFER = 8192;
+    private static final int VERSION = 1;
+
+    /*
+     * Drop cached responses not used in a day
+     */
+    private static final long MAX_AGE = 24L * 3600 * 1000;
+
+    /*
+     * When the link fails, a cached response is served only while it is
+     * younger than this many times what the caller allows
+     */
+    private static final int STALE_FACTOR = 2;
+
+    private static File mFolder = null;
+
+    /*
+     * URL to request in progress
+     */
+    private static final HashMap<String, Request> mPending = new HashMap<String, Request>();
+
+    /**
+     * 
+     * @author zkhan
+     *
+     */
+    private static class Request {
+        private byte mData[];
+        private IOException mError;
+        private boolean mDone;
+    }
+
+    /**
+     * 
+     * @author zkhan
+     *
+     */
+    private static class Entry {
+        private long mTime;
+        private String mUrl;
+        private String mEtag;
+        private String mModified;
+        private byte mData[];
+    }
+
+    /**
+     * Where to keep responses. Without a folder, only revalidation and coalescing are done.
+     * @param folder
+     */
+    public static synchronized void setFolder(String folder) {
+        File dir = new File(folder);
+        if(!dir.exists() && !dir.mkdirs()) {
+            mFolder = null;
+            return;
+        }
+        mFolder = dir;
+
+        /*
+         * Routes change all the time so do not let old responses pile up
+         */
+        File files[] = dir.listFiles();
+        if(null == files) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for(int i = 0; i < files.length; i++) {
+            if((now - files[i].lastModified()) > MAX_AGE) {
+                files[i].delete();
+            }
+        }
+    }
+
+    /**
+     * GET a URL. Served from disk if fetched less than expires ms ago,
+     * or less than twice that if the server cannot be reached.
+     * A fresh response streams from the network as it is read, and is kept once read to its end.
+     * @param url
+     * @param expires ms
+     * @return body, uncompressed. Caller must close it.
+     * @throws IOException
+     */
+    public static InputStream open(String url, long expires) throws IOException {
+        Request r;
+        boolean owner = false;
+        synchronized(mPending) {
+            r = mPending.get(url);
+            if(null == r) {
+                r = new Request();
+                mPending.put(url, r);
+                owner = true;
+            }
+        }
+
+        if(!owner) {
+            /*
+             * Someone else is getting this, wait for it
+             */
+            synchronized(r) {
+                while(!r.mDone) {
+                    try {
+                        r.wait();
+                    }
+                    catch (InterruptedException e) {
+                        throw new IOException("Interrupted");
+                    }
+                }
+            }
+            if(null != r.mError) {
+                throw r.mError;
+            }
+            if(null == r.mData) {
+                throw new IOException("No data");
+            }
+            return new ByteArrayInputStream(r.mData);
+        }
+
+        try {
+            return fetch(url, expires, r);
+        }
+        catch (IOException e) {
+            done(url, r, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Let others waiting on this URL go
+     * @param url
+     * @param r
+     * @param data
+     * @param error
+     */
+    private static void done(String url, Request r, byte data[], IOException error) {
+        synchronized(mPending) {
+            mPending.remove(url);
+        }
+        synchronized(r) {
+            r.mData = data;
+            r.mError = error;
+            r.mDone = true;
+            r.notifyAll();
+        }
+    }
+
+    /**
+     * 
+     * @param url
+     * @param expires
+     * @param r is done here, or by returned stream when it is read
+     * @return
+     * @throws IOException
+     */
+    private static InputStream fetch(String url, long expires, Request r) throws IOException {
+        File file = getFile(url);
+        Entry cached = read(file, url);
+        long now = System.currentTimeMillis();
+        if(null != cached && (now - cached.mTime) < expires && now >= cached.mTime) {
+            done(url, r, cached.mData, null);
+            return new ByteArrayInputStream(cached.mData);
+        }
+
+        HttpURLConnection conn = null;
+        boolean streaming = false;
+        try {
+            conn = (HttpURLConnection)new URL(url).openConnection();
+            conn.setConnectTimeout(TIMEOUT);
+            conn.setReadTimeout(TIMEOUT);
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+            if(null != cached) {
+                if(cached.mEtag.length() > 0) {
+                    conn.setRequestProperty("If-None-Match", cached.mEtag);
+                }
+                if(cached.mModified.length() > 0) {
+                    conn.setRequestProperty("If-Modified-Since", cached.mModified);
+                }
+            }
+
+            int code = conn.getResponseCode();
+            if(code == HttpURLConnection.HTTP_NOT_MODIFIED && null != cached) {
+                cached.mTime = now;
+                write(file, cached);
+                done(url, r, cached.mData, null);
+                return new ByteArrayInputStream(cached.mData);
+            }
+            if(code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + code);
+            }
+
+            InputStream in = conn.getInputStream();
+            if("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+                in = new GZIPInputStream(in, BUFFER);
+            }
+
+            Entry e = new Entry();
+            e.mTime = now;
+            e.mUrl = url;
+            e.mEtag = notNull(conn.getHeaderField("ETag"));
+            e.mModified = notNull(conn.getHeaderField("Last-Modified"));
+            streaming = true;
+            return new TeeStream(in, conn, file, e, r);
+        }
+        catch (IOException e) {
+            /*
+             * Link dropped, a little old data is better than none, but not data
+             * so old it would be taken for current
+             */
+            if(null != cached && (now - cached.mTime) < expires * STALE_FACTOR && now >= cached.mTime) {
+                done(url, r, cached.mData, null);
+                return new ByteArrayInputStream(cached.mData);
+            }
+            throw e;
+        }
+        finally {
+            if(null != conn && !streaming) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    /**
+     * 
+     * @author zkhan
+     * Body of a response as it comes, copied to be kept when read to its end
+     */
+    private static class TeeStream extends FilterInputStream {
+        private HttpURLConnection mConn;
+        private File mFile;
+        private Entry mEntry;
+        private Request mRequest;
+        private ByteArrayOutputStream mCopy;
+        private boolean mDone;
+
+        private TeeStream(InputStream in, HttpURLConnection conn, File file, Entry e, Request r) {
+            super(in);
+            mConn = conn;
+            mFile = file;
+            mEntry = e;
+            mRequest = r;
+            mCopy = new ByteArrayOutputStream(BUFFER);
+            mDone = false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte b[] = new byte[1];
+            int count = read(b, 0, 1);
+            return count < 0 ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            int count;
+            try {
+                count = super.read(b, off, len);
+            }
+            catch (IOException e) {
+                fail(e);
+                throw e;
+            }
+            if(count < 0) {
+                complete();
+            }
+            else {
+                mCopy.write(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            /*
+             * Skipped bytes are still kept
+             */
+            byte b[] = new byte[BUFFER];
+            long skipped = 0;
+            while(skipped < n) {
+                int count = read(b, 0, (int)Math.min(b.length, n - skipped));
+                if(count < 0) {
+                    break;
+                }
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Parser may stop at end of document before end of stream, so read the rest to keep it
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                byte b[] = new byte[BUFFER];
+                while(!mDone && read(b, 0, b.length) >= 0) {
+                }
+            }
+            catch (IOException e) {
+            }
+            finally {
+                try {
+                    super.close();
+                }
+                catch (IOException e) {
+                }
+                mConn.disconnect();
+            }
+        }
+
+        private void complete() {
+            if(mDone) {
+                return;
+            }
+            mDone = true;
+            mEntry.mData = mCopy.toByteArray();
+            mCopy = null;
+            write(mFile, mEntry);
+            done(mEntry.mUrl, mRequest, mEntry.mData, null);
+        }
+
+        private void fail(IOException e) {
+            if(mDone) {
+                return;
+            }
+            mDone = true;
+            mCopy = null;
+            done(mEntry.mUrl, mRequest, null, e);
+        }
+    }
+
+    /**
+     * 
+     * @param s
+     * @return
+     */
+    private static String notNull(String s) {
+        return null == s ? "" : s;
+    }
+
+    /**
+     * 
+     * @param url
+     * @return
+     */
+    private static synchronized File getFile(String url) {
+        if(null == mFolder) {
+            return null;
+        }
+        return new File(mFolder, Integer.toHexString(url.hashCode()) + ".http");
+    }
+
+    /**
+     * 
+     * @param file
+     * @param url
+     * @return null if not cached
+     */
+    private static Entry read(File file, String url) {
+        if(null == file || !file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            if(in.readInt() != VERSION) {
+                return null;
+            }
+            Entry e = new Entry();
+            e.mTime = in.readLong();
+            e.mUrl = in.readUTF();
+            if(!e.mUrl.equals(url)) {
+                /*
+                 * Hash collision
+                 */
+                return null;
+            }
+            e.mEtag = in.readUTF();
+            e.mModified = in.readUTF();
+            e.mData = new byte[in.readInt()];
+            in.readFully(e.mData);
+            return e;
+        }
+        catch (Exception e) {
+            return null;
+        }
+        finally {
+            if(null != in) {
+                try {
+                    in.close();
+                }
+                catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Write to a temp file then rename so readers never see half a response
+     * @param file
+     * @param e
+     */
+    private static void write(File file, Entry e) {
+        if(null == file) {
+            return;
+        }
+        File tmp = new File(file.getPath() + "." + Thread.currentThread().getId());
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(tmp));
+            out.writeInt(VERSION);
+            out.writeLong(e.mTime);
+            out.writeUTF(e.mUrl);
+            out.writeUTF(e.mEtag);
+            out.writeUTF(e.mModified);
+            out.writeInt(e.mData.length);
+            out.write(e.mData);
+            out.close();
+            out = null;
+            if(!tmp.renameTo(file)) {
+                tmp.delete();
+            }
+        }
+        catch (IOException ex) {
+            tmp.delete();
+        }
+        finally {
+            if(null != out) {
+                try {
+                    out.close();
+                }
+                catch (IOException ex) {
+                }
+            }
+        }
+    }
+}
@@ -12,14 +12,17 @@ Redistribution and use in source and binary forms, with or without modification,
 
 package com.ds.avare.network;
 
+import java.io.File;
 import java.util.LinkedList;
 
+import com.ds.avare.shapes.ShapeIndex;
 import com.ds.avare.shapes.TFRShape;
-import com.ds.avare.utils.Helper;
+import com.ds.avare.storage.Preferences;
+import com.ds.avare.utils.Scheduler;
+import com.ds.avare.utils.TFRParser;
 
 
 import android.content.Context;
-import android.os.AsyncTask;
 
 /**
  * 
@@ -29,15 +32,19 @@ import android.os.AsyncTask;
 public class TFRFetcher {
 
     
-    private TFRTask mTask;
+    private Scheduler mScheduler;
+    private Scheduler.Token mToken;
     private LinkedList<TFRShape> mShapes;
+    private ShapeIndex<TFRShape> mIndex;
     private Context mContext;
     
     /**
      * 
      */
-    public TFRFetcher(Context ctx) {
+    public TFRFetcher(Context ctx, Scheduler scheduler) {
+        mScheduler = scheduler;
         mShapes = null;
+        mIndex = null;
         mContext = ctx;
     }
 
@@ -48,17 +55,14 @@ public class TFRFetcher {
         /*
          * TFR is an expensive operation. Do not do if previous is running
          */
-        if(mTask != null) {
-            if(mTask.getStatus() == AsyncTask.Status.RUNNING) {
-                mTask.cancel(true);
-            }
+        if(mToken != null) {
+            mToken.cancel();
         }
         
         /*
          * Start the task
          */
-        mTask = new TFRTask();
-        mTask.execute();
+        mToken = mScheduler.submit(Scheduler.IO, "tfr", Scheduler.PRIORITY_NORMAL, new TFRTask());
     }
     
     /**
@@ -69,22 +73,47 @@ public class TFRFetcher {
         return mShapes;
     }
 
+    /**
+     * Index of TFR shapes for finding ones on screen or touched
+     * @return
+     */
+    public ShapeIndex<TFRShape> getIndex() {
+        return mIndex;
+    }
+
     /**
      * @author zkhan
      *
      */
-    private class TFRTask extends AsyncTask<Object, Void, Boolean> {
+    private class TFRTask extends Scheduler.Task {
 
 
         /* (non-Javadoc)
-         * @see android.os.AsyncTask#doInBackground(Params[])
+         * @see com.ds.avare.utils.Scheduler.Task#run(com.ds.avare.utils.Scheduler.Token)
          */
         @Override
-        protected Boolean doInBackground(Object... vals) {
-            Thread.currentThread().setName("TFR");
+        public void run(Scheduler.Token token) {
 
-            mShapes = Helper.getShapesInTFR(mContext);
-            return true;
+            /*
+             * TFRs that are over are left out
+             */
+            LinkedList<TFRShape> shapes = TFRParser.parse(
+                    new File(new Preferences(mContext).mapsFolder(), "tfr.txt"), System.currentTimeMillis());
+            ShapeIndex<TFRShape> index = new ShapeIndex<TFRShape>();
+            if(null != shapes) {
+                for(TFRShape shape : shapes) {
+                    index.add(shape, shape);
+                }
+            }
+            index.build();
+            if(token.isCancelled()) {
+                /*
+                 * Newer file is being parsed
+                 */
+                return;
+            }
+            mIndex = index;
+            mShapes = shapes;
         }
     } 
 }
@@ -0,0 +1,209 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+
+package com.ds.avare.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Table of contents of a zip on a server, read from its central directory with range requests,
+ * so we know name, CRC and place of every entry without downloading the zip.
+ */
+public class ZipDirectory {
+
+    private static final int END = 0x06054b50;
+    private static final int CENTRAL = 0x02014b50;
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_SIZE = 46;
+    private static final int TAIL = END_SIZE + 65535;
+
+    /**
+     * 
+     * @author zkhan
+     *
+     */
+    public static class Entry {
+        public String name;
+        public int crc;
+        /*
+         * Local header to start of next entry
+         */
+        public long offset;
+        public long end;
+    }
+
+    private LinkedList<Entry> mEntries;
+    private long mSize;
+
+    /**
+     * 
+     * @param url
+     * @param timeout
+     * @throws IOException if the server cannot send parts of the file
+     */
+    public ZipDirectory(String url, int timeout) throws IOException {
+        /*
+         * End record is in the last bytes, after it only a comment
+         */
+        long range[] = new long[2];
+        byte tail[] = get(url, "bytes=-" + TAIL, timeout, range);
+        mSize = range[1];
+        long tailStart = range[0];
+        int end = -1;
+        for(int i = tail.length - END_SIZE; i >= 0; i--) {
+            if(getInt(tail, i) == END) {
+                end = i;
+                break;
+            }
+        }
+        if(end < 0) {
+            throw new IOException("Not a zip " + url);
+        }
+        int count = getShort(tail, end + 10);
+        long size = getInt(tail, end + 12) & 0xFFFFFFFFL;
+        long start = getInt(tail, end + 16) & 0xFFFFFFFFL;
+
+        byte dir[];
+        int at;
+        if(start >= tailStart) {
+            dir = tail;
+            at = (int)(start - tailStart);
+        }
+        else {
+            dir = get(url, "bytes=" + start + "-" + (start + size - 1), timeout, range);
+            at = 0;
+        }
+
+        mEntries = new LinkedList<Entry>();
+        for(int i = 0; i < count; i++) {
+            if(at + CENTRAL_SIZE > dir.length || getInt(dir, at) != CENTRAL) {
+                throw new IOException("Bad zip directory " + url);
+            }
+            Entry e = new Entry();
+            e.crc = getInt(dir, at + 16);
+            int nameLen = getShort(dir, at + 28);
+            int extraLen = getShort(dir, at + 30);
+            int commentLen = getShort(dir, at + 32);
+            e.offset = getInt(dir, at + 42) & 0xFFFFFFFFL;
+            e.name = new String(dir, at + CENTRAL_SIZE, nameLen, "UTF-8");
+            mEntries.add(e);
+            at += CENTRAL_SIZE + nameLen + extraLen + commentLen;
+        }
+
+        /*
+         * Each entry ends where next starts, last at the directory
+         */
+        Collections.sort(mEntries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.offset < b.offset ? -1 : (a.offset > b.offset ? 1 : 0);
+            }
+        });
+        Entry last = null;
+        for(Entry e : mEntries) {
+            if(null != last) {
+                last.end = e.offset;
+            }
+            last = e;
+        }
+        if(null != last) {
+            last.end = start;
+        }
+    }
+
+    /**
+     * 
+     * @return entries in order they are in zip
+     */
+    public LinkedList<Entry> getEntries() {
+        return mEntries;
+    }
+
+    /**
+     * 
+     * @return size of zip
+     */
+    public long getSize() {
+        return mSize;
+    }
+
+    /**
+     * Get part of a file
+     * @param url
+     * @param range
+     * @param timeout
+     * @param out returns start of part and size of file
+     * @return
+     * @throws IOException
+     */
+    private static byte[] get(String url, String range, int timeout, long out[]) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)new URL(url).openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        connection.setRequestProperty("Range", range);
+        try {
+            if(connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("No range support " + url);
+            }
+            /*
+             * bytes start-end/size
+             */
+            String cr = connection.getHeaderField("Content-Range");
+            if(null == cr) {
+                throw new IOException("No range support " + url);
+            }
+            try {
+                int space = cr.indexOf(' ');
+                int dash = cr.indexOf('-');
+                int slash = cr.indexOf('/');
+                out[0] = Long.parseLong(cr.substring(space + 1, dash).trim());
+                out[1] = Long.parseLong(cr.substring(slash + 1).trim());
+            }
+            catch (Exception e) {
+                throw new IOException("Bad range " + cr);
+            }
+
+            InputStream in = connection.getInputStream();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte buf[] = new byte[8192];
+            int n;
+            while((n = in.read(buf)) >= 0) {
+                bytes.write(buf, 0, n);
+            }
+            in.close();
+            return bytes.toByteArray();
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    private static int getShort(byte b[], int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+    }
+
+    private static int getInt(byte b[], int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) | ((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24);
+    }
+}
@@ -0,0 +1,384 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+
+package com.ds.avare.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Reads a zip file front to back from a stream, by local headers, as it is being downloaded.
+ * Unlike ZipInputStream, knows the exact offset of each entry in the file,
+ * so a download can be picked up again at an entry.
+ */
+public class ZipStream {
+
+    private static final int LOCAL = 0x04034b50;
+    private static final int DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL = 0x02014b50;
+    private static final int END = 0x06054b50;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int FLAG_DESCRIPTOR = 8;
+    private static final int LOCAL_SIZE = 30;
+
+    private InputStream mIn;
+    private byte mBuf[];
+    private int mPos;
+    private int mLen;
+    /*
+     * Offset in file of mBuf[0]
+     */
+    private long mOffset;
+
+    private Inflater mInflater;
+    private int mGiven;
+    private CRC32 mCrc;
+    private byte mHeader[];
+
+    private boolean mOpen;
+    private String mName;
+    private long mEntryOffset;
+    private int mMethod;
+    private int mFlags;
+    private long mExpectedCrc;
+    private long mRemaining;
+
+    /**
+     * 
+     * @param in stream of the zip file
+     * @param offset where in the zip file the stream starts, at a local header
+     * @param size of read buffer
+     */
+    public ZipStream(InputStream in, long offset, int size) {
+        mIn = in;
+        mBuf = new byte[size];
+        mPos = 0;
+        mLen = 0;
+        mOffset = offset;
+        mInflater = new Inflater(true);
+        mCrc = new CRC32();
+        mHeader = new byte[LOCAL_SIZE];
+        mOpen = false;
+    }
+
+    /**
+     * Go to next entry, skipping what is left of this one
+     * @return false at central directory, when all entries are done
+     * @throws IOException, EOFException if stream ends before central directory
+     */
+    public boolean next() throws IOException {
+        closeEntry();
+
+        mEntryOffset = getOffset();
+        if(!readFully(mHeader, 0, 4)) {
+            /*
+             * A cut short download can end right at an entry
+             */
+            throw new EOFException("No central directory");
+        }
+        int signature = getInt(mHeader, 0);
+        if(signature == CENTRAL || signature == END) {
+            /*
+             * All entries done, end record only for a zip with no entries
+             */
+            return false;
+        }
+        if(signature != LOCAL) {
+            throw new IOException("Bad zip at " + mEntryOffset);
+        }
+        if(!readFully(mHeader, 4, LOCAL_SIZE - 4)) {
+            throw new EOFException();
+        }
+        mFlags = getShort(mHeader, 6);
+        mMethod = getShort(mHeader, 8);
+        mExpectedCrc = getInt(mHeader, 14) & 0xFFFFFFFFL;
+        long csize = getInt(mHeader, 18) & 0xFFFFFFFFL;
+        int nameLen = getShort(mHeader, 26);
+        int extraLen = getShort(mHeader, 28);
+
+        byte name[] = new byte[nameLen];
+        if(!readFully(name, 0, nameLen)) {
+            throw new EOFException();
+        }
+        mName = new String(name, "UTF-8");
+        byte extra[] = new byte[extraLen];
+        if(!readFully(extra, 0, extraLen)) {
+            throw new EOFException();
+        }
+
+        if(mMethod == STORED) {
+            if((mFlags & FLAG_DESCRIPTOR) != 0) {
+                throw new IOException("Stored entry without size " + mName);
+            }
+            mRemaining = csize;
+        }
+        else if(mMethod == DEFLATED) {
+            mInflater.reset();
+            mGiven = 0;
+        }
+        else {
+            throw new IOException("Unsupported compression " + mMethod + " " + mName);
+        }
+        mCrc.reset();
+        mOpen = true;
+        return true;
+    }
+
+    /**
+     * Skip what is left of current entry
+     * @throws IOException
+     */
+    public void closeEntry() throws IOException {
+        if(mOpen) {
+            byte skip[] = new byte[8192];
+            while(read(skip, 0, skip.length) >= 0) {
+            }
+        }
+    }
+
+    /**
+     * 
+     * @return name of current entry
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * 
+     * @return offset in zip file of local header of current entry
+     */
+    public long getEntryOffset() {
+        return mEntryOffset;
+    }
+
+    /**
+     * 
+     * @return bytes of zip file consumed so far
+     */
+    public long getOffset() {
+        return mOffset + mPos;
+    }
+
+    /**
+     * 
+     * @return CRC the zip says the current entry has, valid once entry is read
+     */
+    public long getExpectedCrc() {
+        return mExpectedCrc;
+    }
+
+    /**
+     * 
+     * @return CRC of what was read of the current entry
+     */
+    public long getCrc() {
+        return mCrc.getValue();
+    }
+
+    /**
+     * Read data of current entry
+     * @param b
+     * @param off
+     * @param len
+     * @return -1 at end of entry
+     * @throws IOException
+     */
+    public int read(byte b[], int off, int len) throws IOException {
+        if(!mOpen) {
+            return -1;
+        }
+        int n;
+        if(mMethod == STORED) {
+            n = readStored(b, off, len);
+        }
+        else {
+            n = readDeflated(b, off, len);
+        }
+        if(n > 0) {
+            mCrc.update(b, off, n);
+        }
+        return n;
+    }
+
+    /**
+     * Current entry as a stream, which does not close the zip
+     * @return
+     */
+    public InputStream getInputStream() {
+        return new InputStream() {
+            private byte mOne[] = new byte[1];
+
+            @Override
+            public int read() throws IOException {
+                return ZipStream.this.read(mOne, 0, 1) <= 0 ? -1 : (mOne[0] & 0xFF);
+            }
+
+            @Override
+            public int read(byte b[], int off, int len) throws IOException {
+                return ZipStream.this.read(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * 
+     */
+    public void close() {
+        mInflater.end();
+        try {
+            mIn.close();
+        }
+        catch (IOException e) {
+        }
+    }
+
+    /**
+     * 
+     */
+    private int readStored(byte b[], int off, int len) throws IOException {
+        if(mRemaining == 0) {
+            mOpen = false;
+            return -1;
+        }
+        if(mPos == mLen && !fill()) {
+            throw new EOFException();
+        }
+        int n = (int)Math.min(Math.min(len, mLen - mPos), mRemaining);
+        System.arraycopy(mBuf, mPos, b, off, n);
+        mPos += n;
+        mRemaining -= n;
+        return n;
+    }
+
+    /**
+     * 
+     */
+    private int readDeflated(byte b[], int off, int len) throws IOException {
+        while(true) {
+            if(mInflater.finished()) {
+                /*
+                 * Give back what the inflater did not use
+                 */
+                mPos += mGiven - mInflater.getRemaining();
+                mGiven = 0;
+                if((mFlags & FLAG_DESCRIPTOR) != 0) {
+                    readDescriptor();
+                }
+                mOpen = false;
+                return -1;
+            }
+            if(mInflater.needsInput()) {
+                mPos += mGiven;
+                mGiven = 0;
+                if(mPos == mLen && !fill()) {
+                    throw new EOFException();
+                }
+                mGiven = mLen - mPos;
+                mInflater.setInput(mBuf, mPos, mGiven);
+            }
+            int n;
+            try {
+                n = mInflater.inflate(b, off, len);
+            }
+            catch (DataFormatException e) {
+                throw new IOException("Bad data in " + mName);
+            }
+            if(n > 0) {
+                return n;
+            }
+            if(mInflater.needsDictionary()) {
+                throw new IOException("Bad data in " + mName);
+            }
+        }
+    }
+
+    /**
+     * CRC and sizes after data, signature is optional
+     * @throws IOException
+     */
+    private void readDescriptor() throws IOException {
+        if(!readFully(mHeader, 0, 4)) {
+            throw new EOFException();
+        }
+        int first = getInt(mHeader, 0);
+        if(first == DESCRIPTOR) {
+            if(!readFully(mHeader, 0, 12)) {
+                throw new EOFException();
+            }
+            mExpectedCrc = getInt(mHeader, 0) & 0xFFFFFFFFL;
+        }
+        else {
+            mExpectedCrc = first & 0xFFFFFFFFL;
+            if(!readFully(mHeader, 0, 8)) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    /**
+     * Refill empty buffer
+     * @return false at end of stream
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        mOffset += mLen;
+        mPos = 0;
+        mLen = 0;
+        int n = mIn.read(mBuf, 0, mBuf.length);
+        if(n <= 0) {
+            return false;
+        }
+        mLen = n;
+        return true;
+    }
+
+    /**
+     * 
+     * @return false if stream ended before any byte
+     * @throws IOException
+     */
+    private boolean readFully(byte b[], int off, int len) throws IOException {
+        int done = 0;
+        while(done < len) {
+            if(mPos == mLen && !fill()) {
+                if(0 == done) {
+                    return false;
+                }
+                throw new EOFException();
+            }
+            int n = Math.min(len - done, mLen - mPos);
+            System.arraycopy(mBuf, mPos, b, off + done, n);
+            mPos += n;
+            done += n;
+        }
+        return true;
+    }
+
+    private static int getShort(byte b[], int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+    }
+
+    private static int getInt(byte b[], int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) | ((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24);
+    }
+}
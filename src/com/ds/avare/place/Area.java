@@ -18,8 +18,8 @@ import java.util.List;
 
 import com.ds.avare.gps.GpsParams;
 import com.ds.avare.storage.DataSource;
+import com.ds.avare.utils.Scheduler;
 
-import android.os.AsyncTask;
 import android.os.SystemClock;
 
 /**
@@ -31,7 +31,8 @@ public class Area {
 
     private DataSource mDataSource;
     private Airport[] mAirports = new Airport[MAX_AIRPORTS];
-    private DataBaseAreaTask mDt;
+    private Scheduler mScheduler;
+    private Scheduler.Token mToken;
     private double mLon;
     private double mLat;
     private double mVariation;
@@ -45,9 +46,11 @@ public class Area {
     /**
      * 
      * @param dataSource
+     * @param scheduler
      */
-    public Area(DataSource dataSource) {
+    public Area(DataSource dataSource, Scheduler scheduler) {
         mDataSource = dataSource;
+        mScheduler = scheduler;
         mLon = mLat = 0;
         mVariation = 0;
         mLastTime = SystemClock.elapsedRealtime();
@@ -117,34 +120,31 @@ public class Area {
         mLon = lon;
         mLat = lat;
         
-        if(mDt != null) {
+        if(mToken != null) {
             /*
              * Do not overwhelm
              */
-            if(mDt.getStatus() != AsyncTask.Status.FINISHED) {
+            if(!mToken.isDone()) {
                 return;
             }
         }
-        mDt = new DataBaseAreaTask();
-        mDt.execute();
+        mToken = mScheduler.submit(Scheduler.DB, "area", Scheduler.PRIORITY_NORMAL, new DataBaseAreaTask());
     }
 
     /**
      * @author zkhan
      * Query for closest airports task
      */
-    private class DataBaseAreaTask extends AsyncTask<Object, Void, Void> {
+    private class DataBaseAreaTask extends Scheduler.Task {
 
         /* (non-Javadoc)
-         * @see android.os.AsyncTask#doInBackground(Params[])
+         * @see com.ds.avare.utils.Scheduler.Task#run(com.ds.avare.utils.Scheduler.Token)
          */
         @Override
-        protected Void doInBackground(Object... vals) {
+        public void run(Scheduler.Token token) {
 
-            Thread.currentThread().setName("Area");
-            
             if(null == mDataSource) {
-                return null;
+                return;
             }
             
             mDataSource.findClosestAirports(mLon, mLat, mAirports);
@@ -171,8 +171,6 @@ public class Area {
             for(int id = 0; id < getAirportsNumber(); id++) {
                 mVariation = mAirports[id].getVariation(); 
             }
-
-            return null;
         }
     }
 }
@@ -31,12 +31,12 @@ import com.ds.avare.storage.Preferences;
 import com.ds.avare.storage.StringPreference;
 import com.ds.avare.utils.BitmapHolder;
 import com.ds.avare.utils.Helper;
+import com.ds.avare.utils.Scheduler;
 import com.ds.avare.utils.TwilightCalculator;
 
 import android.location.Address;
 import android.location.Geocoder;
 import android.location.Location;
-import android.os.AsyncTask;
 
 /**
  * @author zkhan
@@ -307,8 +307,7 @@ public class Destination extends Observable {
 	    }
 	    else { 
             mLooking = true;
-            DataBaseLocationTask locmDataBaseTask = new DataBaseLocationTask();
-            locmDataBaseTask.execute();
+            mService.getScheduler().submit(Scheduler.DB, null, Scheduler.PRIORITY_HIGH, new DataBaseLocationTask());
 	    }
 	}
 	
@@ -316,22 +315,23 @@ public class Destination extends Observable {
      * @author zkhan
      * Query for destination task
      */
-    private class DataBaseLocationTask extends AsyncTask<Object, Void, Boolean> {
+    private class DataBaseLocationTask extends Scheduler.Task {
+
+        private boolean mResult;
 
         /* (non-Javadoc)
-         * @see android.os.AsyncTask#onPreExecute()
+         * @see com.ds.avare.utils.Scheduler.Task#run(com.ds.avare.utils.Scheduler.Token)
          */
         @Override
-        protected void onPreExecute() {        	
+        public void run(Scheduler.Token token) {
+            mResult = find();
         }
 
-        /* (non-Javadoc)
-         * @see android.os.AsyncTask#doInBackground(Params[])
+        /**
+         * 
+         * @return
          */
-        @Override
-        protected Boolean doInBackground(Object... vals) {
-
-            Thread.currentThread().setName("Destination");
+        private boolean find() {
 
 	        if(null == mDataSource) {
 	        	return false;
@@ -512,14 +512,14 @@ public class Destination extends Observable {
         
 
         /* (non-Javadoc)
-         * @see android.os.AsyncTask#onPostExecute(java.lang.Object)
+         * @see com.ds.avare.utils.Scheduler.Task#done()
          */
         @Override
-        protected void onPostExecute(Boolean result) {
+        public void done() {
         	/*
         	 * This runs on UI
         	 */
-			mFound = result;
+			mFound = mResult;
 			if(mFound) {
                 mDbType = mParams.get(DataBaseHelper.TYPE);
                 try {
@@ -543,6 +543,20 @@ public class Destination extends Observable {
             Destination.this.notifyObservers(Boolean.valueOf(mFound));
             mLooking = false;
 	    }
+
+        /* (non-Javadoc)
+         * @see com.ds.avare.utils.Scheduler.Task#failed()
+         */
+        @Override
+        public void failed() {
+            /*
+             * Not found, and no longer looking
+             */
+            mFound = false;
+            mLooking = false;
+            Destination.this.setChanged();
+            Destination.this.notifyObservers(Boolean.valueOf(mFound));
+        }
     }
     
     /**
@@ -0,0 +1,300 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ds.avare.place;
+
+import java.util.ArrayList;
+
+import com.ds.avare.gps.GpsParams;
+import com.ds.avare.network.TFRFetcher;
+import com.ds.avare.shapes.ShapeIndex;
+import com.ds.avare.shapes.TFRShape;
+import com.ds.avare.storage.Preferences;
+import com.ds.avare.utils.Scheduler;
+
+import android.os.SystemClock;
+
+/**
+ * 
+ * @author zkhan
+ * Finds the first TFR that the aircraft will fly into in next few minutes if it holds
+ * its track, speed and climb rate. Checked in background on every GPS fix,
+ * a fix that comes while last one is still being checked is skipped.
+ */
+public class Incursion {
+
+    private TFRFetcher mFetcher;
+    private Scheduler mScheduler;
+    private Scheduler.Token mToken;
+    private ArrayList<TFRShape> mCandidates;
+
+    private double mLon;
+    private double mLat;
+    private double mBearing;
+    private double mSpeed;
+    private double mAltitude;
+    private double mClimb;
+    private long mLastTime;
+    private double mLastAltitude;
+
+    /*
+     * Result of last check, replaced whole so readers see shape and seconds together
+     */
+    private volatile Result mResult;
+
+    /*
+     * Look this many minutes ahead, below this speed only check where we are.
+     * TFR altitudes are widened by margin in feet.
+     */
+    private static final int LOOKAHEAD = 10;
+    private static final double MIN_SPEED = 5;
+    private static final double ALTITUDE_MARGIN = 500;
+
+    /*
+     * Climb rate in ft/min is averaged over fixes with this weight for the newest one
+     */
+    private static final double CLIMB_WEIGHT = 0.3;
+    private static final long CLIMB_INTERVAL = 500;
+
+    /**
+     * 
+     * @param fetcher
+     * @param scheduler
+     */
+    public Incursion(TFRFetcher fetcher, Scheduler scheduler) {
+        mFetcher = fetcher;
+        mScheduler = scheduler;
+        mCandidates = new ArrayList<TFRShape>();
+        mLastTime = 0;
+        mClimb = 0;
+        mResult = new Result(null, -1);
+    }
+
+    /**
+     * 
+     * @param params
+     */
+    public void updateLocation(GpsParams params) {
+
+        long now = SystemClock.elapsedRealtime();
+        if(0 == mLastTime || Math.abs(now - mLastTime) >= CLIMB_INTERVAL) {
+            if(0 != mLastTime && now > mLastTime) {
+                double climb = (params.getAltitude() - mLastAltitude) * 60000.0 / (now - mLastTime);
+                mClimb = mClimb * (1 - CLIMB_WEIGHT) + climb * CLIMB_WEIGHT;
+            }
+            mLastTime = now;
+            mLastAltitude = params.getAltitude();
+        }
+
+        if(mToken != null) {
+            /*
+             * Do not overwhelm
+             */
+            if(!mToken.isDone()) {
+                return;
+            }
+        }
+
+        mLon = params.getLongitude();
+        mLat = params.getLatitude();
+        mBearing = params.getBearing();
+        mSpeed = params.getSpeed();
+        mAltitude = params.getAltitude();
+        mToken = mScheduler.submit(Scheduler.DECODE, "incursion", Scheduler.PRIORITY_HIGH, new IncursionTask());
+    }
+
+    /**
+     * 
+     * @return result of last check
+     */
+    public Result getResult() {
+        return mResult;
+    }
+
+    /**
+     * 
+     * @author zkhan
+     * What a check found, does not change
+     */
+    public static class Result {
+        private final TFRShape mShape;
+        private final int mSeconds;
+
+        /**
+         * 
+         * @param shape
+         * @param seconds
+         */
+        private Result(TFRShape shape, int seconds) {
+            mShape = shape;
+            mSeconds = seconds;
+        }
+
+        /**
+         * 
+         * @return TFR we are in or will be in first, null if none
+         */
+        public TFRShape getShape() {
+            return mShape;
+        }
+
+        /**
+         * 
+         * @return seconds to entering getShape(), 0 if in it, -1 if none
+         */
+        public int getSeconds() {
+            return mSeconds;
+        }
+    }
+
+    /**
+     * Check the projected track
+     * @param index of TFRs
+     * @param lon
+     * @param lat
+     * @param bearing true
+     * @param speed in preferred units an hour
+     * @param altitude feet
+     * @param climb feet a minute
+     * @param time now, ms since epoch
+     * @param shapes scratch list
+     * @return seconds to entry of first TFR, and that TFR in shape[0]; -1 if none
+     */
+    public static int predict(ShapeIndex<TFRShape> index, double lon, double lat, double bearing,
+            double speed, double altitude, double climb, long time, ArrayList<TFRShape> shapes, TFRShape shape[]) {
+
+        shape[0] = null;
+        if(null == index) {
+            return -1;
+        }
+
+        /*
+         * End of track after look ahead time, flat earth is good for these distances
+         */
+        double minutes = speed < MIN_SPEED ? 0 : LOOKAHEAD;
+        double dist = speed * minutes / 60.0 / Preferences.earthRadiusConversion;
+        double rad = Math.toRadians(bearing);
+        double lat1 = lat + Math.toDegrees(dist * Math.cos(rad));
+        double lon1 = lon + Math.toDegrees(dist * Math.sin(rad)) / Math.max(Math.cos(Math.toRadians(lat)), 0.01);
+
+        index.find(Math.min(lon, lon1), Math.min(lat, lat1), Math.max(lon, lon1), Math.max(lat, lat1), shapes);
+
+        double best = 2;
+        for(int i = 0; i < shapes.size(); i++) {
+            TFRShape s = shapes.get(i);
+            double t = enter(s, lon, lat, lon1, lat1, minutes, altitude, climb, time);
+            if(t >= 0 && t < best) {
+                best = t;
+                shape[0] = s;
+            }
+        }
+        shapes.clear();
+
+        if(null == shape[0]) {
+            return -1;
+        }
+        return (int)Math.round(best * minutes * 60);
+    }
+
+    /**
+     * Earliest point on track that is inside the shape, within its altitudes, while it is active.
+     * Altitude and time are linear along the track so each limits it to one range.
+     * @param s shape
+     * @param lon start of track
+     * @param lat
+     * @param lon1 end of track
+     * @param lat1
+     * @param minutes to end of track, 0 checks start only
+     * @param altitude feet at start
+     * @param climb feet a minute
+     * @param time at start, ms since epoch
+     * @return fraction of track, -1 if none
+     */
+    private static double enter(TFRShape s, double lon, double lat, double lon1, double lat1,
+            double minutes, double altitude, double climb, long time) {
+
+        /*
+         * Range of track within altitudes
+         */
+        double low = 0;
+        double high = minutes == 0 ? 0 : 1;
+        double bottom = s.getBottom() - ALTITUDE_MARGIN;
+        double top = s.getTop() + ALTITUDE_MARGIN;
+        double rise = climb * minutes;
+        if(rise == 0) {
+            if(altitude < bottom || altitude > top) {
+                return -1;
+            }
+        }
+        else {
+            double t0 = (bottom - altitude) / rise;
+            double t1 = (top - altitude) / rise;
+            low = Math.max(low, Math.min(t0, t1));
+            high = Math.min(high, Math.max(t0, t1));
+        }
+
+        /*
+         * Range of track while active
+         */
+        if(minutes == 0) {
+            if(!s.isActive(time)) {
+                return -1;
+            }
+        }
+        else {
+            double ms = minutes * 60000;
+            low = Math.max(low, (s.getEffective() - time) / ms);
+            high = Math.min(high, (s.getExpires() - time) / ms);
+        }
+        if(low > high) {
+            return -1;
+        }
+
+        /*
+         * Walk in and out of the shape along track, first inside range that overlaps wins
+         */
+        boolean in = s.contains(lon, lat);
+        double[] cross = minutes == 0 ? null : s.intersect(lon, lat, lon1, lat1);
+        double from = 0;
+        int count = null == cross ? 0 : cross.length;
+        for(int c = 0; c <= count; c++) {
+            double to = c < count ? cross[c] : high;
+            if(in && from <= high && to >= low) {
+                return Math.max(from, low);
+            }
+            if(from > high) {
+                break;
+            }
+            from = to;
+            in = !in;
+        }
+        return -1;
+    }
+
+    /**
+     * @author zkhan
+     *
+     */
+    private class IncursionTask extends Scheduler.Task {
+
+        /* (non-Javadoc)
+         * @see com.ds.avare.utils.Scheduler.Task#run(com.ds.avare.utils.Scheduler.Token)
+         */
+        @Override
+        public void run(Scheduler.Token token) {
+
+            TFRShape shape[] = new TFRShape[1];
+            int seconds = predict(mFetcher.getIndex(), mLon, mLat, mBearing, mSpeed, mAltitude, mClimb,
+                    System.currentTimeMillis(), mCandidates, shape);
+            mResult = new Result(shape[0], seconds);
+        }
+    }
+}
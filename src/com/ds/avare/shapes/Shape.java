@@ -11,13 +11,12 @@ Redistribution and use in source and binary forms, with or without modification,
 */
 package com.ds.avare.shapes;
 
-import java.util.LinkedList;
-
-import com.ds.avare.position.Coordinate;
 import com.ds.avare.position.Movement;
 import com.ds.avare.position.Origin;
 import com.ds.avare.position.Scale;
 
+import java.util.Arrays;
+
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Typeface;
@@ -28,7 +27,11 @@ import android.graphics.Typeface;
  */
 public abstract class Shape {
 
-    protected LinkedList<Coordinate> mCoords;
+    /*
+     * Packed lon, lat pairs
+     */
+    protected float mPoints[];
+    protected int mNum;
     protected double mLonMin;
     protected double mLonMax;
     protected double mLatMin;
@@ -38,14 +41,24 @@ public abstract class Shape {
     private double mXtop;
     private double mYtop;
     private String mText;
+
+    /*
+     * Segments projected for drawLines, relative to top left of shape.
+     * Only scale changes them; pan is a translate of the canvas.
+     */
+    private float mPts[];
+    private float mPtsFacX;
+    private float mPtsFacY;
+    private boolean mPtsValid;
     
-    private static final int WIDTHTOP = 60;
+    public static final int WIDTHTOP = 60;
     
     /**
      * 
      */
     public Shape(String label) {
-        mCoords = new LinkedList<Coordinate>();
+        mPoints = new float[16];
+        mNum = 0;
         mLonMin = 180;
         mLonMax = -180;
         mLatMin = 180;
@@ -54,6 +67,8 @@ public abstract class Shape {
         mYtop = 1E10;
         mText = label;
         mLonOfLatMax = 180;
+        mPts = null;
+        mPtsValid = false;
     }
 
     /**
@@ -61,8 +76,15 @@ public abstract class Shape {
      * @param coords
      */
     public void add(double lon, double lat) {
-        Coordinate c = new Coordinate(lon, lat);
-        mCoords.add(c);
+        if(mNum * 2 == mPoints.length) {
+            float points[] = new float[mPoints.length * 2];
+            System.arraycopy(mPoints, 0, points, 0, mNum * 2);
+            mPoints = points;
+        }
+        mPoints[mNum * 2] = (float)lon;
+        mPoints[mNum * 2 + 1] = (float)lat;
+        mNum++;
+        mPtsValid = false;
         if(lon < mLonMin) {
             mLonMin = lon;
         }
@@ -78,6 +100,53 @@ public abstract class Shape {
         }
     }
 
+    /**
+     * Remove all points
+     */
+    public void clear() {
+        mNum = 0;
+        mLonMin = 180;
+        mLonMax = -180;
+        mLatMin = 180;
+        mLatMax = -180;
+        mLonOfLatMax = 180;
+        mXtop = 1E10;
+        mYtop = 1E10;
+        mPtsValid = false;
+    }
+
+    /**
+     * Project segments for drawLines at this scale
+     * @param facx
+     * @param facy
+     */
+    private void makePts(float facx, float facy) {
+        if(mPtsValid && facx == mPtsFacX && facy == mPtsFacY) {
+            return;
+        }
+        int len = (mNum - 1) * 4;
+        if(null == mPts || mPts.length < len) {
+            mPts = new float[len];
+        }
+        float lonMin = (float)mLonMin;
+        float latMax = (float)mLatMax;
+        float x1 = (mPoints[0] - lonMin) * facx;
+        float y1 = (mPoints[1] - latMax) * facy;
+        for(int coord = 1, pt = 0; coord < mNum; coord++) {
+            float x2 = (mPoints[coord * 2] - lonMin) * facx;
+            float y2 = (mPoints[coord * 2 + 1] - latMax) * facy;
+            mPts[pt++] = x1;
+            mPts[pt++] = y1;
+            mPts[pt++] = x2;
+            mPts[pt++] = y2;
+            x1 = x2;
+            y1 = y2;
+        }
+        mPtsFacX = facx;
+        mPtsFacY = facy;
+        mPtsValid = true;
+    }
+
     /**
      * This will draw the closed shape in canvas with given screen params
      * @param c
@@ -88,6 +157,12 @@ public abstract class Shape {
      */
     public void drawShape(Canvas c, Origin origin, Scale scale, Movement movement, Paint paint, Typeface face) {
         
+        mXtop = 1E10;
+        mYtop = 1E10;
+        if(mNum < 2) {
+            return;
+        }
+
         float x = (float)origin.getOffsetX(mLonMin);
         float y = (float)origin.getOffsetY(mLatMax);
         float sx = scale.getScaleFactor();
@@ -96,15 +171,24 @@ public abstract class Shape {
         float facy = sy / (float)movement.getLatitudePerPixel();
         
         /*
-         * Draw the shape segment by segment
+         * Skip shapes off screen. Margin of a screen on each side as canvas may be rotated for track up.
          */
-        for(int coord = 0; coord < (getNumCoords() - 1); coord++) {
-            float x1 = x + (float)(mCoords.get(coord).getLongitude() - mLonMin) * facx;
-            float x2 = x + (float)(mCoords.get(coord + 1).getLongitude() - mLonMin) * facx;
-            float y1 = y + (float)(mCoords.get(coord).getLatitude() - mLatMax) * facy;
-            float y2 = y + (float)(mCoords.get(coord + 1).getLatitude() - mLatMax) * facy;
-            c.drawLine(x1, y1, x2, y2, paint);
+        float w = (float)(mLonMax - mLonMin) * facx;
+        float h = (float)(mLatMin - mLatMax) * facy;
+        float margin = c.getWidth() + c.getHeight();
+        if(Math.max(x, x + w) < -margin || Math.min(x, x + w) > c.getWidth() + margin ||
+                Math.max(y, y + h) < -margin || Math.min(y, y + h) > c.getHeight() + margin) {
+            return;
         }
+
+        /*
+         * Draw the shape in one go
+         */
+        makePts(facx, facy);
+        c.save();
+        c.translate(x, y);
+        c.drawLines(mPts, 0, (mNum - 1) * 4, paint);
+        c.restore();
         
         /*
          * Save this
@@ -122,14 +206,11 @@ public abstract class Shape {
          * Draw pivots at end of track
          */
         else if (this instanceof TrackShape) {
-            if(getNumCoords() < 2) {
-                return;
-            }
-            float x1 = (float)origin.getOffsetX(mCoords.get(0).getLongitude());
-            float y1 = (float)origin.getOffsetY(mCoords.get(0).getLatitude());
+            float x1 = (float)origin.getOffsetX(mPoints[0]);
+            float y1 = (float)origin.getOffsetY(mPoints[1]);
             c.drawCircle(x1, y1, 8, paint);
-            float x2 = (float)origin.getOffsetX(mCoords.get(getNumCoords() - 1).getLongitude());
-            float y2 = (float)origin.getOffsetY(mCoords.get(getNumCoords() - 1).getLatitude());
+            float x2 = (float)origin.getOffsetX(mPoints[(mNum - 1) * 2]);
+            float y2 = (float)origin.getOffsetY(mPoints[(mNum - 1) * 2 + 1]);
             c.drawCircle(x2, y2, 8, paint);
         }
     }
@@ -139,7 +220,25 @@ public abstract class Shape {
      * @return
      */
     public int getNumCoords() {
-        return mCoords.size();
+        return mNum;
+    }
+
+    /**
+     * 
+     * @param coord
+     * @return
+     */
+    public double getLongitude(int coord) {
+        return mPoints[coord * 2];
+    }
+
+    /**
+     * 
+     * @param coord
+     * @return
+     */
+    public double getLatitude(int coord) {
+        return mPoints[coord * 2 + 1];
     }
 
     /**
@@ -149,7 +248,128 @@ public abstract class Shape {
     public double getLatitudeMinimum() {
         return mLatMin;
     }
+
+    /**
+     * 
+     * @return
+     */
+    public double getLatitudeMaximum() {
+        return mLatMax;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public double getLongitudeMinimum() {
+        return mLonMin;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public double getLongitudeMaximum() {
+        return mLonMax;
+    }
     
+    /**
+     * 
+     * @param lon
+     * @param lat
+     * @return
+     */
+    public boolean isInBox(double lon, double lat) {
+        return lon >= mLonMin && lon <= mLonMax && lat >= mLatMin && lat <= mLatMax;
+    }
+
+    /**
+     * Is point inside the shape, closed from last point to first
+     * @param lon
+     * @param lat
+     * @return
+     */
+    public boolean contains(double lon, double lat) {
+        if(mNum < 3 || !isInBox(lon, lat)) {
+            return false;
+        }
+        /*
+         * Count edges crossed by a ray to the east of point
+         */
+        boolean in = false;
+        float x = (float)lon;
+        float y = (float)lat;
+        float x1 = mPoints[(mNum - 1) * 2];
+        float y1 = mPoints[(mNum - 1) * 2 + 1];
+        for(int coord = 0; coord < mNum; coord++) {
+            float x2 = mPoints[coord * 2];
+            float y2 = mPoints[coord * 2 + 1];
+            if((y2 > y) != (y1 > y) && x < (x1 - x2) * (y - y2) / (y1 - y2) + x2) {
+                in = !in;
+            }
+            x1 = x2;
+            y1 = y2;
+        }
+        return in;
+    }
+
+    /**
+     * Where a line crosses edges of the shape
+     * @param lon0 start of line
+     * @param lat0
+     * @param lon1 end of line
+     * @param lat1
+     * @return fractions of line from start to each crossing after start, in order; null if none
+     */
+    public double[] intersect(double lon0, double lat0, double lon1, double lat1) {
+        if(mNum < 2 || Math.max(lon0, lon1) < mLonMin || Math.min(lon0, lon1) > mLonMax ||
+                Math.max(lat0, lat1) < mLatMin || Math.min(lat0, lat1) > mLatMax) {
+            return null;
+        }
+        double dx = lon1 - lon0;
+        double dy = lat1 - lat0;
+        double cross[] = null;
+        int count = 0;
+        double x1 = mPoints[(mNum - 1) * 2];
+        double y1 = mPoints[(mNum - 1) * 2 + 1];
+        for(int coord = 0; coord < mNum; coord++) {
+            double x2 = mPoints[coord * 2];
+            double y2 = mPoints[coord * 2 + 1];
+            double ex = x2 - x1;
+            double ey = y2 - y1;
+            double den = dx * ey - dy * ex;
+            if(den != 0) {
+                double wx = x1 - lon0;
+                double wy = y1 - lat0;
+                double t = (wx * ey - wy * ex) / den;
+                double u = (wx * dy - wy * dx) / den;
+                /*
+                 * Edges half open so a vertex is crossed once, start is left to contains()
+                 */
+                if(t > 0 && t <= 1 && u > 0 && u <= 1) {
+                    if(null == cross) {
+                        cross = new double[4];
+                    }
+                    else if(count == cross.length) {
+                        double grow[] = new double[count * 2];
+                        System.arraycopy(cross, 0, grow, 0, count);
+                        cross = grow;
+                    }
+                    cross[count++] = t;
+                }
+            }
+            x1 = x2;
+            y1 = y2;
+        }
+        if(null == cross) {
+            return null;
+        }
+        double ret[] = new double[count];
+        System.arraycopy(cross, 0, ret, 0, count);
+        Arrays.sort(ret);
+        return ret;
+    }
+
     /**
      * 
      * @param x
@@ -0,0 +1,226 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ds.avare.shapes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Uniform grid on lon/lat over bounding boxes of shapes, to find shapes in a region
+ * without asking all of them. Build once in background when shapes are made, then query from UI.
+ * 
+ * @param <T> item that owns a shape, like TFRShape or AirSigMet
+ */
+public class ShapeIndex<T> {
+
+    /*
+     * Grid cell is at least this many degrees, bigger if the shapes cover a big area
+     */
+    private static final double CELL = 1.0;
+    private static final int MAX_CELLS = 4096;
+
+    private ArrayList<T> mItems;
+    private ArrayList<Shape> mShapes;
+
+    private double mLonMin;
+    private double mLatMin;
+    private double mCell;
+    private int mCols;
+    private int mRows;
+
+    /*
+     * Items in cell c are mCellItems[mCellStart[c]] to mCellItems[mCellStart[c + 1] - 1]
+     */
+    private int mCellStart[];
+    private int mCellItems[];
+
+    /*
+     * Query number when item was last returned, so items in many cells are returned once
+     */
+    private int mStamp[];
+    private int mQuery;
+
+    /**
+     * 
+     */
+    public ShapeIndex() {
+        mItems = new ArrayList<T>();
+        mShapes = new ArrayList<Shape>();
+        mCellStart = null;
+    }
+
+    /**
+     * Add an item before build()
+     * @param item
+     * @param shape
+     */
+    public void add(T item, Shape shape) {
+        if(null == shape || shape.getNumCoords() < 1) {
+            return;
+        }
+        mItems.add(item);
+        mShapes.add(shape);
+    }
+
+    /**
+     * Make grid of added items
+     */
+    public void build() {
+        int num = mShapes.size();
+        mStamp = new int[num];
+        mQuery = 0;
+        if(0 == num) {
+            mCols = mRows = 0;
+            mCellStart = new int[1];
+            mCellItems = new int[0];
+            return;
+        }
+
+        double lonMin = 180;
+        double lonMax = -180;
+        double latMin = 90;
+        double latMax = -90;
+        for(int i = 0; i < num; i++) {
+            Shape s = mShapes.get(i);
+            lonMin = Math.min(lonMin, s.getLongitudeMinimum());
+            lonMax = Math.max(lonMax, s.getLongitudeMaximum());
+            latMin = Math.min(latMin, s.getLatitudeMinimum());
+            latMax = Math.max(latMax, s.getLatitudeMaximum());
+        }
+        mLonMin = lonMin;
+        mLatMin = latMin;
+        mCell = Math.max(CELL, Math.sqrt((lonMax - lonMin) * (latMax - latMin) / MAX_CELLS));
+        mCols = (int)((lonMax - lonMin) / mCell) + 1;
+        mRows = (int)((latMax - latMin) / mCell) + 1;
+
+        /*
+         * Count, then fill
+         */
+        int cells = mCols * mRows;
+        mCellStart = new int[cells + 1];
+        int range[] = new int[4];
+        for(int i = 0; i < num; i++) {
+            getRange(mShapes.get(i), range);
+            for(int row = range[1]; row <= range[3]; row++) {
+                for(int col = range[0]; col <= range[2]; col++) {
+                    mCellStart[row * mCols + col + 1]++;
+                }
+            }
+        }
+        for(int c = 0; c < cells; c++) {
+            mCellStart[c + 1] += mCellStart[c];
+        }
+        mCellItems = new int[mCellStart[cells]];
+        int fill[] = new int[cells];
+        System.arraycopy(mCellStart, 0, fill, 0, cells);
+        for(int i = 0; i < num; i++) {
+            getRange(mShapes.get(i), range);
+            for(int row = range[1]; row <= range[3]; row++) {
+                for(int col = range[0]; col <= range[2]; col++) {
+                    mCellItems[fill[row * mCols + col]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cells covered by a shape
+     * @param s
+     * @param range col min, row min, col max, row max
+     */
+    private void getRange(Shape s, int range[]) {
+        range[0] = getCol(s.getLongitudeMinimum());
+        range[1] = getRow(s.getLatitudeMinimum());
+        range[2] = getCol(s.getLongitudeMaximum());
+        range[3] = getRow(s.getLatitudeMaximum());
+    }
+
+    /**
+     * 
+     * @param lon
+     * @return
+     */
+    private int getCol(double lon) {
+        int col = (int)Math.floor((lon - mLonMin) / mCell);
+        return Math.max(0, Math.min(mCols - 1, col));
+    }
+
+    /**
+     * 
+     * @param lat
+     * @return
+     */
+    private int getRow(double lat) {
+        int row = (int)Math.floor((lat - mLatMin) / mCell);
+        return Math.max(0, Math.min(mRows - 1, row));
+    }
+
+    /**
+     * Find items whose shape bounding box overlaps the region.
+     * @param lonMin
+     * @param latMin
+     * @param lonMax
+     * @param latMax
+     * @param out is cleared, then filled with items
+     */
+    public synchronized void find(double lonMin, double latMin, double lonMax, double latMax, List<T> out) {
+        out.clear();
+        if(null == mCellStart || 0 == mCols || lonMax < lonMin || latMax < latMin) {
+            return;
+        }
+        mQuery++;
+        if(0 == mQuery) {
+            /*
+             * Wrapped, start stamps over
+             */
+            for(int i = 0; i < mStamp.length; i++) {
+                mStamp[i] = 0;
+            }
+            mQuery = 1;
+        }
+        int col0 = getCol(lonMin);
+        int col1 = getCol(lonMax);
+        int row0 = getRow(latMin);
+        int row1 = getRow(latMax);
+        for(int row = row0; row <= row1; row++) {
+            for(int col = col0; col <= col1; col++) {
+                int c = row * mCols + col;
+                for(int k = mCellStart[c]; k < mCellStart[c + 1]; k++) {
+                    int i = mCellItems[k];
+                    if(mStamp[i] == mQuery) {
+                        continue;
+                    }
+                    mStamp[i] = mQuery;
+                    Shape s = mShapes.get(i);
+                    if(s.getLongitudeMaximum() < lonMin || s.getLongitudeMinimum() > lonMax ||
+                            s.getLatitudeMaximum() < latMin || s.getLatitudeMinimum() > latMax) {
+                        continue;
+                    }
+                    out.add(mItems.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public int size() {
+        return mItems.size();
+    }
+}
@@ -20,10 +20,84 @@ package com.ds.avare.shapes;
  */
 public class TFRShape extends Shape {
 
+    /*
+     * Times in ms since epoch, altitudes in feet
+     */
+    private long mEffective;
+    private long mExpires;
+    private int mBottom;
+    private int mTop;
+
     /**
      * 
      */
     public TFRShape(String text) {
-        super(text);
+        this(text, 0, Long.MAX_VALUE, 0, Integer.MAX_VALUE);
     }    
+
+    /**
+     * 
+     * @param text
+     * @param effective
+     * @param expires
+     * @param bottom
+     * @param top
+     */
+    public TFRShape(String text, long effective, long expires, int bottom, int top) {
+        super(text);
+        mEffective = effective;
+        mExpires = expires;
+        mBottom = bottom;
+        mTop = top;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public long getEffective() {
+        return mEffective;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public long getExpires() {
+        return mExpires;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public int getBottom() {
+        return mBottom;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public int getTop() {
+        return mTop;
+    }
+
+    /**
+     * 
+     * @param time
+     * @return
+     */
+    public boolean isActive(long time) {
+        return time >= mEffective && time <= mExpires;
+    }
+
+    /**
+     * 
+     * @param altitude in feet
+     * @return
+     */
+    public boolean isWithinAltitude(double altitude) {
+        return altitude >= mBottom && altitude <= mTop;
+    }
 }
@@ -0,0 +1,250 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+
+import com.ds.avare.utils.Helper;
+
+/**
+ * 
+ * @author zkhan
+ * What charts are installed, kept in one file in maps folder so the download screen
+ * does not have to read a version file per chart.
+ * Download and delete update it, and it is written whole to a new file that replaces the old one.
+ */
+public class ChartInventory {
+
+    private static final String FILE = "charts.inventory";
+    private static final String PART = ".part";
+    private static final int VERSION = 1;
+
+    /*
+     * One inventory per maps folder
+     */
+    private static ChartInventory sInventory = null;
+
+    private String mFolder;
+    private HashMap<String, Chart> mCharts;
+
+    /**
+     * 
+     * @author zkhan
+     *
+     */
+    public static class Chart {
+        public String name;
+        public String version;
+        public long expires;
+        public long size;
+        public int tiles;
+        public boolean installed;
+    }
+
+    /**
+     * 
+     * @param folder
+     * @return inventory of this maps folder, loaded on first call
+     */
+    public static synchronized ChartInventory get(String folder) {
+        if(null == sInventory || !sInventory.mFolder.equals(folder)) {
+            sInventory = new ChartInventory(folder);
+        }
+        return sInventory;
+    }
+
+    /**
+     * 
+     * @param folder
+     */
+    private ChartInventory(String folder) {
+        mFolder = folder;
+        mCharts = new HashMap<String, Chart>();
+        load();
+    }
+
+    /**
+     * 
+     */
+    private void load() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(mFolder, FILE))));
+            if(in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            HashMap<String, Chart> charts = new HashMap<String, Chart>();
+            for(int i = 0; i < count; i++) {
+                Chart c = new Chart();
+                c.name = in.readUTF();
+                c.version = in.readUTF();
+                c.expires = in.readLong();
+                c.size = in.readLong();
+                c.tiles = in.readInt();
+                c.installed = in.readBoolean();
+                if(c.version.length() == 0) {
+                    c.version = null;
+                }
+                charts.put(c.name, c);
+            }
+            mCharts = charts;
+        }
+        catch (IOException e) {
+        }
+        finally {
+            if(null != in) {
+                try {
+                    in.close();
+                }
+                catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Write all to a new file, then put it in place of the old one
+     */
+    private void save() {
+        File file = new File(mFolder, FILE);
+        File tmp = new File(mFolder, FILE + PART);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(VERSION);
+            out.writeInt(mCharts.size());
+            for(Chart c : mCharts.values()) {
+                out.writeUTF(c.name);
+                out.writeUTF(c.version == null ? "" : c.version);
+                out.writeLong(c.expires);
+                out.writeLong(c.size);
+                out.writeInt(c.tiles);
+                out.writeBoolean(c.installed);
+            }
+            out.close();
+            if(!tmp.renameTo(file)) {
+                file.delete();
+                tmp.renameTo(file);
+            }
+        }
+        catch (IOException e) {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Add charts not yet in inventory, from their version files if any.
+     * This is done once for each chart.
+     * @param names
+     */
+    public synchronized void add(String names[]) {
+        boolean changed = false;
+        for(int i = 0; i < names.length; i++) {
+            if(mCharts.containsKey(names[i])) {
+                continue;
+            }
+            Chart c = new Chart();
+            c.name = names[i];
+            c.version = null;
+            File file = new File(mFolder, names[i]);
+            if(file.exists()) {
+                try {
+                    BufferedReader br = new BufferedReader(new FileReader(file), 128);
+                    c.version = br.readLine();
+                    br.close();
+                }
+                catch (IOException e) {
+                }
+            }
+            c.installed = c.version != null;
+            c.expires = Helper.getExpires(c.version);
+            mCharts.put(c.name, c);
+            changed = true;
+        }
+        if(changed) {
+            save();
+        }
+    }
+
+    /**
+     * A chart has been downloaded
+     * @param name
+     * @param version
+     * @param size bytes on storage
+     * @param tiles
+     */
+    public synchronized void installed(String name, String version, long size, int tiles) {
+        Chart c = new Chart();
+        c.name = name;
+        c.version = version;
+        c.expires = Helper.getExpires(version);
+        c.size = size;
+        c.tiles = tiles;
+        c.installed = true;
+        mCharts.put(name, c);
+        save();
+    }
+
+    /**
+     * A chart has been deleted
+     * @param name
+     */
+    public synchronized void removed(String name) {
+        Chart c = mCharts.get(name);
+        if(null == c || !c.installed) {
+            return;
+        }
+        c.version = null;
+        c.expires = 0;
+        c.size = 0;
+        c.tiles = 0;
+        c.installed = false;
+        save();
+    }
+
+    /**
+     * 
+     * @param name
+     * @return version, null if not installed
+     */
+    public synchronized String getVersion(String name) {
+        Chart c = mCharts.get(name);
+        if(null == c || !c.installed) {
+            return null;
+        }
+        return c.version;
+    }
+
+    /**
+     * 
+     * @param name
+     * @return when installed chart expires, 0 if not installed
+     */
+    public synchronized long getExpires(String name) {
+        Chart c = mCharts.get(name);
+        if(null == c || !c.installed) {
+            return 0;
+        }
+        return c.expires;
+    }
+}
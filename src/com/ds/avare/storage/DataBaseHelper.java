@@ -1159,6 +1159,41 @@ public class DataBaseHelper extends SQLiteOpenHelper {
         return mCenterTile;        
     }
 
+    /**
+     * Find charts that have a tile at this position
+     * @param lon
+     * @param lat
+     * @return
+     */
+    public LinkedList<String> findChartsAt(double lon, double lat) {
+      
+        String qry =
+                "select * from " + TABLE_FILES + " where " + 
+                "((latul - " + lat + ") > 0) and " +
+                "((latll - " + lat + ") < 0) and " + 
+                "((lonul - " + lon + ") < 0) and " + 
+                "((lonur - " + lon + ") > 0);";
+        
+        LinkedList<String> charts = new LinkedList<String>();
+        Cursor cursor = doQueryFiles(qry, getFilesDb());
+        
+        try {
+            if(cursor != null) {
+                while(cursor.moveToNext()) {
+                    String chart = cursor.getString(11);
+                    if(null != chart && !charts.contains(chart)) {
+                        charts.add(chart);
+                    }
+                }
+            }
+        }
+        catch (Exception e) {
+        }
+        
+        closesFiles(cursor);
+        return charts;        
+    }
+
     /**
      * 
      * @param name
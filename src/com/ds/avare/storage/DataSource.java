@@ -61,6 +61,15 @@ public class DataSource {
         return(dbHelper.findClosest(lon, lat, offset, p, factor));
     }
 
+    /**
+     * @param lon
+     * @param lat
+     * @return
+     */
+    public LinkedList<String> findChartsAt(double lon, double lat) {
+        return(dbHelper.findChartsAt(lon, lat));
+    }
+
     /**
      * @param name
      * @return
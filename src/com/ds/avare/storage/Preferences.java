@@ -411,6 +411,14 @@ public class Preferences {
         return(mPref.getBoolean(mContext.getString(R.string.IconHelicopter), false));
     }
 
+    /**
+     * 
+     * @return
+     */
+    public boolean isRenderProfile() {
+        return(mPref.getBoolean(mContext.getString(R.string.RenderProfile), false));
+    }
+
     /**
      * 
      * @return
@@ -488,6 +496,19 @@ public class Preferences {
         return false;
     }
     
+    /**
+     * 
+     * @return bytes per second for all downloads together, 0 for no limit
+     */
+    public long getDownloadRate() {
+        try {
+            return(Long.parseLong(mPref.getString(mContext.getString(R.string.DownloadRate), "0")) * 1024);
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     /**
      * 
      * @return
@@ -0,0 +1,858 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ds.avare.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.zip.CRC32;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * A single file that holds all tiles of a chart, instead of thousands of loose files.
+ * 
+ * Layout:
+ * header:  int MAGIC, int VERSION
+ * records: short name length, name (UTF-8), int data length, data
+ * index:   int name hash, long record offset, int record length, int data CRC32, sorted by hash
+ *          (version 1 has no CRC)
+ * trailer: long index offset, int count, int MAGIC
+ * 
+ * A pack is written as name.pack.part and renamed to name.pack only when its index
+ * is complete, so a pack on disk is always whole.
+ * 
+ * While a chart downloads, its tiles are published in segments chart.1.pack, chart.2.pack...
+ * Higher segments are searched first, so new tiles show as soon as a segment is done.
+ */
+public class TilePack {
+
+    public static final String EXT = ".pack";
+    public static final String PART = ".part";
+
+    private static final int MAGIC = 0x41565450;
+    private static final int VERSION = 2;
+    private static final int VERSION_NO_CRC = 1;
+    private static final int HEADER = 8;
+    private static final int INDEX_ENTRY = 20;
+    private static final int INDEX_ENTRY_NO_CRC = 16;
+    private static final int TRAILER = 16;
+    private static final int BLOCKSIZE = 8192;
+
+    /*
+     * All packs in maps folder, scanned once and dropped on reset()
+     */
+    private static TilePack[] sPacks = null;
+    private static String sFolder = null;
+
+    /*
+     * Reads seek and read under lock of pack. A channel would be closed for good
+     * by an interrupt of any reading thread.
+     */
+    private RandomAccessFile mFile;
+    private boolean mClosed;
+    private String mName;
+    private long mSize;
+    private int mHash[];
+    private long mOffset[];
+    private int mLength[];
+    private int mCrc[];
+
+    /**
+     * Open a pack and load its index
+     * @param file
+     * @throws IOException
+     */
+    public TilePack(File file) throws IOException {
+        mName = file.getName();
+        mFile = new RandomAccessFile(file, "r");
+        mClosed = false;
+        try {
+            long size = mFile.length();
+            mSize = size;
+            if(size < HEADER + TRAILER) {
+                throw new IOException("Short pack " + mName);
+            }
+            ByteBuffer header = readFully(new byte[HEADER], 0);
+            int version = header.getInt(4);
+            if(header.getInt(0) != MAGIC || (version != VERSION && version != VERSION_NO_CRC)) {
+                throw new IOException("Bad pack " + mName);
+            }
+            int entry = (version == VERSION) ? INDEX_ENTRY : INDEX_ENTRY_NO_CRC;
+
+            ByteBuffer trailer = readFully(new byte[TRAILER], size - TRAILER);
+            long indexOffset = trailer.getLong(0);
+            int count = trailer.getInt(8);
+            if(trailer.getInt(12) != MAGIC || count < 0 ||
+                    indexOffset + (long)count * entry + TRAILER != size) {
+                throw new IOException("Bad pack " + mName);
+            }
+
+            ByteBuffer index = readFully(new byte[count * entry], indexOffset);
+            mHash = new int[count];
+            mOffset = new long[count];
+            mLength = new int[count];
+            mCrc = (version == VERSION) ? new int[count] : null;
+            for(int i = 0; i < count; i++) {
+                mHash[i] = index.getInt();
+                mOffset[i] = index.getLong();
+                mLength[i] = index.getInt();
+                if(null != mCrc) {
+                    mCrc[i] = index.getInt();
+                }
+            }
+        }
+        catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 
+     * @param buf
+     * @param position
+     * @return buf wrapped
+     * @throws IOException
+     */
+    private synchronized ByteBuffer readFully(byte buf[], long position) throws IOException {
+        if(mClosed) {
+            throw new IOException("Closed pack " + mName);
+        }
+        mFile.seek(position);
+        mFile.readFully(buf);
+        return ByteBuffer.wrap(buf);
+    }
+
+    /**
+     * 
+     * @param hash
+     * @return first index entry with this hash
+     */
+    private int search(int hash) {
+        int lo = 0;
+        int hi = mHash.length;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(mHash[mid] < hash) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 
+     * @return true if pack knows CRC of its tiles
+     */
+    public boolean hasCrc() {
+        return null != mCrc;
+    }
+
+    /**
+     * See if a tile is here with same data, without reading it
+     * @param name
+     * @param crc of tile data
+     * @return
+     */
+    public boolean has(String name, int crc) {
+        if(null == mCrc) {
+            return false;
+        }
+        int hash = name.hashCode();
+        for(int i = search(hash); i < mHash.length && mHash[i] == hash; i++) {
+            if(mCrc[i] == crc) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find a tile.
+     * @param name is tile name like tiles/0/...jpg
+     * @param range is returned offset and length of tile data in returned buffer
+     * @return buffer with tile data, null if not in this pack
+     */
+    public byte[] read(String name, int range[]) {
+        int hash = name.hashCode();
+
+        /*
+         * First entry with this hash
+         */
+        int lo = search(hash);
+
+        byte key[];
+        try {
+            key = name.getBytes("UTF-8");
+        }
+        catch (Exception e) {
+            return null;
+        }
+
+        /*
+         * Names can collide on hash, so match name stored in record
+         */
+        for(int i = lo; i < mHash.length && mHash[i] == hash; i++) {
+            byte buf[] = new byte[mLength[i]];
+            try {
+                readFully(buf, mOffset[i]);
+            }
+            catch (IOException e) {
+                return null;
+            }
+            int len = ((buf[0] & 0xFF) << 8) | (buf[1] & 0xFF);
+            if(len != key.length) {
+                continue;
+            }
+            boolean match = true;
+            for(int j = 0; j < len; j++) {
+                if(buf[2 + j] != key[j]) {
+                    match = false;
+                    break;
+                }
+            }
+            if(!match) {
+                continue;
+            }
+            range[0] = 2 + len + 4;
+            range[1] = buf.length - range[0];
+            return buf;
+        }
+        return null;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public int getCount() {
+        return mHash.length;
+    }
+
+    /**
+     * 
+     * @return bytes on storage
+     */
+    public long getSize() {
+        return mSize;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * 
+     * @return true once closed, when packs in folder changed
+     */
+    public synchronized boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * Waits for a read in progress
+     */
+    public synchronized void close() {
+        mClosed = true;
+        try {
+            mFile.close();
+        }
+        catch (IOException e) {
+        }
+    }
+
+    /**
+     * Open all packs in folder
+     * @param folder
+     * @return
+     */
+    private static synchronized TilePack[] getPacks(String folder) {
+        if(sPacks != null && folder.equals(sFolder)) {
+            return sPacks;
+        }
+        closeAll();
+        LinkedList<TilePack> packs = new LinkedList<TilePack>();
+        String files[] = new File(folder).list();
+        if(files != null) {
+            /*
+             * Newest segments first
+             */
+            Arrays.sort(files, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    int sa = getSegment(a);
+                    int sb = getSegment(b);
+                    return sa > sb ? -1 : (sa < sb ? 1 : 0);
+                }
+            });
+            for(int i = 0; i < files.length; i++) {
+                if(!files[i].endsWith(EXT)) {
+                    continue;
+                }
+                try {
+                    packs.add(new TilePack(new File(folder, files[i])));
+                }
+                catch (IOException e) {
+                }
+            }
+        }
+        sPacks = packs.toArray(new TilePack[packs.size()]);
+        sFolder = folder;
+        return sPacks;
+    }
+
+    /**
+     * 
+     */
+    private static void closeAll() {
+        if(sPacks != null) {
+            for(int i = 0; i < sPacks.length; i++) {
+                sPacks[i].close();
+            }
+        }
+        sPacks = null;
+        sFolder = null;
+    }
+
+    /**
+     * Find a tile in any pack in the folder
+     * @param folder is maps folder
+     * @param name is tile name
+     * @param range is returned offset and length of tile data in returned buffer
+     * @return
+     */
+    public static byte[] readTile(String folder, String name, int range[]) {
+        boolean closed;
+        do {
+            /*
+             * Packs are closed and opened again when a download publishes or a chart is deleted.
+             * Look again in new packs if that happened while looking.
+             */
+            closed = false;
+            TilePack packs[] = getPacks(folder);
+            for(int i = 0; i < packs.length; i++) {
+                byte buf[] = packs[i].read(name, range);
+                if(null != buf) {
+                    return buf;
+                }
+                closed |= packs[i].isClosed();
+            }
+        } while(closed);
+        return null;
+    }
+
+    /**
+     * 
+     * @param folder
+     * @return true if any chart is stored in a pack
+     */
+    public static boolean hasPacks(String folder) {
+        return getPacks(folder).length > 0;
+    }
+
+    /**
+     * Call when packs have been added or removed, next read opens them again
+     */
+    public static synchronized void reset() {
+        closeAll();
+    }
+
+    /**
+     * 
+     * @param file name like chart.pack or chart.3.pack
+     * @return segment number, 0 if not segmented
+     */
+    private static int getSegment(String file) {
+        if(!file.endsWith(EXT)) {
+            return 0;
+        }
+        String base = file.substring(0, file.length() - EXT.length());
+        int dot = base.lastIndexOf('.');
+        if(dot < 0) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(base.substring(dot + 1));
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 
+     * @param file
+     * @param chart
+     * @return true if file is a pack, a segment, or a partial of this chart
+     */
+    private static boolean isPackOf(String file, String chart) {
+        if(file.endsWith(PART)) {
+            file = file.substring(0, file.length() - PART.length());
+        }
+        if(!file.endsWith(EXT) || !file.startsWith(chart)) {
+            return false;
+        }
+        String rest = file.substring(chart.length(), file.length() - EXT.length());
+        if(rest.length() == 0) {
+            return true;
+        }
+        if(rest.charAt(0) != '.' || rest.length() == 1) {
+            return false;
+        }
+        for(int i = 1; i < rest.length(); i++) {
+            if(!Character.isDigit(rest.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Open packs of one chart, newest first. Caller closes them.
+     * @param folder
+     * @param chart
+     * @return
+     */
+    public static LinkedList<TilePack> open(String folder, String chart) {
+        LinkedList<TilePack> packs = new LinkedList<TilePack>();
+        String files[] = new File(folder).list();
+        if(files == null) {
+            return packs;
+        }
+        for(int i = 0; i < files.length; i++) {
+            if(files[i].endsWith(PART) || !isPackOf(files[i], chart)) {
+                continue;
+            }
+            try {
+                TilePack pack = new TilePack(new File(folder, files[i]));
+                int segment = getSegment(files[i]);
+                int at = 0;
+                for(TilePack p : packs) {
+                    if(getSegment(p.getName()) < segment) {
+                        break;
+                    }
+                    at++;
+                }
+                packs.add(at, pack);
+            }
+            catch (IOException e) {
+            }
+        }
+        return packs;
+    }
+
+    /**
+     * Delete a chart's packs in one go
+     * @param folder
+     * @param chart
+     * @return bytes freed, 0 if chart has no pack
+     */
+    public static synchronized long delete(String folder, String chart) {
+        closeAll();
+        long freed = 0;
+        String files[] = new File(folder).list();
+        if(files != null) {
+            for(int i = 0; i < files.length; i++) {
+                if(!isPackOf(files[i], chart)) {
+                    continue;
+                }
+                File f = new File(folder, files[i]);
+                long len = f.length();
+                if(f.delete()) {
+                    freed += len;
+                }
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * 
+     * @author zkhan
+     * Writes a chart's packs from a stream of tiles, e.g. from a zip file.
+     * Call publish() now and then to make tiles written so far visible.
+     */
+    public static class Writer {
+
+        private String mFolder;
+        private String mChart;
+        private int mFirst;
+        private int mSegment;
+        private LinkedList<File> mOld;
+        private LinkedList<File> mPublished;
+        private File mPart;
+        private File mFile;
+        private DataOutputStream mOut;
+        private long mPosition;
+        private int mCount;
+        private long mEntries[];
+        private long mOffset[];
+        private int mLength[];
+        private int mCrc[];
+        private CRC32 mCheck;
+        private byte mBuffer[];
+
+        /**
+         * 
+         * @param folder
+         * @param chart
+         * @throws IOException
+         */
+        public Writer(String folder, String chart) throws IOException {
+            this(folder, chart, 0, 0);
+        }
+
+        /**
+         * Go on with packs of a download that was stopped
+         * @param folder
+         * @param chart
+         * @param first is getFirst() of the stopped writer, segments from it on are kept
+         * @param part is what sync() of the stopped writer returned last, 0 for none
+         * @throws IOException
+         */
+        public Writer(String folder, String chart, int first, long part) throws IOException {
+            mFolder = folder;
+            mChart = chart;
+            mOld = new LinkedList<File>();
+            mPublished = new LinkedList<File>();
+
+            /*
+             * Packs of this chart from before are replaced on finish()
+             */
+            mSegment = 1;
+            String files[] = new File(folder).list();
+            if(files != null) {
+                for(int i = 0; i < files.length; i++) {
+                    if(!isPackOf(files[i], chart)) {
+                        continue;
+                    }
+                    File f = new File(folder, files[i]);
+                    if(files[i].endsWith(PART)) {
+                        continue;
+                    }
+                    int segment = getSegment(files[i]);
+                    if(first > 0 && segment >= first) {
+                        mPublished.add(f);
+                    }
+                    else {
+                        mOld.add(f);
+                    }
+                    mSegment = Math.max(mSegment, segment + 1);
+                }
+            }
+            mFirst = first > 0 ? first : mSegment;
+
+            mEntries = new long[1024];
+            mOffset = new long[1024];
+            mLength = new int[1024];
+            mCrc = new int[1024];
+            mCheck = new CRC32();
+            mBuffer = new byte[BLOCKSIZE * 8];
+            mCount = 0;
+
+            /*
+             * Keep the segment that was being written, drop other partials
+             */
+            mFile = new File(mFolder, mChart + "." + mSegment + EXT);
+            mPart = new File(mFolder, mChart + "." + mSegment + EXT + PART);
+            if(files != null) {
+                for(int i = 0; i < files.length; i++) {
+                    if(files[i].endsWith(PART) && isPackOf(files[i], chart) &&
+                            (first <= 0 || !files[i].equals(mPart.getName()))) {
+                        new File(folder, files[i]).delete();
+                    }
+                }
+            }
+            if(first <= 0 || !reopen(part)) {
+                open();
+            }
+        }
+
+        /**
+         * Open partial segment, cut off what was written after length, and index it again
+         * @param length
+         * @return false if partial is not usable
+         */
+        private boolean reopen(long length) {
+            if(length < HEADER) {
+                return false;
+            }
+            RandomAccessFile f = null;
+            try {
+                f = new RandomAccessFile(mPart, "rw");
+                if(f.length() < length) {
+                    return false;
+                }
+                f.setLength(length);
+                if(f.readInt() != MAGIC || f.readInt() != VERSION) {
+                    return false;
+                }
+                long position = HEADER;
+                while(position < length) {
+                    f.seek(position);
+                    int nameLength = f.readUnsignedShort();
+                    byte key[] = new byte[nameLength];
+                    f.readFully(key);
+                    int len = f.readInt();
+                    int record = 2 + nameLength + 4 + len;
+                    if(len < 0 || position + record > length) {
+                        mCount = 0;
+                        return false;
+                    }
+                    if(len > mBuffer.length) {
+                        mBuffer = new byte[len];
+                    }
+                    f.readFully(mBuffer, 0, len);
+                    mCheck.reset();
+                    mCheck.update(mBuffer, 0, len);
+                    addEntry(new String(key, "UTF-8").hashCode(), position, record, (int)mCheck.getValue());
+                    position += record;
+                }
+                f.close();
+                f = null;
+                mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mPart, true), BLOCKSIZE * 8));
+                mPosition = length;
+                return true;
+            }
+            catch (IOException e) {
+                mCount = 0;
+                return false;
+            }
+            finally {
+                if(null != f) {
+                    try {
+                        f.close();
+                    }
+                    catch (IOException e) {
+                    }
+                }
+            }
+        }
+
+        /**
+         * Start next segment
+         * @throws IOException
+         */
+        private void open() throws IOException {
+            mFile = new File(mFolder, mChart + "." + mSegment + EXT);
+            mPart = new File(mFolder, mChart + "." + mSegment + EXT + PART);
+            mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mPart), BLOCKSIZE * 8));
+            mOut.writeInt(MAGIC);
+            mOut.writeInt(VERSION);
+            mPosition = HEADER;
+            mCount = 0;
+        }
+
+        /**
+         * Add a tile
+         * @param name
+         * @param in is read to its end, caller closes it
+         * @throws IOException
+         */
+        public void add(String name, InputStream in) throws IOException {
+            /*
+             * Tiles are small, read whole so length goes before data
+             */
+            int len = 0;
+            int count;
+            while((count = in.read(mBuffer, len, mBuffer.length - len)) >= 0) {
+                len += count;
+                if(len == mBuffer.length) {
+                    byte grow[] = new byte[mBuffer.length * 2];
+                    System.arraycopy(mBuffer, 0, grow, 0, len);
+                    mBuffer = grow;
+                }
+            }
+
+            byte key[] = name.getBytes("UTF-8");
+            mCheck.reset();
+            mCheck.update(mBuffer, 0, len);
+            addEntry(name.hashCode(), mPosition, 2 + key.length + 4 + len, (int)mCheck.getValue());
+
+            mOut.writeShort(key.length);
+            mOut.write(key);
+            mOut.writeInt(len);
+            mOut.write(mBuffer, 0, len);
+            mPosition += 2 + key.length + 4 + len;
+        }
+
+        /**
+         * 
+         * @param hash
+         * @param position
+         * @param size
+         * @param crc
+         */
+        private void addEntry(int hash, long position, int size, int crc) {
+            if(mCount == mEntries.length) {
+                long entries[] = new long[mCount * 2];
+                long offset[] = new long[mCount * 2];
+                int length[] = new int[mCount * 2];
+                int check[] = new int[mCount * 2];
+                System.arraycopy(mEntries, 0, entries, 0, mCount);
+                System.arraycopy(mOffset, 0, offset, 0, mCount);
+                System.arraycopy(mLength, 0, length, 0, mCount);
+                System.arraycopy(mCrc, 0, check, 0, mCount);
+                mEntries = entries;
+                mOffset = offset;
+                mLength = length;
+                mCrc = check;
+            }
+
+            /*
+             * Hash in upper word, entry number in lower, so a plain sort orders by hash
+             */
+            mEntries[mCount] = ((long)hash << 32) | mCount;
+            mOffset[mCount] = position;
+            mLength[mCount] = size;
+            mCrc[mCount] = crc;
+            mCount++;
+        }
+
+        /**
+         * Put tiles added so far on storage
+         * @return length of partial segment to give a writer that goes on later
+         * @throws IOException
+         */
+        public long sync() throws IOException {
+            mOut.flush();
+            return mPosition;
+        }
+
+        /**
+         * 
+         * @return first segment of this download
+         */
+        public int getFirst() {
+            return mFirst;
+        }
+
+        /**
+         * 
+         * @return tiles in segment being written
+         */
+        public int getCount() {
+            return mCount;
+        }
+
+        /**
+         * Write index and rename current segment
+         * @throws IOException
+         */
+        private void close() throws IOException {
+            long entries[] = new long[mCount];
+            System.arraycopy(mEntries, 0, entries, 0, mCount);
+            Arrays.sort(entries);
+            for(int i = 0; i < mCount; i++) {
+                int entry = (int)(entries[i] & 0xFFFFFFFFL);
+                mOut.writeInt((int)(entries[i] >> 32));
+                mOut.writeLong(mOffset[entry]);
+                mOut.writeInt(mLength[entry]);
+                mOut.writeInt(mCrc[entry]);
+            }
+            mOut.writeLong(mPosition);
+            mOut.writeInt(mCount);
+            mOut.writeInt(MAGIC);
+            mOut.flush();
+            mOut.close();
+
+            synchronized(TilePack.class) {
+                closeAll();
+                if(!mPart.renameTo(mFile)) {
+                    throw new IOException("Cannot rename " + mPart.getName());
+                }
+            }
+            mPublished.add(mFile);
+        }
+
+        /**
+         * Make tiles written so far visible, and go on in a new segment
+         * @throws IOException
+         */
+        public void publish() throws IOException {
+            if(0 == mCount) {
+                return;
+            }
+            close();
+            mSegment++;
+            open();
+        }
+
+        /**
+         * Publish what is left and drop the packs this chart had before
+         * @throws IOException
+         */
+        public void finish() throws IOException {
+            if(mCount > 0 || mPublished.isEmpty()) {
+                close();
+            }
+            else {
+                mOut.close();
+                mPart.delete();
+            }
+            synchronized(TilePack.class) {
+                closeAll();
+                for(File f : mOld) {
+                    f.delete();
+                }
+            }
+        }
+
+        /**
+         * Stop writing, keep what is written to go on with later
+         */
+        public void suspend() {
+            try {
+                mOut.close();
+            }
+            catch (IOException e) {
+            }
+        }
+
+        /**
+         * Drop everything written, packs from before stay
+         */
+        public void abort() {
+            try {
+                mOut.close();
+            }
+            catch (IOException e) {
+            }
+            synchronized(TilePack.class) {
+                closeAll();
+                mPart.delete();
+                for(File f : mPublished) {
+                    f.delete();
+                }
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@ package com.ds.avare.utils;
 import java.io.File;
 
 import com.ds.avare.storage.Preferences;
+import com.ds.avare.storage.TilePack;
 
 import android.content.Context;
 import android.graphics.Bitmap;
@@ -148,14 +149,28 @@ public class BitmapHolder {
         opt.inPreferredConfig = Bitmap.Config.RGB_565;
         opt.inSampleSize = sampleSize;
 
-        if(!(new File(pref.mapsFolder() + "/" + name)).exists()) {
-            mName = null;
-            return;
-        }
-        try {
-            mBitmap = BitmapFactory.decodeFile(pref.mapsFolder() + "/" + name, opt);
+        /*
+         * Charts are stored in packs, older downloads as loose files
+         */
+        int range[] = new int[2];
+        byte data[] = TilePack.readTile(pref.mapsFolder(), name, range);
+        if(null != data) {
+            try {
+                mBitmap = BitmapFactory.decodeByteArray(data, range[0], range[1], opt);
+            }
+            catch(OutOfMemoryError e) {
+            }
         }
-        catch(OutOfMemoryError e) {
+        else {
+            if(!(new File(pref.mapsFolder() + "/" + name)).exists()) {
+                mName = null;
+                return;
+            }
+            try {
+                mBitmap = BitmapFactory.decodeFile(pref.mapsFolder() + "/" + name, opt);
+            }
+            catch(OutOfMemoryError e) {
+            }
         }
         if(null != mBitmap) {
             mWidth = mBitmap.getWidth();
@@ -14,20 +14,14 @@ package com.ds.avare.utils;
 
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.LinkedList;
 import java.util.Locale;
 import java.util.TimeZone;
 
-import com.ds.avare.shapes.TFRShape;
 import com.ds.avare.storage.Preferences;
 
 import android.app.Activity;
-import android.content.Context;
 import android.content.pm.ActivityInfo;
 import android.graphics.ColorMatrix;
 import android.graphics.ColorMatrixColorFilter;
@@ -91,14 +85,29 @@ public class Helper {
      * @param paint
      */
     public static void invertCanvasColors(Paint paint) {
-       float mx [] = {
-                -1.0f,  0.0f,  0.0f,  1.0f,  0.0f,
-                0.0f,  -1.0f,  0.0f,  1.0f,  0.0f,
-                0.0f,  0.0f,  -1.0f,  1.0f,  0.0f,
-                1.0f,  1.0f,  1.0f,  1.0f,  0.0f 
-       };
-       ColorMatrix cm = new ColorMatrix(mx);
-       paint.setColorFilter(new ColorMatrixColorFilter(cm));
+       paint.setColorFilter(getInvertFilter());
+    }
+
+    /*
+     * Filters do not change, make once
+     */
+    private static ColorMatrixColorFilter sInvertFilter = null;
+
+    /**
+     * 
+     * @return filter that inverts colors, shared
+     */
+    public static synchronized ColorMatrixColorFilter getInvertFilter() {
+       if(null == sInvertFilter) {
+           float mx [] = {
+                   -1.0f,  0.0f,  0.0f,  1.0f,  0.0f,
+                   0.0f,  -1.0f,  0.0f,  1.0f,  0.0f,
+                   0.0f,  0.0f,  -1.0f,  1.0f,  0.0f,
+                   1.0f,  1.0f,  1.0f,  1.0f,  0.0f 
+           };
+           sInvertFilter = new ColorMatrixColorFilter(new ColorMatrix(mx));
+       }
+       return sInvertFilter;
     }
 
     /**
@@ -126,6 +135,15 @@ public class Helper {
      * @param paint
      */
     public static void setThreshold(Paint paint, float threshold) {
+       paint.setColorFilter(getThresholdFilter(threshold));
+    }
+
+    /**
+     * 
+     * @param threshold
+     * @return filter for terrain at this threshold
+     */
+    public static ColorMatrixColorFilter getThresholdFilter(float threshold) {
         /*
          * Elevation matrix. This will threshold the elevation with GPS altitude.
          * The factor is used to increase the brightness for a given elevation map.
@@ -154,7 +172,7 @@ public class Helper {
                 0     , 0,             0,             1,  0
        };
        ColorMatrix cm = new ColorMatrix(mx);
-       paint.setColorFilter(new ColorMatrixColorFilter(cm));
+       return new ColorMatrixColorFilter(cm);
     }
 
     /**
@@ -324,6 +342,24 @@ public class Helper {
      * @return
      */
     public static boolean isExpired(String date) {
+        return isExpired(getExpires(date));
+    }
+
+    /**
+     * 
+     * @param expires from getExpires()
+     * @return
+     */
+    public static boolean isExpired(long expires) {
+        return System.currentTimeMillis() > expires;
+    }
+
+    /**
+     * When a chart or TFR of this date expires
+     * @param date like 08_22_2013, or 08_22_2013_10:30 for TFRs
+     * @return ms since epoch, 0 if date is bad
+     */
+    public static long getExpires(String date) {
         
         int year;
         int month;
@@ -332,9 +368,8 @@ public class Helper {
         int min;
         
         if(null == date) {
-            return true;
+            return 0;
         }
-        GregorianCalendar now = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
         GregorianCalendar expires = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
         /*
          * Parse the normal charts date designation
@@ -342,7 +377,7 @@ public class Helper {
          */
         String dates[] = date.split("_");
         if(dates.length < 3) {
-            return true;            
+            return 0;            
         }
         try {
             month = Integer.parseInt(dates[0]) - 1;
@@ -356,7 +391,7 @@ public class Helper {
                 hour = Integer.parseInt(time[0]);
                 min = Integer.parseInt(time[1]);
                 if(year < 1 || month < 0 || day < 1 || hour < 0 || min < 0) {
-                    return true;
+                    return 0;
                 }
                 /*
                  * so many min expiry
@@ -371,24 +406,17 @@ public class Helper {
                 hour = 9;
                 min = 0;
                 if(year < 1 || month < 0 || day < 1 || hour < 0 || min < 0) {
-                    return true;
+                    return 0;
                 }
                 expires.set(year, month, day, hour, min);
                 expires.add(Calendar.DAY_OF_MONTH, 28);
             }
         }
         catch (Exception e) {
-            return true;
-        }
-
-        /*
-         * expired?
-         */
-        if(now.after(expires)) {
-            return true;
+            return 0;
         }
 
-        return false;
+        return expires.getTimeInMillis();
     }
     
     /**
@@ -438,94 +466,6 @@ public class Helper {
         }
         return null;
     }
-    
-    /**
-     * 
-     * @param data
-     */
-    private static String readFromFile(String filename) {
-        File file = new File(filename);
-        byte b[] = null;
-        try {
-            if(file.exists()) {
-                b = new byte[(int)file.length()];
-                InputStream fi = new FileInputStream(file);              
-                fi.read(b);
-                fi.close();
-            }
-        }
-        catch (Exception e) {
-            return null;
-        }
-        
-        if(null != b) {
-            return new String(b);
-        }
-        return null;
-    }
-    
-
-    /**
-     * 
-     * @param airport
-     * @return
-     */
-    public static LinkedList<TFRShape> getShapesInTFR(Context ctx) {
-        
-        /*
-         * Create a shapes list
-         */
-        LinkedList<TFRShape> shapeList = new LinkedList<TFRShape>();
-
-        String filename = new Preferences(ctx).mapsFolder() + "/tfr.txt";
-        String data = readFromFile(filename);
-        if(null != data) {
-            /*
-             * Find date of last file download
-             */
-            File file = new File(filename);
-            Date time = new Date(file.lastModified());
-   
-            /*
-             * Now read from file
-             */
-            String tokens[] = data.split(",");
-            TFRShape shape = null;
-            /*
-             * Add shapes from latitude, longitude
-             */
-            for(int id = 0; id < tokens.length; id++) {
-                if(tokens[id].contains("TFR:: ")) {
-                    if(null != shape) {
-                        shapeList.add(shape);
-                    }                                 
-                    shape = new TFRShape(tokens[id].replace(
-                            "TFR:: ", "@ " + time.toString()).
-                            replace("Top", "\n" + "Top      ").
-                            replace("Low", "\n" + "Bottom   ").
-                            replace("Eff", "\n" + "Effective").
-                            replace("Exp", "\n" + "Expires  "));
-                    continue;
-                }
-                try {
-                    /*
-                     * If we get bad input from Govt. site. 
-                     */
-                    shape.add(Double.parseDouble(tokens[id + 1]),
-                            Double.parseDouble(tokens[id]));
-                }
-                catch (Exception e) {
-                    
-                }
-                id++;
-            }
-            if(null != shape) {
-                shapeList.add(shape);
-            }
-        }
-        
-        return shapeList;
-    }  
 
 
 }
\ No newline at end of file
@@ -11,9 +11,10 @@ Redistribution and use in source and binary forms, with or without modification,
 */
 package com.ds.avare.utils;
 
+import java.io.InputStream;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
-import java.util.List;
+import java.util.LinkedList;
 import java.util.Locale;
 import java.util.TimeZone;
 
@@ -21,6 +22,13 @@ import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.ds.avare.network.HttpCache;
+import com.ds.avare.weather.Airep;
+import com.ds.avare.weather.Metar;
+import com.ds.avare.weather.Taf;
+import com.ds.avare.weather.WeatherListener;
 
 
 /**
@@ -31,6 +39,13 @@ import org.xml.sax.XMLReader;
 public class NetworkHelper {
     
     public static final int EXPIRES = 10;
+
+    /*
+     * How long a weather response is reused, ms
+     */
+    public static final long METAR_EXPIRES = 5 * 60 * 1000;
+    public static final long TAF_EXPIRES = 15 * 60 * 1000;
+    public static final long PIREP_EXPIRES = 5 * 60 * 1000;
     
     /**
      * 
@@ -38,6 +53,25 @@ public class NetworkHelper {
     public NetworkHelper() {
     }
     
+    /**
+     * Get through the HTTP cache and parse with handler
+     * @param url
+     * @param expires
+     * @param handler
+     * @throws Exception
+     */
+    private static void parse(String url, long expires, DefaultHandler handler) throws Exception {
+        InputStream in = HttpCache.open(url, expires);
+        try {
+            XMLReader xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+            xmlReader.setContentHandler(handler);
+            xmlReader.parse(new InputSource(in));
+        }
+        finally {
+            in.close();
+        }
+    }
+
     /**
      * 
      * @return
@@ -50,68 +84,65 @@ public class NetworkHelper {
     /**
      * 
      * @param airport
-     * @return
+     * @return null if none
      */
-    public static String getMETAR(String airport) {
+    public static Metar getMETAR(String airport) {
         
         /*
-         * Get TAF
+         * Get METAR
          */
         String xml = "http://aviationweather.gov/adds/dataserver_current/httpparam?dataSource=metars&requestType=retrieve&format=xml&stationString=K" + 
                 airport + "&hoursBeforeNow=2";
-        XMLReader xmlReader;
+        final LinkedList<Metar> out = new LinkedList<Metar>();
         try {
-            xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
-            SAXXMLHandlerMETAR saxHandler = new SAXXMLHandlerMETAR();
-            xmlReader.setContentHandler(saxHandler);
-            xmlReader.parse(new InputSource(xml));
-            List<String> texts = saxHandler.getText();
-            for(String text : texts) {
-                return text;
-            }
+            parse(xml, METAR_EXPIRES, new SAXXMLHandlerMETAR(new WeatherListener<Metar>() {
+                @Override
+                public void onReport(Metar report) {
+                    out.add(report);
+                }
+            }));
         }
         catch (Exception e) {
             e.printStackTrace();
         }
-        return "";
+        return out.isEmpty() ? null : out.getFirst();
     }
         
     /**
      * 
      * @param airport
-     * @return
+     * @return null if none
      */
-    public static String getTAF(String airport) {
+    public static Taf getTAF(String airport) {
         
         /*
          * Get TAF
          */
         String xml = "http://aviationweather.gov/adds/dataserver_current/httpparam?dataSource=tafs&requestType=retrieve&format=xml&stationString=K"
                  + airport + "&hoursBeforeNow=2";
-        
-        XMLReader xmlReader;
+        final LinkedList<Taf> out = new LinkedList<Taf>();
         try {
-            xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
-            SAXXMLHandlerTAF saxHandler = new SAXXMLHandlerTAF();
-            xmlReader.setContentHandler(saxHandler);
-            xmlReader.parse(new InputSource(xml));
-            List<String> texts = saxHandler.getText();
-            for(String text : texts) {
-                return text;
-            }
+            parse(xml, TAF_EXPIRES, new SAXXMLHandlerTAF(new WeatherListener<Taf>() {
+                @Override
+                public void onReport(Taf report) {
+                    out.add(report);
+                }
+            }));
         }
         catch (Exception e) {
             
         }
-        return "";
+        return out.isEmpty() ? null : out.getFirst();
     }
 
     /**
      * 
-     * @param airport
-     * @return
+     * @param plan
+     * @param miles
+     * @param listener gets each PIREP as parsed
+     * @return false if could not get
      */
-    public static String getPIREPS(String plan, String miles) {
+    public static boolean getPIREPS(String plan, String miles, WeatherListener<Airep> listener) {
         
         /*
          * Get PIREPS
@@ -120,125 +151,80 @@ public class NetworkHelper {
                 "http://aviationweather.gov/adds/dataserver_current/httpparam?datasource=pireps"
                 + "&requestType=retrieve&format=xml&hoursBeforeNow=12" 
                 + "&radialDistance=" + miles + ";" + plan;
-        /*
-         * Get PIREPS
-         */
-        String out = "";
-        XMLReader xmlReader;
         try {
-            xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
-            SAXXMLHandlerPIREP saxHandler = new SAXXMLHandlerPIREP();
-            xmlReader.setContentHandler(saxHandler);
-            xmlReader.parse(new InputSource(xml));
-            List<String> texts = saxHandler.getText();
-            for(String text : texts) {
-                out += text + "::::";
-            }
+            parse(xml, PIREP_EXPIRES, new SAXXMLHandlerPIREP(listener));
         }
         catch (Exception e) {
-            
+            return false;
         }        
-        return out;
+        return true;
     }
 
     /**
      * 
      * @param plan
-     * @return
+     * @param miles
+     * @param listener gets each METAR as parsed
+     * @return false if could not get
      */
-    public static String getMETARPlan(String plan, String miles) {
+    public static boolean getMETARPlan(String plan, String miles, WeatherListener<Metar> listener) {
         
         String xml = 
                 "http://aviationweather.gov/adds/dataserver_current/httpparam?datasource=metars"
                 + "&requestType=retrieve&format=xml&mostRecentForEachStation=constraint&hoursBeforeNow=1.25" 
                 + "&flightPath=" + miles + ";" + plan;
-        /*
-         * Get METAR
-         */
-        String out = "";
-        XMLReader xmlReader;
         try {
-            xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
-            SAXXMLHandlerMETAR saxHandler = new SAXXMLHandlerMETAR();
-            xmlReader.setContentHandler(saxHandler);
-            xmlReader.parse(new InputSource(xml));
-            List<String> texts = saxHandler.getText();
-            for(String text : texts) {
-                out += text + "::::";
-            }
+            parse(xml, METAR_EXPIRES, new SAXXMLHandlerMETAR(listener));
         }
         catch (Exception e) {
-            
+            return false;
         }
-        
-        return out;
+        return true;
     }
 
     /**
      * 
      * @param plan
-     * @return
+     * @param miles
+     * @param listener gets each TAF as parsed
+     * @return false if could not get
      */
-    public static String getTAFPlan(String plan, String miles) {
+    public static boolean getTAFPlan(String plan, String miles, WeatherListener<Taf> listener) {
         
         String xml = 
                 "http://aviationweather.gov/adds/dataserver_current/httpparam?datasource=tafs"
                 + "&requestType=retrieve&format=xml&mostRecentForEachStation=constraint&hoursBeforeNow=1.25" 
                 + "&flightPath=" + miles + ";" + plan;
-        /*
-         * Get TAF
-         */
-        String out = "";
-        XMLReader xmlReader;
         try {
-            xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
-            SAXXMLHandlerTAF saxHandler = new SAXXMLHandlerTAF();
-            xmlReader.setContentHandler(saxHandler);
-            xmlReader.parse(new InputSource(xml));
-            List<String> texts = saxHandler.getText();
-            for(String text : texts) {
-                out += text + "::::";
-            }
+            parse(xml, TAF_EXPIRES, new SAXXMLHandlerTAF(listener));
         }
         catch (Exception e) {
-            
+            return false;
         }
-        
-        return out;
+        return true;
     }
 
 
     /**
      * 
      * @param plan
-     * @return
+     * @param miles
+     * @param listener gets each PIREP as parsed
+     * @return false if could not get
      */
-    public static String getPIREPSPlan(String plan, String miles) {
+    public static boolean getPIREPSPlan(String plan, String miles, WeatherListener<Airep> listener) {
         
         String xml = 
                 "http://aviationweather.gov/adds/dataserver_current/httpparam?datasource=pireps"
                 + "&requestType=retrieve&format=xml&hoursBeforeNow=12" 
                 + "&flightPath=" + miles + ";" + plan;
-        /*
-         * Get PIREPS
-         */
-        String out = "";
-        XMLReader xmlReader;
         try {
-            xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
-            SAXXMLHandlerPIREP saxHandler = new SAXXMLHandlerPIREP();
-            xmlReader.setContentHandler(saxHandler);
-            xmlReader.parse(new InputSource(xml));
-            List<String> texts = saxHandler.getText();
-            for(String text : texts) {
-                out += text + "::::";
-            }
+            parse(xml, PIREP_EXPIRES, new SAXXMLHandlerPIREP(listener));
         }
         catch (Exception e) {
-            
+            return false;
         }
-        
-        return out;
+        return true;
     }
 
     /**
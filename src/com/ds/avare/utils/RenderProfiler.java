@@ -0,0 +1,213 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ds.avare.utils;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Paint.Align;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Times each layer of the map draw over the last FRAMES frames.
+ * Only made when enabled in preferences, so when disabled the cost is a null check per layer.
+ * Times are of the draw calls on UI thread, not of the GPU.
+ */
+public class RenderProfiler {
+
+    public static final int TILES = 0;
+    public static final int NEXRAD = 1;
+    public static final int DRAWING = 2;
+    public static final int RUNWAYS = 3;
+    public static final int TFR = 4;
+    public static final int AIRSIGMET = 5;
+    public static final int TRACK = 6;
+    public static final int OBSTACLES = 7;
+    public static final int AIRCRAFT = 8;
+    public static final int TEXTS = 9;
+    public static final int LAYERS = 10;
+
+    private static final String NAMES[] = {
+        "tiles", "nexrad", "drawing", "runways", "tfr", "airsigmet", "track", "obstacles", "aircraft", "texts"
+    };
+
+    /*
+     * Frames in ring buffer
+     */
+    private static final int FRAMES = 256;
+
+    /*
+     * 60 fps budget, a frame over it misses one or more vsyncs
+     */
+    private static final long BUDGET = 16666667L;
+
+    private long mLayer[];
+    private long mFrame[];
+    private long mSorted[];
+    private int mIndex;
+    private int mCount;
+    private long mDropped;
+    private long mTotal;
+    private long mStart;
+    private long mLast;
+
+    /**
+     * 
+     */
+    public RenderProfiler() {
+        mLayer = new long[FRAMES * LAYERS];
+        mFrame = new long[FRAMES];
+        mSorted = new long[FRAMES];
+        mIndex = 0;
+        mCount = 0;
+        mDropped = 0;
+        mTotal = 0;
+    }
+
+    /**
+     * Call before first layer
+     */
+    public void begin() {
+        mStart = System.nanoTime();
+        mLast = mStart;
+    }
+
+    /**
+     * Call after a layer is drawn
+     * @param layer
+     */
+    public void mark(int layer) {
+        long now = System.nanoTime();
+        mLayer[mIndex * LAYERS + layer] = now - mLast;
+        mLast = now;
+    }
+
+    /**
+     * Call after last layer
+     */
+    public void end() {
+        long time = mLast - mStart;
+        mFrame[mIndex] = time;
+        mDropped += time / BUDGET;
+        mTotal++;
+        mIndex = (mIndex + 1) % FRAMES;
+        if(mCount < FRAMES) {
+            mCount++;
+        }
+    }
+
+    /**
+     * 
+     * @param percent 0 to 100
+     * @return frame time in ns at percentile of frames in buffer
+     */
+    public long getPercentile(int percent) {
+        if(0 == mCount) {
+            return 0;
+        }
+        System.arraycopy(mFrame, 0, mSorted, 0, mCount);
+        Arrays.sort(mSorted, 0, mCount);
+        int index = (mCount * percent + 99) / 100 - 1;
+        if(index < 0) {
+            index = 0;
+        }
+        return mSorted[index];
+    }
+
+    /**
+     * 
+     * @param layer
+     * @return average time in ns of a layer over frames in buffer
+     */
+    public long getAverage(int layer) {
+        if(0 == mCount) {
+            return 0;
+        }
+        long sum = 0;
+        for(int i = 0; i < mCount; i++) {
+            sum += mLayer[i * LAYERS + layer];
+        }
+        return sum / mCount;
+    }
+
+    /**
+     * 
+     * @return vsyncs missed since start
+     */
+    public long getDropped() {
+        return mDropped;
+    }
+
+    /**
+     * Draw stats on top of map
+     * @param canvas
+     * @param paint
+     * @param x
+     * @param y
+     */
+    public void draw(Canvas canvas, Paint paint, float x, float y) {
+        float step = paint.getTextSize();
+        paint.setTextAlign(Align.LEFT);
+        canvas.drawText("p50 " + ms(getPercentile(50)) + " p95 " + ms(getPercentile(95)) +
+                " p99 " + ms(getPercentile(99)) + " drop " + mDropped + "/" + mTotal, x, y, paint);
+        for(int layer = 0; layer < LAYERS; layer++) {
+            y += step;
+            canvas.drawText(NAMES[layer] + " " + ms(getAverage(layer)), x, y, paint);
+        }
+    }
+
+    /**
+     * 
+     * @param ns
+     * @return
+     */
+    private static String ms(long ns) {
+        return String.format(Locale.getDefault(), "%.1fms", ns / 1000000.0);
+    }
+
+    /**
+     * Write frames in buffer, oldest first, in ns
+     * @param file
+     */
+    public void dump(String file) {
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+            bw.write("frame");
+            for(int layer = 0; layer < LAYERS; layer++) {
+                bw.write("," + NAMES[layer]);
+            }
+            bw.write("\n");
+            int first = (mIndex - mCount + FRAMES) % FRAMES;
+            for(int i = 0; i < mCount; i++) {
+                int frame = (first + i) % FRAMES;
+                bw.write(Long.toString(mFrame[frame]));
+                for(int layer = 0; layer < LAYERS; layer++) {
+                    bw.write("," + mLayer[frame * LAYERS + layer]);
+                }
+                bw.write("\n");
+            }
+            bw.flush();
+            bw.close();
+        }
+        catch (IOException e) {
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ds.avare.utils;
+
+import com.ds.avare.R;
+import com.ds.avare.storage.Preferences;
+
+import android.content.Context;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Everything the map needs from preferences to draw a frame, computed when
+ * preferences or threshold change so drawing reads no preferences and makes no objects.
+ */
+public class RenderState {
+
+    /*
+     * Chart types that need a filter
+     */
+    private static final String CHART_IFR_LOW = "3";
+    private static final String CHART_IFR_HIGH = "4";
+    private static final String CHART_TERRAIN = "5";
+
+    private Context mContext;
+    private Paint mTilePaint;
+    private ColorFilter mTileFilter;
+    private boolean mInvert;
+    private boolean mTerrain;
+    private float mThreshold;
+    private String mAltitude;
+    private String mAirSigMetType;
+    private int mAirSigMetColor;
+
+    /**
+     * 
+     * @param context
+     */
+    public RenderState(Context context) {
+        mContext = context;
+        mTilePaint = new Paint();
+        mTilePaint.setAntiAlias(true);
+        mTileFilter = null;
+        mInvert = false;
+        mTerrain = false;
+        mThreshold = 0;
+        mAltitude = Helper.calculateAltitudeFromThreshold(mThreshold);
+        mAirSigMetType = null;
+        mAirSigMetColor = 0;
+    }
+
+    /**
+     * Call when preferences may have changed
+     * @param pref
+     */
+    public void update(Preferences pref) {
+        String type = pref.getChartType();
+        mInvert = pref.isNightMode() && (type.equals(CHART_IFR_LOW) || type.equals(CHART_IFR_HIGH));
+        mTerrain = type.equals(CHART_TERRAIN);
+        mTileFilter = null;
+        makeTileFilter();
+
+        /*
+         * Units may have changed
+         */
+        mAltitude = Helper.calculateAltitudeFromThreshold(mThreshold);
+
+        /*
+         * Find color of AIR/SIGMET type to show
+         */
+        mAirSigMetType = pref.getAirSigMetType();
+        mAirSigMetColor = 0;
+        String typeArray[] = mContext.getResources().getStringArray(R.array.AirSig);
+        int colorArray[] = mContext.getResources().getIntArray(R.array.AirSigColor);
+        for(int j = 0; j < typeArray.length; j++) {
+            if(typeArray[j].equals(mAirSigMetType)) {
+                mAirSigMetColor = colorArray[j];
+                break;
+            }
+        }
+    }
+
+    /**
+     * Call when terrain threshold changes
+     * @param threshold
+     */
+    public void setThreshold(float threshold) {
+        if(threshold == mThreshold) {
+            return;
+        }
+        mThreshold = threshold;
+        mAltitude = Helper.calculateAltitudeFromThreshold(mThreshold);
+        if(mTerrain) {
+            mTileFilter = null;
+            makeTileFilter();
+        }
+    }
+
+    /**
+     * 
+     */
+    private void makeTileFilter() {
+        if(mInvert) {
+            /*
+             * IFR charts invert color at night
+             */
+            mTileFilter = Helper.getInvertFilter();
+        }
+        else if(mTerrain) {
+            mTileFilter = Helper.getThresholdFilter(mThreshold);
+        }
+        mTilePaint.setColorFilter(mTileFilter);
+    }
+
+    /**
+     * 
+     * @return paint to draw tiles with, filter already set
+     */
+    public Paint getTilePaint() {
+        return mTilePaint;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public float getThreshold() {
+        return mThreshold;
+    }
+
+    /**
+     * 
+     * @return altitude text of threshold
+     */
+    public String getAltitude() {
+        return mAltitude;
+    }
+
+    /**
+     * 
+     * @return color to draw AIR/SIGMET, 0 if none
+     */
+    public int getAirSigMetColor() {
+        return mAirSigMetColor;
+    }
+
+    /**
+     * Same as (hazard + " " + reportType).equals(type) without making a string
+     * @param hazard
+     * @param reportType
+     * @return
+     */
+    public boolean isAirSigMetShown(String hazard, String reportType) {
+        if(0 == mAirSigMetColor || null == hazard || null == reportType) {
+            return false;
+        }
+        int len = hazard.length();
+        return mAirSigMetType.length() == len + 1 + reportType.length() &&
+                mAirSigMetType.startsWith(hazard) &&
+                mAirSigMetType.charAt(len) == ' ' &&
+                mAirSigMetType.endsWith(reportType);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ds.avare.utils;
+
+import java.util.HashMap;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Base of handlers for ADDS XML.
+ * Element names are looked up once to an int, and text goes in one reused buffer.
+ */
+public abstract class SAXXMLHandler extends DefaultHandler {
+
+    protected static final int OTHER = 0;
+    protected static final int METAR = 1;
+    protected static final int TAF = 2;
+    protected static final int PIREP = 3;
+    protected static final int RAW_TEXT = 4;
+    protected static final int STATION_ID = 5;
+    protected static final int OBSERVATION_TIME = 6;
+    protected static final int ISSUE_TIME = 7;
+    protected static final int FLIGHT_CATEGORY = 8;
+    protected static final int REPORT_TYPE = 9;
+    protected static final int LATITUDE = 10;
+    protected static final int LONGITUDE = 11;
+
+    private static final HashMap<String, Integer> ELEMENTS = new HashMap<String, Integer>();
+
+    static {
+        ELEMENTS.put("METAR", METAR);
+        ELEMENTS.put("TAF", TAF);
+        ELEMENTS.put("PIREP", PIREP);
+        ELEMENTS.put("AircraftReport", PIREP);
+        ELEMENTS.put("raw_text", RAW_TEXT);
+        ELEMENTS.put("station_id", STATION_ID);
+        ELEMENTS.put("observation_time", OBSERVATION_TIME);
+        ELEMENTS.put("issue_time", ISSUE_TIME);
+        ELEMENTS.put("flight_category", FLIGHT_CATEGORY);
+        ELEMENTS.put("report_type", REPORT_TYPE);
+        ELEMENTS.put("pirep_type", REPORT_TYPE);
+        ELEMENTS.put("latitude", LATITUDE);
+        ELEMENTS.put("longitude", LONGITUDE);
+    }
+
+    private StringBuilder mValue = new StringBuilder(256);
+
+    /**
+     * An element started
+     * @param element one of above
+     */
+    protected abstract void start(int element);
+
+    /**
+     * An element ended
+     * @param element one of above
+     * @param value its text, only valid in this call
+     */
+    protected abstract void end(int element, StringBuilder value);
+
+    /**
+     * 
+     * @param name
+     * @return
+     */
+    private static int getElement(String name) {
+        Integer id = ELEMENTS.get(name);
+        return null == id ? OTHER : id;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName,
+            Attributes attributes) throws SAXException {
+        mValue.setLength(0);
+        start(getElement(qName));
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length)
+            throws SAXException {
+        mValue.append(ch, start, length);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName)
+            throws SAXException {
+        end(getElement(qName), mValue);
+    }
+}
@@ -1,73 +1,57 @@
-/*
-Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
-All rights reserved.
-
-Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
-
-    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
-    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
-    *
-    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
-*/
-
 package com.ds.avare.utils;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
+import com.ds.avare.weather.Metar;
+import com.ds.avare.weather.WeatherListener;
 
 /**
  * 
  * @author zkhan
  *
  */
-public class SAXXMLHandlerMETAR extends DefaultHandler {
-    private List<String> mText;
-    private String mTempText;
-    private String mTempCategory;
-    private String mTempVal;
- 
-    public SAXXMLHandlerMETAR() {
-        mText = new ArrayList<String>();
-    }
+public class SAXXMLHandlerMETAR extends SAXXMLHandler {
+    private WeatherListener<Metar> mListener;
+    private Metar mMetar;
  
-    public List<String> getText() {
-        return mText;
+    public SAXXMLHandlerMETAR(WeatherListener<Metar> listener) {
+        mListener = listener;
+        mMetar = null;
     }
  
-    // Event Handlers
-    public void startElement(String uri, String localName, String qName,
-            Attributes attributes) throws SAXException {
-        mTempVal = "";
-        if(qName.equalsIgnoreCase("METAR")) {
-            mTempText = new String();
-            mTempCategory = new String();
+    @Override
+    protected void start(int element) {
+        if(element == METAR) {
+            mMetar = new Metar();
+            mMetar.flightCategory = "";
         }
     }
  
-    public void characters(char[] ch, int start, int length)
-            throws SAXException {
-        mTempVal += new String(ch, start, length);
-    }
- 
-    public void endElement(String uri, String localName, String qName)
-            throws SAXException {
-        if (qName.equalsIgnoreCase("raw_text")) {
-            mTempText = mTempVal;
+    @Override
+    protected void end(int element, StringBuilder value) {
+        if(null == mMetar) {
+            return;
         }
-        if (qName.equalsIgnoreCase("flight_category")) {
-            mTempCategory = mTempVal;
-        }
-        if(qName.equalsIgnoreCase("METAR")) {
-            if(mTempText.equals("") || mTempCategory.equals("")) {
-            }
-            else {
-                mText.add(mTempCategory + "," + mTempText);
-            }
+        switch(element) {
+            case RAW_TEXT:
+                mMetar.rawText = value.toString();
+                break;
+            case STATION_ID:
+                mMetar.stationId = value.toString();
+                break;
+            case OBSERVATION_TIME:
+                mMetar.time = value.toString();
+                break;
+            case FLIGHT_CATEGORY:
+                mMetar.flightCategory = value.toString();
+                break;
+            case METAR:
+                /*
+                 * No category is fine, FlightCategory works it out
+                 */
+                if(null != mMetar.rawText && mMetar.rawText.length() > 0) {
+                    mListener.onReport(mMetar);
+                }
+                mMetar = null;
+                break;
         }
     }
 }
-
@@ -1,70 +1,70 @@
-/*
-Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
-All rights reserved.
-
-Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
-
-    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
-    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
-    *
-    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
-*/
-
 package com.ds.avare.utils;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
+import com.ds.avare.weather.Airep;
+import com.ds.avare.weather.WeatherListener;
 
 /**
  * 
  * @author zkhan
  *
  */
-public class SAXXMLHandlerPIREP extends DefaultHandler {
-    private List<String> mText;
-    private String mTempText;
-    private String mTempVal;
-    private String mTempType;
+public class SAXXMLHandlerPIREP extends SAXXMLHandler {
+    private WeatherListener<Airep> mListener;
+    private Airep mAirep;
  
-    public SAXXMLHandlerPIREP() {
-        mText = new ArrayList<String>();
+    public SAXXMLHandlerPIREP(WeatherListener<Airep> listener) {
+        mListener = listener;
+        mAirep = null;
     }
  
-    public List<String> getText() {
-        return mText;
-    }
- 
-    // Event Handlers
-    public void startElement(String uri, String localName, String qName,
-            Attributes attributes) throws SAXException {
-        mTempVal = "";
-        if(qName.equalsIgnoreCase("PIREP")) {
-            mTempText = new String();
-            mTempType = new String();
+    @Override
+    protected void start(int element) {
+        if(element == PIREP) {
+            mAirep = new Airep();
+            mAirep.rawText = "";
+            mAirep.reportType = "";
+            mAirep.lon = Double.NaN;
+            mAirep.lat = Double.NaN;
         }
     }
  
-    public void characters(char[] ch, int start, int length)
-            throws SAXException {
-        mTempVal += new String(ch, start, length);
-    }
- 
-    public void endElement(String uri, String localName, String qName)
-            throws SAXException {
-        if (qName.equalsIgnoreCase("raw_text")) {
-            mTempText = mTempVal;
-        }
-        if (qName.equalsIgnoreCase("pirep_type")) {
-            mTempType = mTempVal;
+    @Override
+    protected void end(int element, StringBuilder value) {
+        if(null == mAirep) {
+            return;
         }
-        if(qName.equalsIgnoreCase("PIREP")) {
-            if(!mTempType.equals("AIREP")) {
-                mText.add(mTempText);
-            }
+        switch(element) {
+            case RAW_TEXT:
+                mAirep.rawText = value.toString();
+                break;
+            case REPORT_TYPE:
+                mAirep.reportType = value.toString();
+                break;
+            case OBSERVATION_TIME:
+                mAirep.time = value.toString();
+                break;
+            case LATITUDE:
+                mAirep.latitude = value.toString();
+                try {
+                    mAirep.lat = Double.parseDouble(mAirep.latitude);
+                }
+                catch (Exception e) {
+                }
+                break;
+            case LONGITUDE:
+                mAirep.longitude = value.toString();
+                try {
+                    mAirep.lon = Double.parseDouble(mAirep.longitude);
+                }
+                catch (Exception e) {
+                }
+                break;
+            case PIREP:
+                if(!mAirep.reportType.equals("AIREP")) {
+                    mListener.onReport(mAirep);
+                }
+                mAirep = null;
+                break;
         }
     }
 }
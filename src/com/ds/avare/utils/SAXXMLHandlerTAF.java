@@ -1,58 +1,44 @@
-/*
-Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
-All rights reserved.
-
-Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
-
-    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
-    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
-    *
-    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
-*/
-
 package com.ds.avare.utils;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
+import com.ds.avare.weather.Taf;
+import com.ds.avare.weather.WeatherListener;
 
-public class SAXXMLHandlerTAF extends DefaultHandler {
-    private List<String> mText;
-    private String mTempText;
-    private String mTempVal;
+public class SAXXMLHandlerTAF extends SAXXMLHandler {
+    private WeatherListener<Taf> mListener;
+    private Taf mTaf;
  
-    public SAXXMLHandlerTAF() {
-        mText = new ArrayList<String>();
+    public SAXXMLHandlerTAF(WeatherListener<Taf> listener) {
+        mListener = listener;
+        mTaf = null;
     }
  
-    public List<String> getText() {
-        return mText;
-    }
- 
-    // Event Handlers
-    public void startElement(String uri, String localName, String qName,
-            Attributes attributes) throws SAXException {
-        mTempVal = "";
-        if(qName.equalsIgnoreCase("TAF")) {
-            mTempText = new String();
+    @Override
+    protected void start(int element) {
+        if(element == TAF) {
+            mTaf = new Taf();
+            mTaf.rawText = "";
         }
     }
  
-    public void characters(char[] ch, int start, int length)
-            throws SAXException {
-        mTempVal += new String(ch, start, length);
-    }
- 
-    public void endElement(String uri, String localName, String qName)
-            throws SAXException {
-        if (qName.equalsIgnoreCase("raw_text")) {
-            mTempText = mTempVal;
+    @Override
+    protected void end(int element, StringBuilder value) {
+        if(null == mTaf) {
+            return;
         }
-        if(qName.equalsIgnoreCase("TAF")) {
-            mText.add(mTempText);
+        switch(element) {
+            case RAW_TEXT:
+                mTaf.rawText = value.toString();
+                break;
+            case STATION_ID:
+                mTaf.stationId = value.toString();
+                break;
+            case ISSUE_TIME:
+                mTaf.time = value.toString();
+                break;
+            case TAF:
+                mListener.onReport(mTaf);
+                mTaf = null;
+                break;
         }
     }
 }
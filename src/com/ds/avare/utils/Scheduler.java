@@ -0,0 +1,391 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ds.avare.utils;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Runs background work of the app on a few threads, in lanes by kind of work,
+ * so number of threads is bounded and one kind of work does not hold up another.
+ * Work with a key is coalesced: while one is waiting, asking again gets the same one,
+ * and work of the same key never runs twice at once.
+ * Made by StorageService, which shuts it down.
+ */
+public class Scheduler {
+
+    /*
+     * Lanes
+     */
+    public static final int IO = 0;
+    public static final int DB = 1;
+    public static final int DECODE = 2;
+    public static final int NETWORK = 3;
+    public static final int WEATHER = 4;
+    public static final int LANES = 5;
+
+    /*
+     * Lower runs first
+     */
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_LOW = 2;
+
+    private static final String NAMES[] = {"IO", "DB", "Decode", "Network", "Weather"};
+    /*
+     * Weather has a thread for each of its files so all parse at once
+     */
+    private static final int THREADS[] = {2, 2, 1, 3, 4};
+    private static final long KEEP_ALIVE = 30;
+
+    private Lane mLanes[];
+    private Handler mHandler;
+    private long mSequence;
+    private volatile boolean mShutdown;
+
+    /**
+     * 
+     * @author zkhan
+     * Work to do in background. done() is called on main thread after run() unless cancelled,
+     * failed() is called instead when run() threw or the work was cancelled.
+     */
+    public static abstract class Task {
+
+        /**
+         * 
+         * @param token check it in long work to stop early
+         */
+        public abstract void run(Token token);
+
+        /**
+         * 
+         */
+        public void done() {
+        }
+
+        /**
+         * 
+         */
+        public void failed() {
+        }
+    }
+
+    /**
+     * 
+     * @author zkhan
+     * Handle on submitted work
+     */
+    public class Token {
+        private volatile boolean mCancelled;
+        private boolean mDone;
+
+        /**
+         * Work not started does not start, work running should stop when it checks
+         */
+        public void cancel() {
+            mCancelled = true;
+        }
+
+        /**
+         * 
+         * @return true if cancelled or scheduler is shut down
+         */
+        public boolean isCancelled() {
+            return mCancelled || mShutdown;
+        }
+
+        /**
+         * 
+         * @return
+         */
+        public boolean isDone() {
+            synchronized(Scheduler.this) {
+                return mDone;
+            }
+        }
+    }
+
+    /**
+     * 
+     * @author zkhan
+     *
+     */
+    private class Job implements Runnable, Comparable<Job> {
+        private Lane mLane;
+        private String mKey;
+        private int mPriority;
+        private long mSequence;
+        private long mQueued;
+        private Task mTask;
+        private Token mToken;
+
+        /**
+         * 
+         */
+        @Override
+        public int compareTo(Job another) {
+            if(mPriority != another.mPriority) {
+                return mPriority < another.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : (mSequence > another.mSequence ? 1 : 0);
+        }
+
+        /**
+         * 
+         */
+        @Override
+        public void run() {
+            long start = System.currentTimeMillis();
+            synchronized(Scheduler.this) {
+                if(null != mKey && mLane.mQueued.get(mKey) == this) {
+                    mLane.mQueued.remove(mKey);
+                }
+                if(mToken.isCancelled()) {
+                    mLane.mCancelled++;
+                    end(this);
+                    report(false);
+                    return;
+                }
+                if(null != mKey) {
+                    mLane.mRunning.add(mKey);
+                }
+                mLane.mWait += start - mQueued;
+            }
+
+            boolean ok = false;
+            try {
+                mTask.run(mToken);
+                ok = true;
+            }
+            catch (Exception e) {
+            }
+            finally {
+                /*
+                 * Even on Error, or the key would hold back its work for good
+                 */
+                synchronized(Scheduler.this) {
+                    mLane.mRun += System.currentTimeMillis() - start;
+                    if(ok) {
+                        mLane.mCompleted++;
+                    }
+                    else {
+                        mLane.mFailed++;
+                    }
+                    if(null != mKey) {
+                        mLane.mRunning.remove(mKey);
+                    }
+                    end(this);
+                }
+                report(ok);
+            }
+        }
+
+        /**
+         * Tell task on main thread how it went
+         * @param ok
+         */
+        private void report(final boolean ok) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if(ok && !mToken.isCancelled()) {
+                        mTask.done();
+                    }
+                    else {
+                        mTask.failed();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 
+     * @author zkhan
+     * Threads for one kind of work, and how it is doing
+     */
+    private class Lane {
+        private String mName;
+        private ThreadPoolExecutor mExecutor;
+        private HashMap<String, Job> mQueued;
+        private HashMap<String, Job> mPending;
+        private HashSet<String> mRunning;
+
+        private long mSubmitted;
+        private long mCoalesced;
+        private long mCancelled;
+        private long mCompleted;
+        private long mFailed;
+        private long mWait;
+        private long mRun;
+        private int mMaxQueue;
+    }
+
+    /**
+     * Make on main thread
+     */
+    public Scheduler() {
+        mHandler = new Handler(Looper.getMainLooper());
+        mSequence = 0;
+        mLanes = new Lane[LANES];
+        for(int lane = 0; lane < LANES; lane++) {
+            final Lane l = new Lane();
+            l.mName = NAMES[lane];
+            l.mQueued = new HashMap<String, Job>();
+            l.mPending = new HashMap<String, Job>();
+            l.mRunning = new HashSet<String>();
+            l.mExecutor = new ThreadPoolExecutor(THREADS[lane], THREADS[lane], KEEP_ALIVE, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                private int mCount = 0;
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r);
+                    t.setName(l.mName + mCount++);
+                    return t;
+                }
+            });
+            l.mExecutor.allowCoreThreadTimeOut(true);
+            mLanes[lane] = l;
+        }
+    }
+
+    /**
+     * 
+     * @param lane like IO
+     * @param key same key work is coalesced and never runs at once, null for none
+     * @param priority like PRIORITY_NORMAL
+     * @param task
+     * @return token of this work, or of the waiting work it was coalesced with
+     */
+    public synchronized Token submit(int lane, String key, int priority, Task task) {
+        Lane l = mLanes[lane];
+        l.mSubmitted++;
+        if(null != key) {
+            Job same = l.mQueued.get(key);
+            if(null == same) {
+                same = l.mPending.get(key);
+            }
+            if(null != same && !same.mToken.mCancelled) {
+                l.mCoalesced++;
+                if(priority < same.mPriority && l.mExecutor.remove(same)) {
+                    /*
+                     * Asked for sooner
+                     */
+                    same.mPriority = priority;
+                    l.mExecutor.execute(same);
+                }
+                return same.mToken;
+            }
+        }
+
+        Job job = new Job();
+        job.mLane = l;
+        job.mKey = key;
+        job.mPriority = priority;
+        job.mSequence = mSequence++;
+        job.mQueued = System.currentTimeMillis();
+        job.mTask = task;
+        job.mToken = new Token();
+
+        if(null != key && l.mRunning.contains(key)) {
+            /*
+             * Goes in when the running one is done
+             */
+            l.mPending.put(key, job);
+            return job.mToken;
+        }
+        queue(job);
+        return job.mToken;
+    }
+
+    /**
+     * 
+     * @param job
+     */
+    private void queue(Job job) {
+        Lane l = job.mLane;
+        if(null != job.mKey) {
+            l.mQueued.put(job.mKey, job);
+        }
+        try {
+            l.mExecutor.execute(job);
+        }
+        catch (Exception e) {
+            /*
+             * Shut down
+             */
+            job.mToken.mCancelled = true;
+            end(job);
+            job.report(false);
+            return;
+        }
+        int size = l.mExecutor.getQueue().size();
+        if(size > l.mMaxQueue) {
+            l.mMaxQueue = size;
+        }
+    }
+
+    /**
+     * Job is over, let waiting one of same key in
+     * @param job
+     */
+    private void end(Job job) {
+        job.mToken.mDone = true;
+        if(null == job.mKey || job.mLane.mRunning.contains(job.mKey)) {
+            return;
+        }
+        Job pending = job.mLane.mPending.remove(job.mKey);
+        if(null != pending) {
+            pending.mQueued = System.currentTimeMillis();
+            queue(pending);
+        }
+    }
+
+    /**
+     * 
+     * @return one line a lane of work done, time waiting and running, and longest queue
+     */
+    public synchronized String[] getStats() {
+        String stats[] = new String[LANES];
+        for(int lane = 0; lane < LANES; lane++) {
+            Lane l = mLanes[lane];
+            long ran = Math.max(1, l.mCompleted + l.mFailed);
+            stats[lane] = String.format(Locale.getDefault(),
+                    "%s %d/%d run %d coal %d canc %d fail wait %dms run %dms q %d/%d",
+                    l.mName, l.mCompleted, l.mSubmitted, l.mCoalesced, l.mCancelled, l.mFailed,
+                    l.mWait / ran, l.mRun / ran, l.mExecutor.getQueue().size(), l.mMaxQueue);
+        }
+        return stats;
+    }
+
+    /**
+     * Stop all lanes, work waiting is dropped and all tokens read cancelled,
+     * so running work stops when it checks, without being interrupted
+     */
+    public void shutdown() {
+        mShutdown = true;
+        for(int lane = 0; lane < LANES; lane++) {
+            mLanes[lane].mExecutor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ds.avare.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.LinkedList;
+import java.util.TimeZone;
+
+import com.ds.avare.shapes.TFRShape;
+
+/**
+ * 
+ * @author zkhan
+ * Reads TFR file a block at a time. File is comma separated: a header like
+ * "TFR:: name Top 3000 ft Low SFC Eff 2013-08-22T15:00:00 Exp 2013-08-23T02:00:00"
+ * followed by latitude, longitude pairs of its shape, then next header and so on.
+ */
+public class TFRParser {
+
+    private static final String HEADER = "TFR:: ";
+    private static final String TOP = "Top";
+    private static final String LOW = "Low";
+    private static final String EFF = "Eff";
+    private static final String EXP = "Exp";
+    private static final String KEYS[] = {HEADER, TOP, LOW, EFF, EXP};
+
+    private static final int BLOCKSIZE = 8192;
+
+    private String mTime;
+    private long mNow;
+    private LinkedList<TFRShape> mShapes;
+    private TFRShape mShape;
+    private double mLat;
+    private boolean mHaveLat;
+
+    /**
+     * 
+     * @param file tfr.txt
+     * @param now TFRs that expired before this are left out
+     * @return shapes, empty if no file
+     */
+    public static LinkedList<TFRShape> parse(File file, long now) {
+        TFRParser parser = new TFRParser();
+        parser.mTime = new Date(file.lastModified()).toString();
+        parser.mNow = now;
+        parser.mShapes = new LinkedList<TFRShape>();
+        parser.mShape = null;
+        parser.mHaveLat = false;
+        if(!file.exists()) {
+            return parser.mShapes;
+        }
+
+        Reader in = null;
+        try {
+            in = new InputStreamReader(new FileInputStream(file));
+            char buf[] = new char[BLOCKSIZE];
+            StringBuilder token = new StringBuilder();
+            int len;
+            while((len = in.read(buf)) >= 0) {
+                for(int i = 0; i < len; i++) {
+                    if(buf[i] == ',') {
+                        parser.token(token);
+                        token.setLength(0);
+                    }
+                    else {
+                        token.append(buf[i]);
+                    }
+                }
+            }
+            parser.token(token);
+        }
+        catch (IOException e) {
+        }
+        finally {
+            if(null != in) {
+                try {
+                    in.close();
+                }
+                catch (IOException e) {
+                }
+            }
+        }
+        parser.end();
+        return parser.mShapes;
+    }
+
+    /**
+     * 
+     * @param token
+     */
+    private void token(StringBuilder token) {
+        if(token.indexOf(HEADER) >= 0) {
+            end();
+            String header = token.toString();
+            mShape = new TFRShape(getLabel(header),
+                    getTime(getField(header, EFF), 0),
+                    getTime(getField(header, EXP), Long.MAX_VALUE),
+                    getAltitude(getField(header, LOW), 0),
+                    getAltitude(getField(header, TOP), Integer.MAX_VALUE));
+            mHaveLat = false;
+            return;
+        }
+
+        /*
+         * If we get bad input from Govt. site, leave out the point 
+         */
+        double val = getNumber(token);
+        if(!mHaveLat) {
+            mLat = val;
+            mHaveLat = true;
+            return;
+        }
+        mHaveLat = false;
+        if(null != mShape && !Double.isNaN(mLat) && !Double.isNaN(val)) {
+            mShape.add(val, mLat);
+        }
+    }
+
+    /**
+     * Done with last shape
+     */
+    private void end() {
+        if(null != mShape && mShape.getNumCoords() > 0 && mShape.getExpires() >= mNow) {
+            mShapes.add(mShape);
+        }
+        mShape = null;
+    }
+
+    /**
+     * Header as shown to the user, one field a line
+     * @param header
+     * @return
+     */
+    private String getLabel(String header) {
+        StringBuilder label = new StringBuilder(header.length() + 64);
+        int len = header.length();
+        for(int i = 0; i < len; ) {
+            if(header.startsWith(HEADER, i)) {
+                label.append("@ ").append(mTime);
+                i += HEADER.length();
+            }
+            else if(header.startsWith(TOP, i)) {
+                label.append("\nTop      ");
+                i += TOP.length();
+            }
+            else if(header.startsWith(LOW, i)) {
+                label.append("\nBottom   ");
+                i += LOW.length();
+            }
+            else if(header.startsWith(EFF, i)) {
+                label.append("\nEffective");
+                i += EFF.length();
+            }
+            else if(header.startsWith(EXP, i)) {
+                label.append("\nExpires  ");
+                i += EXP.length();
+            }
+            else {
+                label.append(header.charAt(i));
+                i++;
+            }
+        }
+        return label.toString();
+    }
+
+    /**
+     * Text after key in header, up to next key
+     * @param header
+     * @param key
+     * @return null if key not in header
+     */
+    private static String getField(String header, String key) {
+        int start = header.indexOf(key);
+        if(start < 0) {
+            return null;
+        }
+        start += key.length();
+        int end = header.length();
+        for(int i = 0; i < KEYS.length; i++) {
+            int at = header.indexOf(KEYS[i], start);
+            if(at >= 0 && at < end) {
+                end = at;
+            }
+        }
+        return header.substring(start, end);
+    }
+
+    /**
+     * 
+     * @param field like 3000 ft MSL, FL180, SFC
+     * @param none when altitude is not given
+     * @return feet
+     */
+    private static int getAltitude(String field, int none) {
+        if(null == field) {
+            return none;
+        }
+        int len = field.length();
+        int i = 0;
+        while(i < len && !Character.isDigit(field.charAt(i))) {
+            i++;
+        }
+        if(i == len) {
+            if(field.contains("SFC") || field.contains("GND")) {
+                return 0;
+            }
+            return none;
+        }
+        int alt = 0;
+        while(i < len && Character.isDigit(field.charAt(i)) && alt < 1000000) {
+            alt = alt * 10 + (field.charAt(i) - '0');
+            i++;
+        }
+        if(field.contains("FL")) {
+            alt *= 100;
+        }
+        return alt;
+    }
+
+    /**
+     * 
+     * @param field UTC time like 2013-08-22T15:00:00, or 08/22/2013 1500
+     * @param none when time is not given
+     * @return ms since epoch
+     */
+    private static long getTime(String field, long none) {
+        if(null == field) {
+            return none;
+        }
+        /*
+         * Numbers in field, and how many digits each has
+         */
+        int num[] = new int[6];
+        int digits[] = new int[6];
+        int count = 0;
+        int len = field.length();
+        for(int i = 0; i < len && count < num.length; ) {
+            if(!Character.isDigit(field.charAt(i))) {
+                i++;
+                continue;
+            }
+            while(i < len && Character.isDigit(field.charAt(i)) && digits[count] < 9) {
+                num[count] = num[count] * 10 + (field.charAt(i) - '0');
+                digits[count]++;
+                i++;
+            }
+            count++;
+        }
+
+        int year;
+        int month;
+        int day;
+        if(count >= 3 && digits[0] == 4) {
+            year = num[0];
+            month = num[1];
+            day = num[2];
+        }
+        else if(count >= 3 && digits[2] == 4) {
+            month = num[0];
+            day = num[1];
+            year = num[2];
+        }
+        else {
+            return none;
+        }
+        int hour = 0;
+        int min = 0;
+        if(count == 4 && digits[3] == 4) {
+            hour = num[3] / 100;
+            min = num[3] % 100;
+        }
+        else if(count >= 5) {
+            hour = num[3];
+            min = num[4];
+        }
+        if(month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || min > 59) {
+            return none;
+        }
+
+        GregorianCalendar time = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
+        time.clear();
+        time.set(year, month - 1, day, hour, min);
+        return time.getTimeInMillis();
+    }
+
+    /**
+     * Parse number like -77.0365 without making a string
+     * @param token
+     * @return NaN if not a number
+     */
+    private static double getNumber(CharSequence token) {
+        int len = token.length();
+        int i = 0;
+        while(i < len && token.charAt(i) <= ' ') {
+            i++;
+        }
+        while(len > i && token.charAt(len - 1) <= ' ') {
+            len--;
+        }
+        boolean neg = false;
+        if(i < len && (token.charAt(i) == '-' || token.charAt(i) == '+')) {
+            neg = token.charAt(i) == '-';
+            i++;
+        }
+        int start = i;
+        long val = 0;
+        long div = 1;
+        boolean dot = false;
+        for(; i < len; i++) {
+            char c = token.charAt(i);
+            if(c == '.' && !dot) {
+                dot = true;
+            }
+            else if(c >= '0' && c <= '9' && val < 100000000000000L) {
+                val = val * 10 + (c - '0');
+                if(dot) {
+                    div *= 10;
+                }
+            }
+            else {
+                break;
+            }
+        }
+        if(i < len || i == start || (dot && i == start + 1)) {
+            /*
+             * Something else, like exponent or too many digits
+             */
+            try {
+                return Double.parseDouble(token.toString());
+            }
+            catch (Exception e) {
+                return Double.NaN;
+            }
+        }
+        double d = (double)val / div;
+        return neg ? -d : d;
+    }
+}
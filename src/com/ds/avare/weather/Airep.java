@@ -32,6 +32,12 @@ public class Airep {
     public String reportType;
     @MapToColumn(column=43)
     public String rawText;    
+
+    /*
+     * Parsed from latitude, longitude once on load
+     */
+    public double lon;
+    public double lat;
 }
 
 
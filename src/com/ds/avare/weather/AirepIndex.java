@@ -0,0 +1,329 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ds.avare.weather;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.ds.avare.storage.Preferences;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * PIREPs in a lat/lon grid, to find ones near a point or along a route.
+ * Candidates are pruned by bounding box, then by flat earth distance,
+ * and only those close are measured on the great circle.
+ */
+public class AirepIndex {
+
+    /*
+     * Degrees per grid cell
+     */
+    private static final double CELL = 2.0;
+
+    /*
+     * Flat earth distance is within this fraction of great circle at PIREP distances
+     */
+    private static final double SLACK = 1.05;
+
+    private Airep mAireps[];
+    private double mLonMin;
+    private double mLatMin;
+    private int mCols;
+    private int mRows;
+    private int mCellStart[];
+    private int mCellItems[];
+
+    /**
+     * Index PIREPs. Ones without a position are left out.
+     * @param aireps with lon, lat parsed
+     */
+    public AirepIndex(List<Airep> aireps) {
+        ArrayList<Airep> valid = new ArrayList<Airep>(aireps.size());
+        double lonMin = 180;
+        double lonMax = -180;
+        double latMin = 90;
+        double latMax = -90;
+        for(Airep a : aireps) {
+            if(Double.isNaN(a.lon) || Double.isNaN(a.lat)) {
+                continue;
+            }
+            valid.add(a);
+            lonMin = Math.min(lonMin, a.lon);
+            lonMax = Math.max(lonMax, a.lon);
+            latMin = Math.min(latMin, a.lat);
+            latMax = Math.max(latMax, a.lat);
+        }
+        mAireps = valid.toArray(new Airep[valid.size()]);
+        if(0 == mAireps.length) {
+            mCols = mRows = 0;
+            return;
+        }
+        mLonMin = lonMin;
+        mLatMin = latMin;
+        mCols = (int)((lonMax - lonMin) / CELL) + 1;
+        mRows = (int)((latMax - latMin) / CELL) + 1;
+
+        int cells = mCols * mRows;
+        mCellStart = new int[cells + 1];
+        for(int i = 0; i < mAireps.length; i++) {
+            mCellStart[getCell(mAireps[i]) + 1]++;
+        }
+        for(int c = 0; c < cells; c++) {
+            mCellStart[c + 1] += mCellStart[c];
+        }
+        mCellItems = new int[mAireps.length];
+        int fill[] = new int[cells];
+        System.arraycopy(mCellStart, 0, fill, 0, cells);
+        for(int i = 0; i < mAireps.length; i++) {
+            mCellItems[fill[getCell(mAireps[i])]++] = i;
+        }
+    }
+
+    /**
+     * 
+     * @param a
+     * @return
+     */
+    private int getCell(Airep a) {
+        return getRow(a.lat) * mCols + getCol(a.lon);
+    }
+
+    /**
+     * 
+     * @param lon
+     * @return
+     */
+    private int getCol(double lon) {
+        return Math.max(0, Math.min(mCols - 1, (int)Math.floor((lon - mLonMin) / CELL)));
+    }
+
+    /**
+     * 
+     * @param lat
+     * @return
+     */
+    private int getRow(double lat) {
+        return Math.max(0, Math.min(mRows - 1, (int)Math.floor((lat - mLatMin) / CELL)));
+    }
+
+    /**
+     * Great circle distance
+     * @return distance in units of Preferences.earthRadiusConversion
+     */
+    private static double haversine(double lon1, double lat1, double lon2, double lat2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return Preferences.earthRadiusConversion * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    /**
+     * Degrees of latitude in a distance
+     * @param distance
+     * @return
+     */
+    private static double toLatitude(double distance) {
+        return Math.toDegrees(distance / Preferences.earthRadiusConversion);
+    }
+
+    /**
+     * Degrees of longitude in a distance at a latitude
+     * @param distance
+     * @param lat
+     * @return
+     */
+    private static double toLongitude(double distance, double lat) {
+        double cos = Math.max(0.01, Math.cos(Math.toRadians(Math.min(89, Math.abs(lat)))));
+        return toLatitude(distance) / cos;
+    }
+
+    /**
+     * Visit PIREPs in a lon/lat box, each once
+     */
+    private void findInBox(double lonMin, double latMin, double lonMax, double latMax, boolean seen[], List<Integer> out) {
+        if(0 == mCols) {
+            return;
+        }
+        int col0 = getCol(lonMin);
+        int col1 = getCol(lonMax);
+        int row0 = getRow(latMin);
+        int row1 = getRow(latMax);
+        for(int row = row0; row <= row1; row++) {
+            for(int col = col0; col <= col1; col++) {
+                int c = row * mCols + col;
+                for(int k = mCellStart[c]; k < mCellStart[c + 1]; k++) {
+                    int i = mCellItems[k];
+                    Airep a = mAireps[i];
+                    if(seen[i] || a.lon < lonMin || a.lon > lonMax || a.lat < latMin || a.lat > latMax) {
+                        continue;
+                    }
+                    seen[i] = true;
+                    out.add(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * PIREPs within distance of a point
+     * @param lon
+     * @param lat
+     * @param distance in units of Preferences.earthRadiusConversion
+     * @return sorted closest first
+     */
+    public List<Airep> find(double lon, double lat, double distance) {
+        double dlat = toLatitude(distance);
+        double dlon = toLongitude(distance, Math.abs(lat) + dlat);
+        ArrayList<Integer> candidates = new ArrayList<Integer>();
+        findInBox(lon - dlon, lat - dlat, lon + dlon, lat + dlat, new boolean[mAireps.length], candidates);
+
+        double deg = toLatitude(1);
+        ArrayList<Found> found = new ArrayList<Found>();
+        for(int i : candidates) {
+            Airep a = mAireps[i];
+            /*
+             * Flat earth first
+             */
+            double x = (a.lon - lon) * Math.cos(Math.toRadians((a.lat + lat) / 2));
+            double y = a.lat - lat;
+            if(Math.sqrt(x * x + y * y) / deg > distance * SLACK) {
+                continue;
+            }
+            double d = haversine(lon, lat, a.lon, a.lat);
+            if(d < distance) {
+                found.add(new Found(a, d));
+            }
+        }
+        return sort(found);
+    }
+
+    /**
+     * PIREPs within distance of a route
+     * @param lon of route points
+     * @param lat of route points
+     * @param distance in units of Preferences.earthRadiusConversion
+     * @return sorted closest to route first
+     */
+    public List<Airep> findOnRoute(double lon[], double lat[], double distance) {
+        ArrayList<Found> found = new ArrayList<Found>();
+        if(lon.length < 1) {
+            return sort(found);
+        }
+        if(lon.length == 1) {
+            return find(lon[0], lat[0], distance);
+        }
+
+        /*
+         * Prune by box of each leg
+         */
+        double dlat = toLatitude(distance);
+        boolean seen[] = new boolean[mAireps.length];
+        ArrayList<Integer> candidates = new ArrayList<Integer>();
+        for(int leg = 0; leg < lon.length - 1; leg++) {
+            double dlon = toLongitude(distance, Math.max(Math.abs(lat[leg]), Math.abs(lat[leg + 1])) + dlat);
+            findInBox(Math.min(lon[leg], lon[leg + 1]) - dlon, Math.min(lat[leg], lat[leg + 1]) - dlat,
+                    Math.max(lon[leg], lon[leg + 1]) + dlon, Math.max(lat[leg], lat[leg + 1]) + dlat,
+                    seen, candidates);
+        }
+
+        double deg = toLatitude(1);
+        for(int i : candidates) {
+            Airep a = mAireps[i];
+            double cos = Math.cos(Math.toRadians(a.lat));
+            double best = Double.MAX_VALUE;
+            double bestLon = 0;
+            double bestLat = 0;
+            for(int leg = 0; leg < lon.length - 1; leg++) {
+                /*
+                 * Closest point on leg, flat earth around the PIREP
+                 */
+                double ax = (lon[leg] - a.lon) * cos;
+                double ay = lat[leg] - a.lat;
+                double bx = (lon[leg + 1] - a.lon) * cos;
+                double by = lat[leg + 1] - a.lat;
+                double dx = bx - ax;
+                double dy = by - ay;
+                double len = dx * dx + dy * dy;
+                double t = 0;
+                if(len > 0) {
+                    t = Math.max(0, Math.min(1, -(ax * dx + ay * dy) / len));
+                }
+                double px = ax + t * dx;
+                double py = ay + t * dy;
+                double d = Math.sqrt(px * px + py * py);
+                if(d < best) {
+                    best = d;
+                    bestLon = lon[leg] + t * (lon[leg + 1] - lon[leg]);
+                    bestLat = lat[leg] + t * (lat[leg + 1] - lat[leg]);
+                }
+            }
+            if(best / deg > distance * SLACK) {
+                continue;
+            }
+            double d = haversine(bestLon, bestLat, a.lon, a.lat);
+            if(d < distance) {
+                found.add(new Found(a, d));
+            }
+        }
+        return sort(found);
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public int size() {
+        return mAireps.length;
+    }
+
+    /**
+     * 
+     * @param found
+     * @return
+     */
+    private static List<Airep> sort(ArrayList<Found> found) {
+        Collections.sort(found, new Comparator<Found>() {
+            @Override
+            public int compare(Found a, Found b) {
+                return Double.compare(a.distance, b.distance);
+            }
+        });
+        List<Airep> l = new ArrayList<Airep>(found.size());
+        for(Found f : found) {
+            l.add(f.airep);
+        }
+        return l;
+    }
+
+    /**
+     * 
+     * @author zkhan
+     *
+     */
+    private static class Found {
+        Airep airep;
+        double distance;
+
+        Found(Airep a, double d) {
+            airep = a;
+            distance = d;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ds.avare.weather;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Reads a CSV file row by row, making strings only of columns asked for.
+ * Comma separated, double quote quoted, lines starting with # and empty lines skipped.
+ */
+public class CsvTokenizer {
+
+    private static final int BLOCKSIZE = 65536;
+    private static final int EOF = -1;
+
+    private Reader mReader;
+    private char mBuffer[];
+    private int mPos;
+    private int mLen;
+    private boolean mWanted[];
+    private String mFields[];
+    private StringBuilder mField;
+
+    /**
+     * 
+     * @param reader
+     * @param columns that will be read with get()
+     */
+    public CsvTokenizer(Reader reader, int columns[]) {
+        mReader = reader;
+        mBuffer = new char[BLOCKSIZE];
+        mPos = 0;
+        mLen = 0;
+        int max = 0;
+        for(int i = 0; i < columns.length; i++) {
+            max = Math.max(max, columns[i]);
+        }
+        mWanted = new boolean[max + 1];
+        for(int i = 0; i < columns.length; i++) {
+            mWanted[columns[i]] = true;
+        }
+        mFields = new String[max + 1];
+        mField = new StringBuilder();
+    }
+
+    /**
+     * 
+     * @return next char without taking it
+     * @throws IOException
+     */
+    private int peek() throws IOException {
+        if(mPos == mLen) {
+            mLen = mReader.read(mBuffer, 0, mBuffer.length);
+            mPos = 0;
+            if(mLen <= 0) {
+                mLen = 0;
+                return EOF;
+            }
+        }
+        return mBuffer[mPos];
+    }
+
+    /**
+     * Skip to after end of line
+     * @throws IOException
+     */
+    private void skipLine() throws IOException {
+        int c;
+        while((c = peek()) != EOF) {
+            mPos++;
+            if(c == '\n') {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read next row
+     * @return false at end of file
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+
+        /*
+         * Skip empty and comment lines
+         */
+        while(true) {
+            int c = peek();
+            if(c == EOF) {
+                return false;
+            }
+            if(c == '\n' || c == '\r') {
+                mPos++;
+                continue;
+            }
+            if(c == '#') {
+                skipLine();
+                continue;
+            }
+            break;
+        }
+
+        /*
+         * Columns missing from short rows read as empty
+         */
+        for(int i = 0; i < mFields.length; i++) {
+            mFields[i] = "";
+        }
+
+        int column = 0;
+        while(true) {
+            boolean wanted = column < mWanted.length && mWanted[column];
+            mField.setLength(0);
+            boolean quoted = false;
+            int c;
+            while(true) {
+                c = peek();
+                if(c == EOF) {
+                    break;
+                }
+                if(quoted) {
+                    mPos++;
+                    if(c == '"') {
+                        if(peek() == '"') {
+                            /*
+                             * Escaped quote
+                             */
+                            mPos++;
+                        }
+                        else {
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                }
+                else if(c == ',' || c == '\n' || c == '\r') {
+                    break;
+                }
+                else {
+                    mPos++;
+                    if(c == '"') {
+                        quoted = true;
+                        continue;
+                    }
+                }
+                if(wanted) {
+                    mField.append((char)c);
+                }
+            }
+            if(wanted) {
+                mFields[column] = mField.toString();
+            }
+            if(c == ',') {
+                mPos++;
+                column++;
+                continue;
+            }
+
+            /*
+             * End of row
+             */
+            if(c == '\r') {
+                mPos++;
+                if(peek() == '\n') {
+                    mPos++;
+                }
+            }
+            else if(c == '\n') {
+                mPos++;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 
+     * @param column one of columns given at construction
+     * @return
+     */
+    public String get(int column) {
+        return mFields[column];
+    }
+
+    /**
+     * 
+     */
+    public void close() {
+        try {
+            mReader.close();
+        }
+        catch (IOException e) {
+        }
+    }
+}
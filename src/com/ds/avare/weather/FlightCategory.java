@@ -0,0 +1,173 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+
+package com.ds.avare.weather;
+
+import java.util.HashMap;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Flight category of a METAR as an int, from ADDS when it has one, otherwise computed
+ * from ceiling and visibility of the decoded report. Cached per station and observation time.
+ */
+public class FlightCategory {
+
+    public static final int UNKNOWN = -1;
+    public static final int VFR = 0;
+    public static final int MVFR = 1;
+    public static final int IFR = 2;
+    public static final int LIFR = 3;
+
+    /*
+     * More than all METAR stations
+     */
+    private static final int CACHE_MAX = 8192;
+
+    private static HashMap<String, Integer> mCache = new HashMap<String, Integer>();
+
+    /**
+     * Worst of ceiling and visibility category
+     * @param ceiling feet AGL, -1 if none
+     * @param visibility statute miles, NaN if not reported
+     * @return
+     */
+    public static int compute(int ceiling, float visibility) {
+        if(ceiling < 0 && Float.isNaN(visibility)) {
+            return UNKNOWN;
+        }
+        int c = VFR;
+        if(ceiling >= 0) {
+            if(ceiling < 500) {
+                c = LIFR;
+            }
+            else if(ceiling < 1000) {
+                c = IFR;
+            }
+            else if(ceiling <= 3000) {
+                c = MVFR;
+            }
+        }
+        int v = VFR;
+        if(!Float.isNaN(visibility)) {
+            if(visibility < 1) {
+                v = LIFR;
+            }
+            else if(visibility < 3) {
+                v = IFR;
+            }
+            else if(visibility <= 5) {
+                v = MVFR;
+            }
+        }
+        return Math.max(c, v);
+    }
+
+    /**
+     * 
+     * @param report
+     * @return
+     */
+    public static int compute(WeatherReport report) {
+        WeatherReport.Period base = report.getBase();
+        return compute(base.ceiling, base.visibility);
+    }
+
+    /**
+     * 
+     * @param category like VFR, from ADDS
+     * @return
+     */
+    public static int parse(String category) {
+        if(null == category) {
+            return UNKNOWN;
+        }
+        if(category.equals("VFR")) {
+            return VFR;
+        }
+        else if(category.equals("MVFR")) {
+            return MVFR;
+        }
+        else if(category.equals("IFR")) {
+            return IFR;
+        }
+        else if(category.equals("LIFR")) {
+            return LIFR;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * 
+     * @param station
+     * @param time observation time
+     * @param category from ADDS, can be null
+     * @param rawText METAR to decode when category is not known
+     * @return
+     */
+    public static int get(String station, String time, String category, String rawText) {
+        String key = station + " " + time;
+        Integer cached = lookup(key);
+        if(null != cached) {
+            return cached;
+        }
+
+        int cat = parse(category);
+        if(UNKNOWN == cat && null != rawText) {
+            cat = compute(WeatherDecoder.decode(rawText, false));
+        }
+        store(key, cat);
+        return cat;
+    }
+
+    /**
+     * 
+     * @param metar
+     * @return
+     */
+    public static int get(Metar metar) {
+        return get(metar.stationId, metar.time, metar.flightCategory, metar.rawText);
+    }
+
+    /**
+     * 
+     * @param category like VFR
+     * @return name as ADDS has it, null if unknown
+     */
+    public static String getName(int category) {
+        switch(category) {
+            case VFR:
+                return "VFR";
+            case MVFR:
+                return "MVFR";
+            case IFR:
+                return "IFR";
+            case LIFR:
+                return "LIFR";
+        }
+        return null;
+    }
+
+    private static synchronized Integer lookup(String key) {
+        return mCache.get(key);
+    }
+
+    private static synchronized void store(String key, int cat) {
+        if(mCache.size() >= CACHE_MAX) {
+            mCache.clear();
+        }
+        mCache.put(key, cat);
+    }
+}
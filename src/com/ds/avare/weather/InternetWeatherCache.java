@@ -12,29 +12,28 @@ Redistribution and use in source and binary forms, with or without modification,
 
 package com.ds.avare.weather;
 
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.Reader;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Observable;
 
 import android.content.Context;
 
-import com.ds.avare.position.Projection;
 import com.ds.avare.shapes.MetShape;
+import com.ds.avare.shapes.ShapeIndex;
 import com.ds.avare.storage.Preferences;
-import com.googlecode.jcsv.CSVStrategy;
-import com.googlecode.jcsv.annotations.internal.ValueProcessorProvider;
-import com.googlecode.jcsv.reader.CSVReader;
-import com.googlecode.jcsv.reader.internal.AnnotationEntryParser;
-import com.googlecode.jcsv.reader.internal.CSVReaderBuilder;
+import com.ds.avare.utils.Scheduler;
 
 /**
  * 
  * @author zkhan
  *
  */
-public class InternetWeatherCache {
+public class InternetWeatherCache extends Observable {
 
     private static final String AIREP_FILE = "/aircraftreports.cache.csv.stripped";
     private static final String METAR_FILE = "/metars.cache.csv.stripped";
@@ -44,17 +43,60 @@ public class InternetWeatherCache {
     private static final int AIREP_DISTANCE = 200;
     
     private List<Airep> mAirep;
+    private AirepIndex mAirepIndex;
     private List<Metar> mMetar;
     private List<Taf> mTaf;
+    private HashMap<String, Metar> mMetarIndex;
+    private HashMap<String, Taf> mTafIndex;
+
+    /*
+     * METARs from ADS-B, for stations with no METAR in the downloaded file
+     */
+    private HashMap<String, Metar> mAdsbMetarIndex = new HashMap<String, Metar>();
     private List<AirSigMet> mAirSig;
+    private ShapeIndex<AirSigMet> mAirSigIndex;
 
-    /**
-     * Task that would draw tiles on bitmap.
+    /*
+     * Last read of each file, to find what changed on next read
+     */
+    private WeatherSnapshot<Metar> mMetarSnapshot = new WeatherSnapshot<Metar>();
+    private WeatherSnapshot<Taf> mTafSnapshot = new WeatherSnapshot<Taf>();
+    private WeatherSnapshot<Airep> mAirepSnapshot = new WeatherSnapshot<Airep>();
+    private WeatherSnapshot<AirSigMet> mAirSigSnapshot = new WeatherSnapshot<AirSigMet>();
+    private int mVersion = 0;
+
+    /*
+     * Files read in parallel on weather lane of scheduler
+     */
+    private static final int FILE_MET = 0;
+    private static final int FILE_AIREP = 1;
+    private static final int FILE_METAR = 2;
+    private static final int FILE_TAF = 3;
+    private static final int FILES = 4;
+    private static final String FILE_NAMES[] = {MET_FILE, AIREP_FILE, METAR_FILE, TAF_FILE};
+
+    /*
+     * Parsed weather is saved next to its source with this extension
+     */
+    private static final String SNAPSHOT = ".snapshot";
+
+    /*
+     * Size and time of each source when last read
      */
-    private WeatherTask                mWeatherTask; 
-    private Thread                     mWeatherThread;
+    private long mSourceSize[] = {-1, -1, -1, -1};
+    private long mSourceTime[] = {-1, -1, -1, -1};
+
+    private Scheduler                  mScheduler;
     private String                     mRoot;
     
+    /**
+     * 
+     * @param scheduler
+     */
+    public InternetWeatherCache(Scheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
     /**
      * 
      * @param root
@@ -63,16 +105,14 @@ public class InternetWeatherCache {
         
         /*
          * Do weather parsing in background. It takes a long time.
+         * A file already being read is read once more after, which finds it unchanged if it is.
          */
         mRoot = (new Preferences(ctx)).mapsFolder();
-        if(mWeatherThread != null) {
-            if(mWeatherThread.isAlive()) {
-                return;
-            }
+        for(int file = 0; file < FILES; file++) {
+            WeatherTask task = new WeatherTask();
+            task.file = file;
+            mScheduler.submit(Scheduler.WEATHER, "weather" + file, Scheduler.PRIORITY_NORMAL, task);
         }
-        mWeatherTask =  new WeatherTask();
-        mWeatherThread = new Thread(mWeatherTask);
-        mWeatherThread.start();
     }
     
     /**
@@ -80,32 +120,26 @@ public class InternetWeatherCache {
      * @return
      */
     public List<Airep> getAirep(double lon, double lat) {
-        List<Airep> l = new ArrayList<Airep>();
-
-        /*
-         * Limit airep based of distance from this point
-         */
-        double lon2;
-        double lat2;
-        if(null == mAirep) {
+        AirepIndex index = mAirepIndex;
+        if(null == index) {
             return null;
         }
-        for(int m = 0; m < mAirep.size(); m++) {
-            Airep mm = mAirep.get(m);
-            try {
-                lon2 = Double.parseDouble(mm.longitude);
-                lat2 = Double.parseDouble(mm.latitude);
-            }
-            catch (Exception e) {
-                continue;
-            }
-        
-            Projection p = new Projection(lon, lat, lon2, lat2);
-            if(p.getDistance() < AIREP_DISTANCE) {
-                l.add(mm);
-            }
+        return index.find(lon, lat, AIREP_DISTANCE);
+    }
+
+    /**
+     * PIREPs along a route
+     * @param lon of route points
+     * @param lat of route points
+     * @param distance from route
+     * @return sorted closest to route first
+     */
+    public List<Airep> getAirepOnRoute(double lon[], double lat[], double distance) {
+        AirepIndex index = mAirepIndex;
+        if(null == index) {
+            return null;
         }
-        return l;
+        return index.findOnRoute(lon, lat, distance);
     }
 
     /**
@@ -116,21 +150,76 @@ public class InternetWeatherCache {
         return mAirSig;
     }
 
+    /**
+     * Index of AIR/SIGMET shapes for finding ones on screen or touched
+     * @return
+     */
+    public ShapeIndex<AirSigMet> getAirSigMetIndex() {
+        return mAirSigIndex;
+    }
+
     /**
      * 
      * @return
      */
     public Metar getMetar(String station) {
-        if(null == mMetar || null == station) {
+        if(null == station) {
             return null;
         }
-        for(int m = 0; m < mMetar.size(); m++) {
-            Metar mm = mMetar.get(m);
-            if(mm.stationId.equals(station) || mm.stationId.equals("K" + station)) {
-                return mm;
+        String id = station.toUpperCase(Locale.US);
+        HashMap<String, Metar> index = mMetarIndex;
+        Metar m = (null == index) ? null : index.get(id);
+        if(null == m) {
+            m = getAdsbMetar(id);
+        }
+        return m;
+    }
+
+    /**
+     * METAR received over ADS-B, which comes with no flight category
+     * @param rawText like METAR KBOS 121854Z ...
+     */
+    public void putAdsbMetar(String rawText) {
+        WeatherReport report = WeatherDecoder.decode(rawText, false);
+        if(null == report.station) {
+            return;
+        }
+        Metar m = new Metar();
+        m.rawText = rawText;
+        m.stationId = report.station;
+        m.time = report.time;
+        m.flightCategory = FlightCategory.getName(FlightCategory.compute(report));
+        synchronized(mAdsbMetarIndex) {
+            mAdsbMetarIndex.put(m.stationId, m);
+            String faa = getFaaId(m.stationId);
+            if(null != faa) {
+                mAdsbMetarIndex.put(faa, m);
             }
         }
-        return null;
+    }
+
+    /**
+     * 
+     * @param id upper case
+     * @return
+     */
+    private Metar getAdsbMetar(String id) {
+        synchronized(mAdsbMetarIndex) {
+            return mAdsbMetarIndex.get(id);
+        }
+    }
+
+    /**
+     * METARs of many stations at once
+     * @param stations ICAO or FAA identifiers
+     * @return METAR for each station, null where there is none
+     */
+    public Metar[] getMetars(String stations[]) {
+        Metar metars[] = new Metar[stations.length];
+        for(int i = 0; i < stations.length; i++) {
+            metars[i] = getMetar(stations[i]);
+        }
+        return metars;
     }
 
     /**
@@ -138,95 +227,688 @@ public class InternetWeatherCache {
      * @return
      */
     public Taf getTaf(String station) {
-        if(null == mTaf || null == station) {
+        HashMap<String, Taf> index = mTafIndex;
+        if(null == index || null == station) {
             return null;
         }
-        for(int m = 0; m < mTaf.size(); m++) {
-            Taf mm = mTaf.get(m);
-            if(mm.stationId.equals(station) || mm.stationId.equals("K" + station)) {
-                return mm;
+        return index.get(station.toUpperCase(Locale.US));
+    }
+
+    /**
+     * TAFs of many stations at once
+     * @param stations ICAO or FAA identifiers
+     * @return TAF for each station, null where there is none
+     */
+    public Taf[] getTafs(String stations[]) {
+        Taf tafs[] = new Taf[stations.length];
+        HashMap<String, Taf> index = mTafIndex;
+        if(null == index) {
+            return tafs;
+        }
+        for(int i = 0; i < stations.length; i++) {
+            if(null != stations[i]) {
+                tafs[i] = index.get(stations[i].toUpperCase(Locale.US));
             }
         }
+        return tafs;
+    }
+
+    /**
+     * Station identifier as looked up. Continental US ICAO identifiers (KXXX)
+     * are also found by their FAA identifier (XXX).
+     * @param id
+     * @return FAA identifier, or null if same as ICAO
+     */
+    private static String getFaaId(String id) {
+        if(id.length() == 4 && id.charAt(0) == 'K') {
+            return id.substring(1);
+        }
         return null;
     }
 
-    private class WeatherTask implements Runnable {
+    /**
+     * 
+     * @param file
+     * @param columns
+     * @return
+     * @throws IOException
+     */
+    private CsvTokenizer open(String file, int columns[]) throws IOException {
+        return new CsvTokenizer(new InputStreamReader(new FileInputStream(mRoot + file)), columns);
+    }
 
-        /* (non-Javadoc)
-         * @see android.os.AsyncTask#doInBackground(Params[])
-         */
-        @Override
-        public void run() {
-            try {
-                
+    /**
+     * AIR/SIG MET from CSV, and shapes of them
+     * @return
+     * @throws IOException
+     */
+    private WeatherSnapshot<AirSigMet> parseAirSigMet() throws IOException {
+        CsvTokenizer csv = open(MET_FILE, new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        WeatherSnapshot<AirSigMet> snapshot = new WeatherSnapshot<AirSigMet>();
+        try {
+            while(csv.next()) {
                 /*
-                 * Read the CSV
+                 * Same report over same area and time keeps its shape
                  */
+                String key = csv.get(0);
+                String stamp = csv.get(1) + " " + csv.get(2) + " " + csv.get(3);
+                AirSigMet asm = mAirSigSnapshot.get(key, stamp);
+                if(null != asm) {
+                    snapshot.put(key, stamp, asm);
+                    continue;
+                }
+                asm = new AirSigMet();
+                asm.rawText = csv.get(0);
+                asm.timeFrom = csv.get(1);
+                asm.timeTo = csv.get(2);
+                asm.points = csv.get(3);
+                asm.minFt = csv.get(4);
+                asm.maxFt = csv.get(5);
+                asm.movementDeg = csv.get(6);
+                asm.movementKt = csv.get(7);
+                asm.hazard = csv.get(8);
+                asm.severity = csv.get(9);
+                asm.reportType = csv.get(10);
 
                 /*
-                 * AIR/SIG MET
-                 */
-                Reader csvFile = new InputStreamReader(new FileInputStream(mRoot + MET_FILE));
-                
-                ValueProcessorProvider vpp = new ValueProcessorProvider();
-                CSVReader<AirSigMet> asmReader = new CSVReaderBuilder<AirSigMet>(csvFile).strategy(CSVStrategy.UK_DEFAULT).entryParser(
-                                new AnnotationEntryParser<AirSigMet>(AirSigMet.class, vpp)).build();
-                mAirSig = asmReader.readAll();
-                
-                /*
-                 * Convert AIRMET/SIGMETS to shapes compatible coordinates
+                 * Convert AIRMET/SIGMETS to shapes compatible coordinates.
+                 * Points are lon:lat;lon:lat;...
                  */
-                for(int i = 0; i < mAirSig.size(); i++) {
-                    AirSigMet asm = mAirSig.get(i);
-                    asm.shape = new MetShape(
-                            asm.timeFrom + "-" + asm.timeTo + "\n" +
-                            asm.hazard + "\n" +
-                            asm.reportType + "\n" +
-                            asm.severity + "\n" +
-                            asm.rawText);
-                    String tokens[] = asm.points.split("[;]");
-                    for(int j = 0; j < tokens.length; j++) {
-                        String point[] = tokens[j].split("[:]");
-                        double lon = Double.parseDouble(point[0]);
-                        double lat = Double.parseDouble(point[1]);
-                        if(0 == lat || 0 == lon) {
-                            continue;
+                asm.shape = newShape(asm);
+                String points = asm.points;
+                int start = 0;
+                while(start < points.length()) {
+                    int end = points.indexOf(';', start);
+                    if(end < 0) {
+                        end = points.length();
+                    }
+                    int colon = points.indexOf(':', start);
+                    if(colon > start && colon < end) {
+                        try {
+                            double lon = Double.parseDouble(points.substring(start, colon));
+                            double lat = Double.parseDouble(points.substring(colon + 1, end));
+                            if(0 != lat && 0 != lon) {
+                                asm.shape.add(lon, lat);
+                            }
+                        }
+                        catch (NumberFormatException e) {
                         }
-                        asm.shape.add(lon, lat);
                     }
+                    start = end + 1;
+                }
+                snapshot.put(key, stamp, asm);
+            }
+        }
+        finally {
+            csv.close();
+        }
+        return snapshot;
+    }
+
+    /**
+     * 
+     * @param asm
+     * @return shape of AIR/SIGMET, with no points
+     */
+    private static MetShape newShape(AirSigMet asm) {
+        return new MetShape(
+                asm.timeFrom + "-" + asm.timeTo + "\n" +
+                asm.hazard + "\n" +
+                asm.reportType + "\n" +
+                asm.severity + "\n" +
+                asm.rawText);
+    }
+
+    /**
+     * AIR/SIGMETs with their shape points from a snapshot
+     * @param in
+     * @return null if none or bad
+     */
+    private static WeatherSnapshot<AirSigMet> loadAirSigMet(WeatherSnapshotFile in) {
+        if(null == in) {
+            return null;
+        }
+        WeatherSnapshot<AirSigMet> snapshot = new WeatherSnapshot<AirSigMet>();
+        try {
+            int count = in.getInt();
+            for(int i = 0; i < count; i++) {
+                AirSigMet asm = new AirSigMet();
+                asm.rawText = in.getString();
+                asm.timeFrom = in.getString();
+                asm.timeTo = in.getString();
+                asm.points = in.getString();
+                asm.minFt = in.getString();
+                asm.maxFt = in.getString();
+                asm.movementDeg = in.getString();
+                asm.movementKt = in.getString();
+                asm.hazard = in.getString();
+                asm.severity = in.getString();
+                asm.reportType = in.getString();
+                asm.shape = newShape(asm);
+                int num = in.getInt();
+                for(int p = 0; p < num; p++) {
+                    double lon = in.getDouble();
+                    double lat = in.getDouble();
+                    asm.shape.add(lon, lat);
+                }
+                snapshot.put(asm.rawText, asm.timeFrom + " " + asm.timeTo + " " + asm.points, asm);
+            }
+        }
+        catch (Exception e) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * 
+     * @param file
+     * @param size
+     * @param time
+     * @param list
+     */
+    private static void saveAirSigMet(File file, long size, long time, List<AirSigMet> list) {
+        WeatherSnapshotFile.Writer out = null;
+        try {
+            out = new WeatherSnapshotFile.Writer(file, WeatherChange.AIRSIGMET, size, time);
+            out.putInt(list.size());
+            for(AirSigMet asm : list) {
+                out.putString(asm.rawText);
+                out.putString(asm.timeFrom);
+                out.putString(asm.timeTo);
+                out.putString(asm.points);
+                out.putString(asm.minFt);
+                out.putString(asm.maxFt);
+                out.putString(asm.movementDeg);
+                out.putString(asm.movementKt);
+                out.putString(asm.hazard);
+                out.putString(asm.severity);
+                out.putString(asm.reportType);
+                int num = asm.shape.getNumCoords();
+                out.putInt(num);
+                for(int p = 0; p < num; p++) {
+                    out.putDouble(asm.shape.getLongitude(p));
+                    out.putDouble(asm.shape.getLatitude(p));
+                }
+            }
+            out.finish();
+        }
+        catch (IOException e) {
+            if(null != out) {
+                out.abort();
+            }
+        }
+    }
+
+    /**
+     * AIR/SIG MET, and shapes of them. From the snapshot when it was made from this source, else from CSV.
+     * @param size of source
+     * @param time of source
+     * @throws IOException
+     */
+    private void readAirSigMet(long size, long time) throws IOException {
+        File file = new File(mRoot + MET_FILE + SNAPSHOT);
+        WeatherSnapshot<AirSigMet> snapshot = null;
+        if(0 == mAirSigSnapshot.size()) {
+            snapshot = loadAirSigMet(WeatherSnapshotFile.open(file, WeatherChange.AIRSIGMET, size, time));
+        }
+        if(null == snapshot) {
+            snapshot = parseAirSigMet();
+            saveAirSigMet(file, size, time, snapshot.getList());
+        }
+        WeatherChange change = snapshot.diff(mAirSigSnapshot, WeatherChange.AIRSIGMET);
+        if(change.isEmpty()) {
+            return;
+        }
+        List<AirSigMet> airSig = snapshot.getList();
+        ShapeIndex<AirSigMet> airSigIndex = new ShapeIndex<AirSigMet>();
+        for(AirSigMet asm : airSig) {
+            airSigIndex.add(asm, asm.shape);
+        }
+        airSigIndex.build();
+        mAirSigIndex = airSigIndex;
+        mAirSig = airSig;
+        mAirSigSnapshot = snapshot;
+        changed(change);
+    }
+
+    /**
+     * AIREP from CSV
+     * @return
+     * @throws IOException
+     */
+    private WeatherSnapshot<Airep> parseAirep() throws IOException {
+        CsvTokenizer csv = open(AIREP_FILE, new int[] {1, 9, 10, 42, 43});
+        WeatherSnapshot<Airep> snapshot = new WeatherSnapshot<Airep>();
+        try {
+            while(csv.next()) {
+                String key = csv.get(1) + " " + csv.get(9) + " " + csv.get(10);
+                String stamp = csv.get(43);
+                Airep a = mAirepSnapshot.get(key, stamp);
+                if(null != a) {
+                    snapshot.put(key, stamp, a);
+                    continue;
                 }
+                a = new Airep();
+                a.time = csv.get(1);
+                a.latitude = csv.get(9);
+                a.longitude = csv.get(10);
+                a.reportType = csv.get(42);
+                a.rawText = csv.get(43);
 
                 /*
-                 * AIREP
+                 * Parse positions once
                  */
-                csvFile = new InputStreamReader(new FileInputStream(mRoot + AIREP_FILE));
-            
-                vpp = new ValueProcessorProvider();
-                CSVReader<Airep> airepReader = new CSVReaderBuilder<Airep>(csvFile).strategy(CSVStrategy.UK_DEFAULT).entryParser(
-                                new AnnotationEntryParser<Airep>(Airep.class, vpp)).build();
-                mAirep = airepReader.readAll();
-                
-                
+                try {
+                    a.lon = Double.parseDouble(a.longitude);
+                    a.lat = Double.parseDouble(a.latitude);
+                }
+                catch (NumberFormatException e) {
+                    a.lon = Double.NaN;
+                    a.lat = Double.NaN;
+                }
+                snapshot.put(key, stamp, a);
+            }
+        }
+        finally {
+            csv.close();
+        }
+        return snapshot;
+    }
+
+    /**
+     * AIREP from a snapshot
+     * @param in
+     * @return null if none or bad
+     */
+    private static WeatherSnapshot<Airep> loadAirep(WeatherSnapshotFile in) {
+        if(null == in) {
+            return null;
+        }
+        WeatherSnapshot<Airep> snapshot = new WeatherSnapshot<Airep>();
+        try {
+            int count = in.getInt();
+            for(int i = 0; i < count; i++) {
+                Airep a = new Airep();
+                a.time = in.getString();
+                a.latitude = in.getString();
+                a.longitude = in.getString();
+                a.reportType = in.getString();
+                a.rawText = in.getString();
+                a.lon = in.getDouble();
+                a.lat = in.getDouble();
+                snapshot.put(a.time + " " + a.latitude + " " + a.longitude, a.rawText, a);
+            }
+        }
+        catch (Exception e) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * 
+     * @param file
+     * @param size
+     * @param time
+     * @param list
+     */
+    private static void saveAirep(File file, long size, long time, List<Airep> list) {
+        WeatherSnapshotFile.Writer out = null;
+        try {
+            out = new WeatherSnapshotFile.Writer(file, WeatherChange.AIREP, size, time);
+            out.putInt(list.size());
+            for(Airep a : list) {
+                out.putString(a.time);
+                out.putString(a.latitude);
+                out.putString(a.longitude);
+                out.putString(a.reportType);
+                out.putString(a.rawText);
+                out.putDouble(a.lon);
+                out.putDouble(a.lat);
+            }
+            out.finish();
+        }
+        catch (IOException e) {
+            if(null != out) {
+                out.abort();
+            }
+        }
+    }
+
+    /**
+     * AIREP. From the snapshot when it was made from this source, else from CSV.
+     * @param size of source
+     * @param time of source
+     * @throws IOException
+     */
+    private void readAirep(long size, long time) throws IOException {
+        File file = new File(mRoot + AIREP_FILE + SNAPSHOT);
+        WeatherSnapshot<Airep> snapshot = null;
+        if(0 == mAirepSnapshot.size()) {
+            snapshot = loadAirep(WeatherSnapshotFile.open(file, WeatherChange.AIREP, size, time));
+        }
+        if(null == snapshot) {
+            snapshot = parseAirep();
+            saveAirep(file, size, time, snapshot.getList());
+        }
+        WeatherChange change = snapshot.diff(mAirepSnapshot, WeatherChange.AIREP);
+        if(change.isEmpty()) {
+            return;
+        }
+        List<Airep> airep = snapshot.getList();
+        mAirepIndex = new AirepIndex(airep);
+        mAirep = airep;
+        mAirepSnapshot = snapshot;
+        changed(change);
+    }
+
+    /**
+     * METAR from CSV
+     * @return
+     * @throws IOException
+     */
+    private WeatherSnapshot<Metar> parseMetar() throws IOException {
+        CsvTokenizer csv = open(METAR_FILE, new int[] {0, 1, 2, 30});
+        WeatherSnapshot<Metar> snapshot = new WeatherSnapshot<Metar>();
+        try {
+            while(csv.next()) {
                 /*
-                 * METAR.
+                 * New observation of a station is an update
                  */
-                csvFile = new InputStreamReader(new FileInputStream(mRoot + METAR_FILE));
-                
-                vpp = new ValueProcessorProvider();
-                CSVReader<Metar> metarReader = new CSVReaderBuilder<Metar>(csvFile).strategy(CSVStrategy.UK_DEFAULT).entryParser(
-                                new AnnotationEntryParser<Metar>(Metar.class, vpp)).build();
-                mMetar = metarReader.readAll();
+                String key = csv.get(1);
+                String stamp = csv.get(2);
+                Metar m = mMetarSnapshot.get(key, stamp);
+                if(null == m) {
+                    m = new Metar();
+                    m.rawText = csv.get(0);
+                    m.stationId = csv.get(1);
+                    m.time = csv.get(2);
+                    m.flightCategory = csv.get(30);
+                }
+                snapshot.put(key, stamp, m);
+            }
+        }
+        finally {
+            csv.close();
+        }
+        return snapshot;
+    }
+
+    /**
+     * METAR from a snapshot
+     * @param in
+     * @return null if none or bad
+     */
+    private static WeatherSnapshot<Metar> loadMetar(WeatherSnapshotFile in) {
+        if(null == in) {
+            return null;
+        }
+        WeatherSnapshot<Metar> snapshot = new WeatherSnapshot<Metar>();
+        try {
+            int count = in.getInt();
+            for(int i = 0; i < count; i++) {
+                Metar m = new Metar();
+                m.rawText = in.getString();
+                m.stationId = in.getString();
+                m.time = in.getString();
+                m.flightCategory = in.getString();
+                snapshot.put(m.stationId, m.time, m);
+            }
+        }
+        catch (Exception e) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * 
+     * @param file
+     * @param size
+     * @param time
+     * @param list
+     */
+    private static void saveMetar(File file, long size, long time, List<Metar> list) {
+        WeatherSnapshotFile.Writer out = null;
+        try {
+            out = new WeatherSnapshotFile.Writer(file, WeatherChange.METAR, size, time);
+            out.putInt(list.size());
+            for(Metar m : list) {
+                out.putString(m.rawText);
+                out.putString(m.stationId);
+                out.putString(m.time);
+                out.putString(m.flightCategory);
+            }
+            out.finish();
+        }
+        catch (IOException e) {
+            if(null != out) {
+                out.abort();
+            }
+        }
+    }
+
+    /**
+     * METAR. From the snapshot when it was made from this source, else from CSV.
+     * @param size of source
+     * @param time of source
+     * @throws IOException
+     */
+    private void readMetar(long size, long time) throws IOException {
+        File file = new File(mRoot + METAR_FILE + SNAPSHOT);
+        WeatherSnapshot<Metar> snapshot = null;
+        if(0 == mMetarSnapshot.size()) {
+            snapshot = loadMetar(WeatherSnapshotFile.open(file, WeatherChange.METAR, size, time));
+        }
+        if(null == snapshot) {
+            snapshot = parseMetar();
+            saveMetar(file, size, time, snapshot.getList());
+        }
+        WeatherChange change = snapshot.diff(mMetarSnapshot, WeatherChange.METAR);
+        if(change.isEmpty()) {
+            return;
+        }
+        List<Metar> metar = snapshot.getList();
+
+        /*
+         * Index by station. ICAO first so a station with the FAA id itself wins.
+         */
+        HashMap<String, Metar> metarIndex = new HashMap<String, Metar>(metar.size() * 2);
+        for(Metar m : metar) {
+            if(!metarIndex.containsKey(m.stationId)) {
+                metarIndex.put(m.stationId, m);
+            }
+        }
+        for(Metar m : metar) {
+            String faa = getFaaId(m.stationId);
+            if(null != faa && !metarIndex.containsKey(faa)) {
+                metarIndex.put(faa, m);
+            }
+        }
+        mMetarIndex = metarIndex;
+        mMetar = metar;
+        mMetarSnapshot = snapshot;
+        changed(change);
+    }
+
+    /**
+     * TAF from CSV
+     * @return
+     * @throws IOException
+     */
+    private WeatherSnapshot<Taf> parseTaf() throws IOException {
+        CsvTokenizer csv = open(TAF_FILE, new int[] {0, 1, 2});
+        WeatherSnapshot<Taf> snapshot = new WeatherSnapshot<Taf>();
+        try {
+            while(csv.next()) {
+                String key = csv.get(1);
+                String stamp = csv.get(2);
+                Taf t = mTafSnapshot.get(key, stamp);
+                if(null == t) {
+                    t = new Taf();
+                    t.rawText = csv.get(0);
+                    t.stationId = csv.get(1);
+                    t.time = csv.get(2);
+                }
+                snapshot.put(key, stamp, t);
+            }
+        }
+        finally {
+            csv.close();
+        }
+        return snapshot;
+    }
+
+    /**
+     * TAF from a snapshot
+     * @param in
+     * @return null if none or bad
+     */
+    private static WeatherSnapshot<Taf> loadTaf(WeatherSnapshotFile in) {
+        if(null == in) {
+            return null;
+        }
+        WeatherSnapshot<Taf> snapshot = new WeatherSnapshot<Taf>();
+        try {
+            int count = in.getInt();
+            for(int i = 0; i < count; i++) {
+                Taf t = new Taf();
+                t.rawText = in.getString();
+                t.stationId = in.getString();
+                t.time = in.getString();
+                snapshot.put(t.stationId, t.time, t);
+            }
+        }
+        catch (Exception e) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * 
+     * @param file
+     * @param size
+     * @param time
+     * @param list
+     */
+    private static void saveTaf(File file, long size, long time, List<Taf> list) {
+        WeatherSnapshotFile.Writer out = null;
+        try {
+            out = new WeatherSnapshotFile.Writer(file, WeatherChange.TAF, size, time);
+            out.putInt(list.size());
+            for(Taf t : list) {
+                out.putString(t.rawText);
+                out.putString(t.stationId);
+                out.putString(t.time);
+            }
+            out.finish();
+        }
+        catch (IOException e) {
+            if(null != out) {
+                out.abort();
+            }
+        }
+    }
 
+    /**
+     * TAF. From the snapshot when it was made from this source, else from CSV.
+     * @param size of source
+     * @param time of source
+     * @throws IOException
+     */
+    private void readTaf(long size, long time) throws IOException {
+        File file = new File(mRoot + TAF_FILE + SNAPSHOT);
+        WeatherSnapshot<Taf> snapshot = null;
+        if(0 == mTafSnapshot.size()) {
+            snapshot = loadTaf(WeatherSnapshotFile.open(file, WeatherChange.TAF, size, time));
+        }
+        if(null == snapshot) {
+            snapshot = parseTaf();
+            saveTaf(file, size, time, snapshot.getList());
+        }
+        WeatherChange change = snapshot.diff(mTafSnapshot, WeatherChange.TAF);
+        if(change.isEmpty()) {
+            return;
+        }
+        List<Taf> taf = snapshot.getList();
+
+        HashMap<String, Taf> tafIndex = new HashMap<String, Taf>(taf.size() * 2);
+        for(Taf t : taf) {
+            if(!tafIndex.containsKey(t.stationId)) {
+                tafIndex.put(t.stationId, t);
+            }
+        }
+        for(Taf t : taf) {
+            String faa = getFaaId(t.stationId);
+            if(null != faa && !tafIndex.containsKey(faa)) {
+                tafIndex.put(faa, t);
+            }
+        }
+        mTafIndex = tafIndex;
+        mTaf = taf;
+        mTafSnapshot = snapshot;
+        changed(change);
+    }
+
+    /**
+     * Tell observers what changed. Called from reader threads.
+     * @param change
+     */
+    private synchronized void changed(WeatherChange change) {
+        mVersion++;
+        change.version = mVersion;
+        setChanged();
+        notifyObservers(change);
+    }
+
+    /**
+     * 
+     * @return version that goes up on every change in weather
+     */
+    public synchronized int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Reads one file. Files are read at the same time, each is visible as soon as it is read.
+     */
+    private class WeatherTask extends Scheduler.Task {
+
+        int file;
+
+        /* (non-Javadoc)
+         * @see com.ds.avare.utils.Scheduler.Task#run(com.ds.avare.utils.Scheduler.Token)
+         */
+        @Override
+        public void run(Scheduler.Token token) {
+            try {
                 /*
-                 * TAF.
+                 * Nothing to do if source has not changed since last read
                  */
-                csvFile = new InputStreamReader(new FileInputStream(mRoot + TAF_FILE));
-                
-                vpp = new ValueProcessorProvider();
-                CSVReader<Taf> tafReader = new CSVReaderBuilder<Taf>(csvFile).strategy(CSVStrategy.UK_DEFAULT).entryParser(
-                                new AnnotationEntryParser<Taf>(Taf.class, vpp)).build();
-                mTaf = tafReader.readAll();
-
+                File source = new File(mRoot + FILE_NAMES[file]);
+                long size = source.length();
+                long time = source.lastModified();
+                if(size == mSourceSize[file] && time == mSourceTime[file]) {
+                    return;
+                }
+                switch(file) {
+                    case FILE_MET:
+                        readAirSigMet(size, time);
+                        break;
+                    case FILE_AIREP:
+                        readAirep(size, time);
+                        break;
+                    case FILE_METAR:
+                        readMetar(size, time);
+                        break;
+                    case FILE_TAF:
+                        readTaf(size, time);
+                        break;
+                }
+                mSourceSize[file] = size;
+                mSourceTime[file] = time;
             }
             catch(Exception e) {
             }
@@ -0,0 +1,68 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ds.avare.weather;
+
+import java.util.LinkedList;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * What changed in one kind of weather on a refresh of the cache.
+ * Sent to observers of InternetWeatherCache.
+ */
+public class WeatherChange {
+
+    public static final int METAR = 0;
+    public static final int TAF = 1;
+    public static final int AIREP = 2;
+    public static final int AIRSIGMET = 3;
+
+    /*
+     * One of above
+     */
+    public int type;
+
+    /*
+     * Cache version after this change
+     */
+    public int version;
+
+    /*
+     * Keys of records, like station for METAR
+     */
+    public LinkedList<String> added;
+    public LinkedList<String> updated;
+    public LinkedList<String> removed;
+
+    /**
+     * 
+     * @param type
+     */
+    public WeatherChange(int type) {
+        this.type = type;
+        version = 0;
+        added = new LinkedList<String>();
+        updated = new LinkedList<String>();
+        removed = new LinkedList<String>();
+    }
+
+    /**
+     * 
+     * @return true if nothing changed
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+    }
+}
@@ -0,0 +1,824 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+
+package com.ds.avare.weather;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Decodes a METAR or TAF in one pass over its tokens, and renders the decoded report
+ * as HTML or plain text from tables of abbreviations, without rescanning the text.
+ */
+public class WeatherDecoder {
+
+    /*
+     * Abbreviation to color (in TAFs) and translation
+     */
+    private static final HashMap<String, Code> CODES = new HashMap<String, Code>();
+    private static final HashMap<String, Code> REMARKS = new HashMap<String, Code>();
+
+    /*
+     * Longest abbreviation in remarks
+     */
+    private static final int REMARK_MAX = 6;
+
+    private static final float METERS_PER_SM = 1609.344f;
+    private static final float CAVOK_METERS = 10000;
+    private static final float KNOTS_PER_MPS = 1.944f;
+
+    /**
+     * 
+     * @author zkhan
+     *
+     */
+    private static class Code {
+        private String mColor;
+        private String mText;
+        private boolean mWeather;
+
+        private Code(String color, String text, boolean weather) {
+            mColor = color;
+            mText = text;
+            mWeather = weather;
+        }
+    }
+
+    private static void code(String code, String color, String text) {
+        CODES.put(code, new Code(color, text, false));
+    }
+
+    private static void weather(String code, String color, String text) {
+        CODES.put(code, new Code(color, text, true));
+    }
+
+    private static void remark(String code, String text) {
+        REMARKS.put(code, new Code(null, text, false));
+    }
+
+    static {
+        /*
+         * Qualifiers
+         */
+        code("+", "magenta", "Heavy");
+        code("-", "red", "Light");
+        code("VC", null, "In Vicinity");
+
+        /*
+         * Description
+         */
+        weather("MI", "blue", "Shallow");
+        weather("BC", "blue", "Patches");
+        weather("DR", "blue", "Low Drifting");
+        weather("BL", "blue", "Blowing");
+        weather("SH", "blue", "Showers");
+        weather("TS", "red", "Thunderstorm");
+        weather("FZ", "red", "Freezing");
+        weather("PR", "blue", "Partial");
+
+        /*
+         * Precip
+         */
+        weather("DZ", "blue", "Drizzle");
+        weather("RA", "red", "Rain");
+        weather("SN", "red", "Snow");
+        weather("SG", "red", "Snow Grains");
+        weather("IC", "red", "Ice Crystals");
+        weather("PL", "red", "Ice Pellets");
+        weather("GR", "red", "Hail");
+        weather("GS", "blue", "Small Hail");
+        weather("UP", "red", "Unknown Precip.");
+
+        /*
+         * Obstruction
+         */
+        weather("BR", "red", "Mist");
+        weather("FG", "red", "Fog");
+        weather("FU", "red", "Smoke");
+        weather("DU", "red", "Dust");
+        weather("SA", "red", "Sand");
+        weather("HZ", "red", "Haze");
+        weather("PY", "red", "Spray");
+        weather("VA", "red", "Volcanic Ash");
+
+        /*
+         * Other
+         */
+        weather("PO", "red", "Dust Whirls");
+        weather("SQ", "red", "Squalls");
+        weather("FC", "red", "Funnel Cloud");
+        weather("SS", "red", "Sand Storm");
+        weather("DS", "red", "Dust Storm");
+        code("NSW", null, "No Significant Weather");
+
+        /*
+         * Sky
+         */
+        code("SKC", null, "Sky Clear");
+        code("CLR", null, "Sky Clear");
+        code("NSC", null, "No Significant Clouds");
+        code("NCD", null, "No Clouds Detected");
+        code("FEW", null, "Few");
+        code("SCT", null, "Scattered");
+        code("BKN", null, "Broken");
+        code("OVC", null, "Overcast");
+        code("VV", "red", "Vertical Visibility");
+        code("CB", "red", "Cumulonimbus");
+        code("TCU", null, "Towering Cumulus");
+        code("CAVOK", null, "Ceiling And Visibility OK");
+
+        /*
+         * Report and change groups
+         */
+        code("AMD", null, "Amended");
+        code("COR", null, "Corrected");
+        code("AUTO", null, "Automated");
+        code("SPECI", null, "Special");
+        code("NOSIG", null, "No Significant Change Expected");
+        code("FM", null, "From");
+        code("BECMG", null, "Becoming");
+        code("TEMPO", null, "Temporary");
+        code("PROB", null, "Probibility%");
+        code("VRB", null, "Variable");
+        code("WSCONDS", null, "Wind Shear Possible");
+        code("WS", "magenta", "Wind Shear");
+        code("QNH", null, "Minimum Altimeter");
+        code("INS", null, "Inches");
+        code("RMK", null, "Remark");
+
+        /*
+         * Remarks, matched on the longest prefix
+         */
+        remark("AO", "Station Type");
+        remark("RAB", "Rain Began");
+        remark("RAE", "Rain Ended");
+        remark("CIG", "Variable Ceiling");
+        remark("SLP", "Sea Level Pressure");
+        remark("RVRNO", "No RVR reported");
+        remark("NOSIG", "No Significant Change Expected");
+        remark("TSNO", "Thunderstom Info Not Available");
+        remark("WSHFT", "Wind Shift");
+        remark("VIS", "Visibility");
+        remark("PRESFR", "Rapid Pressure Change");
+        remark("PRESRR", "Rapid Pressure Change");
+        remark("LTG", "Lightning");
+        remark("TCU", "Towering Cumulus");
+        remark("IR", "Runway Ice");
+        remark("WR", "Wet Runway");
+        remark("LSR", "Loose Runway Snow");
+        remark("PSR", "Packed Runway Snow");
+        remark("$", "Station Maintenance Needed");
+    }
+
+    /**
+     * Decode a METAR or TAF
+     * @param text
+     * @param taf
+     * @return
+     */
+    public static WeatherReport decode(String text, boolean taf) {
+        WeatherReport report = new WeatherReport();
+        report.taf = taf;
+        if(null == text) {
+            return report;
+        }
+
+        /*
+         * Split on white space
+         */
+        ArrayList<String> tokens = new ArrayList<String>();
+        int len = text.length();
+        int start = -1;
+        for(int i = 0; i <= len; i++) {
+            boolean space = (i == len) || text.charAt(i) <= ' ';
+            if(space) {
+                if(start >= 0) {
+                    tokens.add(text.substring(start, i));
+                    start = -1;
+                }
+            }
+            else if(start < 0) {
+                start = i;
+            }
+        }
+
+        int num = tokens.size();
+        String out[] = new String[num];
+        int kinds[] = new int[num];
+        float values[] = new float[num];
+        int count = 0;
+
+        WeatherReport.Period period = report.getBase();
+        boolean remark = false;
+        StringBuilder remarks = new StringBuilder();
+
+        for(int i = 0; i < num; i++) {
+            String t = tokens.get(i);
+            int kind = WeatherReport.OTHER;
+            float value = Float.NaN;
+
+            if(remark) {
+                kind = WeatherReport.REMARK;
+                if(remarks.length() > 0) {
+                    remarks.append(' ');
+                }
+                remarks.append(t);
+            }
+            else if(t.equals("RMK")) {
+                kind = WeatherReport.REMARK;
+                remark = true;
+            }
+            else if(count == 0 && (t.equals("TAF") || t.equals("METAR"))) {
+                kind = WeatherReport.HEADER;
+                report.taf = t.equals("TAF");
+            }
+            else if(t.equals("AMD") && null == report.time) {
+                kind = WeatherReport.HEADER;
+                report.amended = true;
+            }
+            else if(null == report.station && null == report.time && isStation(t)) {
+                kind = WeatherReport.STATION;
+                report.station = t;
+            }
+            else if(t.length() == 7 && t.charAt(6) == 'Z' && digits(t, 0, 6) >= 0) {
+                kind = WeatherReport.TIME;
+                if(null == report.time) {
+                    report.time = t;
+                }
+            }
+            else if(t.length() == 9 && t.charAt(4) == '/' && digits(t, 0, 4) >= 0 && digits(t, 5, 9) >= 0) {
+                kind = WeatherReport.VALID;
+                period.valid = t;
+            }
+            else if(isChange(t)) {
+                kind = WeatherReport.CHANGE;
+                if(count > 0 && kinds[count - 1] == WeatherReport.CHANGE) {
+                    /*
+                     * Like PROB30 TEMPO
+                     */
+                    period.change += " " + t;
+                }
+                else {
+                    period = new WeatherReport.Period(t);
+                    report.periods.add(period);
+                    if(t.startsWith("FM")) {
+                        period.valid = t.substring(2);
+                    }
+                }
+            }
+            else if(parseWind(t, period)) {
+                kind = WeatherReport.WIND;
+                value = Math.max(period.windSpeed, period.windGust);
+            }
+            else if(i + 1 < num && t.length() == 1 && digits(t, 0, 1) >= 0 &&
+                    tokens.get(i + 1).endsWith("SM") && tokens.get(i + 1).indexOf('/') > 0 &&
+                    parseVisibility(t + " " + tokens.get(i + 1), period)) {
+                /*
+                 * Like 1 1/2SM, keep as one token
+                 */
+                t = t + " " + tokens.get(++i);
+                kind = WeatherReport.VISIBILITY;
+                value = period.visibility;
+            }
+            else if(Float.isNaN(period.visibility) && parseVisibility(t, period)) {
+                kind = WeatherReport.VISIBILITY;
+                value = period.visibility;
+            }
+            else if(t.equals("CAVOK")) {
+                /*
+                 * Visibility 10 km or more, no clouds below 5000 ft
+                 */
+                kind = WeatherReport.SKY;
+                period.visibility = CAVOK_METERS / METERS_PER_SM;
+                period.visibilityGreater = true;
+                period.sky.add(t);
+            }
+            else if(parseSky(t, period)) {
+                kind = WeatherReport.SKY;
+            }
+            else if(isWeather(t)) {
+                kind = WeatherReport.WEATHER;
+                period.weather.add(t);
+            }
+
+            out[count] = t;
+            kinds[count] = kind;
+            values[count] = value;
+            count++;
+        }
+
+        if(count != num) {
+            report.tokens = new String[count];
+            report.kinds = new int[count];
+            report.values = new float[count];
+            System.arraycopy(out, 0, report.tokens, 0, count);
+            System.arraycopy(kinds, 0, report.kinds, 0, count);
+            System.arraycopy(values, 0, report.values, 0, count);
+        }
+        else {
+            report.tokens = out;
+            report.kinds = kinds;
+            report.values = values;
+        }
+        report.remarks = remarks.toString();
+        return report;
+    }
+
+    /**
+     * Render as HTML, without header and station. TAFs are color coded.
+     * @param report
+     * @param translate
+     * @return
+     */
+    public static String formatHTML(WeatherReport report, boolean translate) {
+        boolean color = report.taf;
+        int num = report.tokens.length;
+        StringBuilder out = new StringBuilder(num * (translate ? 40 : 24));
+        int last = WeatherReport.HEADER;
+
+        for(int i = 0; i < num; i++) {
+            String t = report.tokens[i];
+            int kind = report.kinds[i];
+            if(kind == WeatherReport.HEADER || kind == WeatherReport.STATION) {
+                continue;
+            }
+            if(kind == WeatherReport.CHANGE && last != WeatherReport.CHANGE) {
+                out.append("<br></br>");
+            }
+            else {
+                out.append(' ');
+            }
+            last = kind;
+
+            switch(kind) {
+                case WeatherReport.WIND:
+                    appendWind(out, t, report.values[i], translate, color);
+                    break;
+                case WeatherReport.VISIBILITY:
+                    appendVisibility(out, t, report.values[i], translate, color);
+                    break;
+                case WeatherReport.WEATHER:
+                    appendWeather(out, t, translate, color);
+                    break;
+                case WeatherReport.SKY:
+                    appendSky(out, t, translate, color);
+                    break;
+                case WeatherReport.CHANGE:
+                    appendPrefixed(out, t, t.startsWith("FM") ? "FM" : t.startsWith("PROB") ? "PROB" : t, translate);
+                    break;
+                case WeatherReport.REMARK:
+                    appendRemark(out, t, i > 0 ? report.tokens[i - 1] : "", translate);
+                    break;
+                case WeatherReport.OTHER:
+                    appendOther(out, t, translate, color);
+                    break;
+                default:
+                    out.append(t);
+                    break;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Render as plain text, one line per forecast period
+     * @param report
+     * @return
+     */
+    public static String formatText(WeatherReport report) {
+        int num = report.tokens.length;
+        StringBuilder out = new StringBuilder(num * 8);
+        int last = WeatherReport.HEADER;
+        for(int i = 0; i < num; i++) {
+            int kind = report.kinds[i];
+            if(kind == WeatherReport.HEADER) {
+                continue;
+            }
+            if(out.length() > 0) {
+                out.append(kind == WeatherReport.CHANGE && last != WeatherReport.CHANGE ? '\n' : ' ');
+            }
+            out.append(report.tokens[i]);
+            last = kind;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Append code with its translation, in color for TAFs
+     */
+    private static void append(StringBuilder out, String code, boolean translate, boolean color) {
+        Code c = CODES.get(code);
+        if(null == c) {
+            out.append(code);
+            return;
+        }
+        boolean font = color && null != c.mColor;
+        if(font) {
+            out.append("<font color='").append(c.mColor).append("'>");
+        }
+        out.append(code);
+        if(translate) {
+            out.append('(').append(c.mText).append(')');
+        }
+        if(font) {
+            out.append("<font color='black'>");
+        }
+    }
+
+    /**
+     * Append code then the rest of token, like FM(From)121800
+     */
+    private static void appendPrefixed(StringBuilder out, String t, String code, boolean translate) {
+        append(out, code, translate, false);
+        out.append(t, code.length(), t.length());
+    }
+
+    /**
+     * Like 27015G25KT, speed colored by strongest wind
+     */
+    private static void appendWind(StringBuilder out, String t, float knots, boolean translate, boolean color) {
+        int end = t.length() - (t.endsWith("MPS") ? 3 : 2);
+        if(t.startsWith("VRB")) {
+            append(out, "VRB", translate, false);
+        }
+        else {
+            out.append(t, 0, 3);
+        }
+        if(color) {
+            String c;
+            if(knots < 10) {
+                c = "green";
+            }
+            else if(knots < 20) {
+                c = "blue";
+            }
+            else if(knots < 30) {
+                c = "red";
+            }
+            else {
+                c = "magenta";
+            }
+            out.append("<font color='").append(c).append("'>");
+            out.append(t, 3, end);
+            out.append("<font color='black'>");
+        }
+        else {
+            out.append(t, 3, end);
+        }
+        out.append(t, end, t.length());
+    }
+
+    /**
+     * Like 1 1/2SM or 9999, number colored by distance
+     */
+    private static void appendVisibility(StringBuilder out, String t, float miles, boolean translate, boolean color) {
+        boolean sm = t.endsWith("SM");
+        int end = sm ? t.length() - 2 : t.length();
+        if(color) {
+            String c;
+            if(miles >= 5) {
+                c = "green";
+            }
+            else if(miles >= 3) {
+                c = "blue";
+            }
+            else if(miles >= 1) {
+                c = "red";
+            }
+            else {
+                c = "magenta";
+            }
+            out.append("<font color='").append(c).append("'>");
+            out.append(t, 0, end);
+            out.append("<font color='black'>");
+        }
+        else {
+            out.append(t, 0, end);
+        }
+        if(sm) {
+            out.append("SM");
+        }
+        else if(translate) {
+            out.append(t.equals("9999") ? "(Visibility > 7SM)" : "(Meters)");
+        }
+    }
+
+    /**
+     * Like -SHRA or VCTS, two letters at a time
+     */
+    private static void appendWeather(StringBuilder out, String t, boolean translate, boolean color) {
+        int i = 0;
+        int len = t.length();
+        char c = t.charAt(0);
+        if(c == '+' || c == '-') {
+            append(out, c == '+' ? "+" : "-", translate, color);
+            i = 1;
+        }
+        if(t.startsWith("VC", i)) {
+            append(out, "VC", translate, color);
+            i += 2;
+        }
+        if(i == 0 && t.equals("NSW")) {
+            append(out, t, translate, color);
+            return;
+        }
+        for(; i + 1 < len; i += 2) {
+            append(out, t.substring(i, i + 2), translate, color);
+        }
+    }
+
+    /**
+     * Like BKN030CB
+     */
+    private static void appendSky(StringBuilder out, String t, boolean translate, boolean color) {
+        int cover = t.startsWith("VV") ? 2 : 3;
+        if(t.length() <= cover) {
+            append(out, t, translate, color);
+            return;
+        }
+        append(out, t.substring(0, cover), translate, color);
+        int end = Math.min(cover + 3, t.length());
+        out.append(t, cover, end);
+        if(end < t.length()) {
+            append(out, t.substring(end), translate, color);
+        }
+    }
+
+    /**
+     * Remarks, on the longest abbreviation a token starts with
+     */
+    private static void appendRemark(StringBuilder out, String t, String previous, boolean translate) {
+        if(t.equals("RMK")) {
+            append(out, t, translate, false);
+            return;
+        }
+        out.append(t);
+        if(!translate) {
+            return;
+        }
+        if(t.equals("WND") && previous.equals("PK")) {
+            out.append("(Peak Wind)");
+            return;
+        }
+        for(int len = Math.min(REMARK_MAX, t.length()); len > 0; len--) {
+            Code c = REMARKS.get(t.substring(0, len));
+            if(null != c) {
+                out.append('(').append(c.mText).append(')');
+                return;
+            }
+        }
+    }
+
+    /**
+     * Anything else, like AUTO, WS020/18040KT, QNH2992INS, 180V240
+     */
+    private static void appendOther(StringBuilder out, String t, boolean translate, boolean color) {
+        if(CODES.containsKey(t)) {
+            append(out, t, translate, color);
+        }
+        else if(t.startsWith("WS") && t.length() > 2 && Character.isDigit(t.charAt(2))) {
+            append(out, "WS", translate, color);
+            out.append(t, 2, t.length());
+        }
+        else if(t.startsWith("QNH")) {
+            append(out, "QNH", translate, color);
+            if(t.endsWith("INS")) {
+                out.append(t, 3, t.length() - 3);
+                append(out, "INS", translate, color);
+            }
+            else {
+                out.append(t, 3, t.length());
+            }
+        }
+        else {
+            out.append(t);
+        }
+    }
+
+    /**
+     * Parse digits between start and end, -1 if not all digits
+     */
+    private static int digits(String t, int start, int end) {
+        if(end <= start || end > t.length()) {
+            return -1;
+        }
+        int val = 0;
+        for(int i = start; i < end; i++) {
+            char c = t.charAt(i);
+            if(c < '0' || c > '9') {
+                return -1;
+            }
+            val = val * 10 + (c - '0');
+        }
+        return val;
+    }
+
+    /**
+     * Like KBOS or EGLL
+     */
+    private static boolean isStation(String t) {
+        if(t.length() != 4 || !Character.isLetter(t.charAt(0))) {
+            return false;
+        }
+        for(int i = 1; i < 4; i++) {
+            if(!Character.isLetterOrDigit(t.charAt(i))) {
+                return false;
+            }
+        }
+        return !CODES.containsKey(t);
+    }
+
+    /**
+     * FMddhhmm, BECMG, TEMPO, PROBnn
+     */
+    private static boolean isChange(String t) {
+        if(t.equals("BECMG") || t.equals("TEMPO")) {
+            return true;
+        }
+        if(t.startsWith("FM") && digits(t, 2, t.length()) >= 0 && t.length() >= 6) {
+            return true;
+        }
+        return t.length() == 6 && t.startsWith("PROB") && digits(t, 4, 6) >= 0;
+    }
+
+    /**
+     * Like 27015G25KT, VRB03KT, 05008MPS
+     */
+    private static boolean parseWind(String t, WeatherReport.Period p) {
+        int unit;
+        if(t.endsWith("KT")) {
+            unit = 2;
+        }
+        else if(t.endsWith("MPS")) {
+            unit = 3;
+        }
+        else {
+            return false;
+        }
+        int end = t.length() - unit;
+        if(end < 5) {
+            return false;
+        }
+        int dir = -1;
+        boolean variable = t.startsWith("VRB");
+        if(!variable) {
+            dir = digits(t, 0, 3);
+            if(dir < 0) {
+                return false;
+            }
+        }
+        int g = t.indexOf('G', 3);
+        int speedEnd = (g > 0 && g < end) ? g : end;
+        int speed = digits(t, 3, speedEnd);
+        if(speed < 0) {
+            return false;
+        }
+        int gust = -1;
+        if(speedEnd != end) {
+            gust = digits(t, g + 1, end);
+            if(gust < 0) {
+                return false;
+            }
+        }
+        if(unit == 3) {
+            speed = Math.round(speed * KNOTS_PER_MPS);
+            if(gust >= 0) {
+                gust = Math.round(gust * KNOTS_PER_MPS);
+            }
+        }
+        p.windDirection = dir;
+        p.windVariable = variable;
+        p.windSpeed = speed;
+        p.windGust = gust;
+        return true;
+    }
+
+    /**
+     * Like 10SM, P6SM, M1/4SM, 1 1/2SM, or meters like 9999
+     */
+    private static boolean parseVisibility(String t, WeatherReport.Period p) {
+        int len = t.length();
+        if(!t.endsWith("SM")) {
+            int meters = (len == 4) ? digits(t, 0, 4) : -1;
+            if(meters < 0) {
+                return false;
+            }
+            p.visibility = meters / METERS_PER_SM;
+            p.visibilityGreater = meters == 9999;
+            return true;
+        }
+        int start = 0;
+        int end = len - 2;
+        boolean greater = false;
+        if(t.charAt(0) == 'P' || t.charAt(0) == 'M') {
+            greater = t.charAt(0) == 'P';
+            start = 1;
+        }
+        float miles = 0;
+        int space = t.indexOf(' ');
+        if(space > 0) {
+            int whole = digits(t, start, space);
+            if(whole < 0) {
+                return false;
+            }
+            miles = whole;
+            start = space + 1;
+        }
+        int slash = t.indexOf('/', start);
+        if(slash > 0) {
+            int num = digits(t, start, slash);
+            int den = digits(t, slash + 1, end);
+            if(num < 0 || den <= 0) {
+                return false;
+            }
+            miles += (float)num / (float)den;
+        }
+        else {
+            int whole = digits(t, start, end);
+            if(whole < 0) {
+                return false;
+            }
+            miles += whole;
+        }
+        p.visibility = miles;
+        p.visibilityGreater = greater;
+        return true;
+    }
+
+    /**
+     * Like BKN030, OVC010CB, VV002, SKC
+     */
+    private static boolean parseSky(String t, WeatherReport.Period p) {
+        if(t.equals("SKC") || t.equals("CLR") || t.equals("NSC") || t.equals("NCD")) {
+            p.sky.add(t);
+            return true;
+        }
+        int cover;
+        if(t.startsWith("VV")) {
+            cover = 2;
+        }
+        else if(t.startsWith("FEW") || t.startsWith("SCT") || t.startsWith("BKN") || t.startsWith("OVC")) {
+            cover = 3;
+        }
+        else {
+            return false;
+        }
+        int base = digits(t, cover, cover + 3);
+        if(base < 0) {
+            return false;
+        }
+        String type = t.substring(cover + 3);
+        if(!(type.length() == 0 || type.equals("CB") || type.equals("TCU"))) {
+            return false;
+        }
+        p.sky.add(t);
+        if(cover == 2 || t.startsWith("BKN") || t.startsWith("OVC")) {
+            int feet = base * 100;
+            if(p.ceiling < 0 || feet < p.ceiling) {
+                p.ceiling = feet;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Like -SHRA, +TSRAGR, VCSH, BR
+     */
+    private static boolean isWeather(String t) {
+        if(t.equals("NSW")) {
+            return true;
+        }
+        int len = t.length();
+        int i = 0;
+        if(len > 0 && (t.charAt(0) == '+' || t.charAt(0) == '-')) {
+            i = 1;
+        }
+        if(t.startsWith("VC", i)) {
+            i += 2;
+        }
+        if(i >= len || ((len - i) & 1) != 0) {
+            return false;
+        }
+        for(; i < len; i += 2) {
+            Code c = CODES.get(t.substring(i, i + 2));
+            if(null == c || !c.mWeather) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
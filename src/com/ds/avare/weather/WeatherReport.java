@@ -0,0 +1,135 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+
+package com.ds.avare.weather;
+
+import java.util.LinkedList;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * A METAR or TAF decoded once by WeatherDecoder.
+ * Keeps the tokens of the report in order with what each one is, so it can be rendered
+ * without parsing again, plus the conditions of each forecast period.
+ */
+public class WeatherReport {
+
+    /*
+     * Kinds of tokens
+     */
+    public static final int OTHER = 0;
+    public static final int HEADER = 1;
+    public static final int STATION = 2;
+    public static final int TIME = 3;
+    public static final int VALID = 4;
+    public static final int WIND = 5;
+    public static final int VISIBILITY = 6;
+    public static final int WEATHER = 7;
+    public static final int SKY = 8;
+    public static final int CHANGE = 9;
+    public static final int REMARK = 10;
+
+    public String station;
+    public String time;
+    public boolean taf;
+    public boolean amended;
+    public String remarks;
+
+    /*
+     * Tokens in order, their kind, and their decoded value:
+     * strongest wind in knots for WIND, statute miles for VISIBILITY, NaN otherwise.
+     */
+    public String tokens[];
+    public int kinds[];
+    public float values[];
+
+    /*
+     * First one is the base conditions, then one for each change group
+     */
+    public LinkedList<Period> periods;
+
+    /**
+     * 
+     * @author zkhan
+     *
+     */
+    public static class Period {
+        /*
+         * Like FM121800, BECMG, TEMPO, PROB30. null for base conditions
+         */
+        public String change;
+        public String valid;
+        /*
+         * -1 when unknown or variable
+         */
+        public int windDirection;
+        public boolean windVariable;
+        public int windSpeed;
+        public int windGust;
+        /*
+         * Statute miles, NaN when not reported
+         */
+        public float visibility;
+        public boolean visibilityGreater;
+        /*
+         * Lowest broken, overcast, or vertical visibility in feet AGL, -1 when none
+         */
+        public int ceiling;
+        public LinkedList<String> weather;
+        public LinkedList<String> sky;
+
+        /**
+         * 
+         * @param change
+         */
+        public Period(String change) {
+            this.change = change;
+            valid = null;
+            windDirection = -1;
+            windVariable = false;
+            windSpeed = -1;
+            windGust = -1;
+            visibility = Float.NaN;
+            visibilityGreater = false;
+            ceiling = -1;
+            weather = new LinkedList<String>();
+            sky = new LinkedList<String>();
+        }
+    }
+
+    /**
+     * 
+     */
+    public WeatherReport() {
+        station = null;
+        time = null;
+        taf = false;
+        amended = false;
+        remarks = "";
+        tokens = new String[0];
+        kinds = new int[0];
+        values = new float[0];
+        periods = new LinkedList<Period>();
+        periods.add(new Period(null));
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public Period getBase() {
+        return periods.getFirst();
+    }
+}
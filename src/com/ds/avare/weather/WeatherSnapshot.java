@@ -0,0 +1,114 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ds.avare.weather;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Records of one kind of weather from one read of the cache, by key.
+ * A stamp (like observation time) tells if a record with same key changed,
+ * so unchanged records can be reused from the last snapshot.
+ * 
+ * @param <T>
+ */
+public class WeatherSnapshot<T> {
+
+    private HashMap<String, T> mRecords;
+    private HashMap<String, String> mStamps;
+    private ArrayList<T> mList;
+
+    /**
+     * 
+     */
+    public WeatherSnapshot() {
+        mRecords = new HashMap<String, T>();
+        mStamps = new HashMap<String, String>();
+        mList = new ArrayList<T>();
+    }
+
+    /**
+     * 
+     * @param key
+     * @param stamp
+     * @return record of key if its stamp is same, else null
+     */
+    public T get(String key, String stamp) {
+        String old = mStamps.get(key);
+        if(null == old || !old.equals(stamp)) {
+            return null;
+        }
+        return mRecords.get(key);
+    }
+
+    /**
+     * Add a record. If key is already there, the first one is kept by key but both are in list.
+     * @param key
+     * @param stamp
+     * @param record
+     */
+    public void put(String key, String stamp, T record) {
+        mList.add(record);
+        if(mRecords.containsKey(key)) {
+            return;
+        }
+        mRecords.put(key, record);
+        mStamps.put(key, stamp);
+    }
+
+    /**
+     * 
+     * @return all records in order read
+     */
+    public List<T> getList() {
+        return mList;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public int size() {
+        return mList.size();
+    }
+
+    /**
+     * Find what changed since an older snapshot
+     * @param older
+     * @param type of WeatherChange
+     * @return
+     */
+    public WeatherChange diff(WeatherSnapshot<T> older, int type) {
+        WeatherChange change = new WeatherChange(type);
+        for(String key : mStamps.keySet()) {
+            String old = older.mStamps.get(key);
+            if(null == old) {
+                change.added.add(key);
+            }
+            else if(!old.equals(mStamps.get(key))) {
+                change.updated.add(key);
+            }
+        }
+        for(String key : older.mStamps.keySet()) {
+            if(!mStamps.containsKey(key)) {
+                change.removed.add(key);
+            }
+        }
+        return change;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+Copyright (c) 2012, Zubair Khan (governer@gmail.com) 
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+    *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+    *
+    *     THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+
+package com.ds.avare.weather;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 
+ * @author zkhan
+ * 
+ * Parsed weather of one source file saved in binary, so it can be mapped back at startup
+ * instead of parsing the CSV again.
+ * Tagged with size and modification time of the source, and only valid while those match.
+ * Format: MAGIC, VERSION, type, source size, source time, then records as the cache writes them.
+ */
+public class WeatherSnapshotFile {
+
+    private static final int MAGIC = 0x41565753;
+    private static final int VERSION = 1;
+
+    private ByteBuffer mBuffer;
+    private byte mBytes[];
+
+    /**
+     * 
+     * @param buffer
+     */
+    private WeatherSnapshotFile(ByteBuffer buffer) {
+        mBuffer = buffer;
+        mBytes = new byte[256];
+    }
+
+    /**
+     * Map a snapshot for reading
+     * @param file snapshot file
+     * @param type one of WeatherChange types
+     * @param size source size it must be made from
+     * @param time source time it must be made from
+     * @return null if missing or not of this source
+     */
+    public static WeatherSnapshotFile open(File file, int type, long size, long time) {
+        if(!file.exists()) {
+            return null;
+        }
+        RandomAccessFile f = null;
+        try {
+            f = new RandomAccessFile(file, "r");
+            FileChannel channel = f.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            /*
+             * Mapping stays valid after close
+             */
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != type ||
+                    buffer.getLong() != size || buffer.getLong() != time) {
+                return null;
+            }
+            return new WeatherSnapshotFile(buffer);
+        }
+        catch (Exception e) {
+            return null;
+        }
+        finally {
+            if(null != f) {
+                try {
+                    f.close();
+                }
+                catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public int getInt() {
+        return mBuffer.getInt();
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public double getDouble() {
+        return mBuffer.getDouble();
+    }
+
+    /**
+     * 
+     * @return
+     * @throws IOException
+     */
+    public String getString() throws IOException {
+        int len = mBuffer.getInt();
+        if(len < 0) {
+            return null;
+        }
+        if(len > mBytes.length) {
+            mBytes = new byte[len * 2];
+        }
+        mBuffer.get(mBytes, 0, len);
+        return new String(mBytes, 0, len, "UTF-8");
+    }
+
+    /**
+     * Writes a snapshot to a temp file, renamed in place on finish
+     * @author zkhan
+     *
+     */
+    public static class Writer {
+
+        private File mFile;
+        private File mTmp;
+        private DataOutputStream mOut;
+
+        /**
+         * 
+         * @param file
+         * @param type
+         * @param size
+         * @param time
+         * @throws IOException
+         */
+        public Writer(File file, int type, long size, long time) throws IOException {
+            mFile = file;
+            mTmp = new File(file.getPath() + ".part");
+            mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mTmp), 16384));
+            mOut.writeInt(MAGIC);
+            mOut.writeInt(VERSION);
+            mOut.writeInt(type);
+            mOut.writeLong(size);
+            mOut.writeLong(time);
+        }
+
+        public void putInt(int val) throws IOException {
+            mOut.writeInt(val);
+        }
+
+        public void putDouble(double val) throws IOException {
+            mOut.writeDouble(val);
+        }
+
+        public void putString(String val) throws IOException {
+            if(null == val) {
+                mOut.writeInt(-1);
+                return;
+            }
+            byte b[] = val.getBytes("UTF-8");
+            mOut.writeInt(b.length);
+            mOut.write(b);
+        }
+
+        /**
+         * 
+         * @throws IOException
+         */
+        public void finish() throws IOException {
+            mOut.close();
+            mFile.delete();
+            if(!mTmp.renameTo(mFile)) {
+                mTmp.delete();
+                throw new IOException("Cannot rename " + mTmp.getPath());
+            }
+        }
+
+        /**
+         * 
+         */
+        public void abort() {
+            try {
+                mOut.close();
+            }
+            catch (IOException e) {
+            }
+            mTmp.delete();
+        }
+    }
+}